@@ -41,3 +41,80 @@ tasks.named<Test>("test") {
     // Use JUnit Platform for unit tests.
     useJUnitPlatform()
 }
+
+// Runs the same test suite with the bytecode VM as the execution engine.
+val testVm by tasks.registering(Test::class) {
+    description = "Runs the tests with -Dlox.engine=vm."
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform()
+    systemProperty("lox.engine", "vm")
+}
+
+// Same again with the self-specializing node engine.
+val testSpecializing by tasks.registering(Test::class) {
+    description = "Runs the tests with -Dlox.engine=specializing."
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform()
+    systemProperty("lox.engine", "specializing")
+}
+
+// And with the closure compiler.
+val testClosures by tasks.registering(Test::class) {
+    description = "Runs the tests with -Dlox.engine=closures."
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform()
+    systemProperty("lox.engine", "closures")
+}
+
+// And with the method handle compiler.
+val testHandles by tasks.registering(Test::class) {
+    description = "Runs the tests with -Dlox.engine=handles."
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform()
+    systemProperty("lox.engine", "handles")
+}
+
+// And with the functions promoted to the closure compiler on their first call, then to bytecode,
+// and the top level loops replaced after their first iteration.
+val testTiered by tasks.registering(Test::class) {
+    description = "Runs the tests with -Dlox.tier.closures=1 -Dlox.tier.bytecode=20 -Dlox.tier.osr=1."
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform()
+    systemProperty("lox.tier.closures", "1")
+    systemProperty("lox.tier.bytecode", "20")
+    systemProperty("lox.tier.osr", "1")
+}
+
+// And with every function compiled to bytecode on its first call.
+val testJit by tasks.registering(Test::class) {
+    description = "Runs the tests with -Dlox.tier.bytecode=1."
+    group = "verification"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform()
+    systemProperty("lox.tier.bytecode", "1")
+}
+
+tasks.named("check") {
+    dependsOn(testVm, testSpecializing, testClosures, testHandles, testTiered, testJit)
+}
+
+// Runs the .lox workloads in src/main/resources/workloads and writes a JSON report,
+// e.g. ./gradlew workloads --args="--iterations 20 --engine vm"
+tasks.register<JavaExec>("workloads") {
+    description = "Runs the Lox workload suite and writes build/workload-results.json."
+    group = "benchmark"
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("crafting.interpreters.WorkloadRunner")
+    args("--out", layout.buildDirectory.file("workload-results.json").get().asFile.path)
+}
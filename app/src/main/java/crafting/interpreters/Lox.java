@@ -1,29 +1,40 @@
 package crafting.interpreters;
 
-import crafting.interpreters.core.base.Token;
 import crafting.interpreters.core.Interpreter;
 import crafting.interpreters.core.Parser;
+import crafting.interpreters.core.Resolver;
 import crafting.interpreters.core.Scanner;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
 
 public class Lox {
 
     public boolean hadError = false;
+    public Interpreter.Engine engine = Interpreter.Engine.fromProperty();
+
+    public Lox() {
+    }
+
+    public Lox(Interpreter.Engine engine) {
+        this.engine = engine;
+    }
 
     public void runFile(String fileName) throws IOException {
         System.out.println("Running file: " + fileName);
         Path path = Paths.get(fileName);
 
-        byte[] bytes = Files.readAllBytes(path);
-
         System.out.println(path.toAbsolutePath());
-        run(new String(bytes, StandardCharsets.UTF_8));
+        // the file is mapped and scanned in place, files too large to map are streamed instead
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            Scanner scanner = size <= Integer.MAX_VALUE
+                    ? new Scanner(channel.map(FileChannel.MapMode.READ_ONLY, 0, size))
+                    : new Scanner(channel);
+            run(scanner, null);
+        }
     }
 
     public void run(String source){
@@ -31,16 +42,22 @@ public class Lox {
     }
 
     public void run(String source, Interpreter.CapturePrint cp) {
-        Scanner scanner = new Scanner(source);
-
-        List<Token> tokens = scanner.scanTokens();
+        run(new Scanner(source), cp);
+    }
 
-        if (hadError) throw new Scanner.ScannerError();
-        Parser parser = new Parser(tokens);
+    private void run(Scanner scanner, Interpreter.CapturePrint cp) {
+        // the parser pulls tokens from the scanner as it goes
+        Parser parser = new Parser(scanner);
 
         var stmt = parser.parse();
+        if (hadError) throw new Scanner.ScannerError();
+        new Resolver().resolve(stmt);
         Interpreter interpreter = new Interpreter(stmt, cp);
+        interpreter.engine = engine;
         interpreter.interpret();
+        if (Boolean.getBoolean("lox.icstats")) {
+            interpreter.propertyCaches.forEach(System.err::println);
+        }
     }
 
 }
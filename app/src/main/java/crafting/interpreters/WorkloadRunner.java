@@ -0,0 +1,171 @@
+package crafting.interpreters;
+
+import crafting.interpreters.core.Interpreter;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class WorkloadRunner {
+    // Runs the programs in resources/workloads end to end through Lox.run and writes a JSON
+    // report with the time and allocated bytes of every iteration, so the warmup curve is visible.
+    // The report keeps a stable layout, one workload per block, so two runs can be diffed.
+    //
+    // usage: WorkloadRunner [--iterations N] [--engine tree_walker|vm|specializing|closures|handles] [--out report.json] [workload...]
+
+    static final List<String> WORKLOADS = List.of(
+            "binary_trees",
+            "fib",
+            "nbody",
+            "method_calls",
+            "instantiation",
+            "strings"
+    );
+
+    record Result(String name, Object output, long[] nanos, long[] allocatedBytes) {
+    }
+
+    public static void main(String[] args) throws IOException {
+        int iterations = 10;
+        Interpreter.Engine engine = Interpreter.Engine.fromProperty();
+        Path out = Path.of("workload-results.json");
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--iterations" -> iterations = Integer.parseInt(args[++i]);
+                case "--engine" -> engine = Interpreter.Engine.parse(args[++i]);
+                case "--out" -> out = Path.of(args[++i]);
+                default -> names.add(args[i]);
+            }
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("--iterations must be at least 1, got " + iterations);
+        }
+        if (names.isEmpty()) {
+            names = WORKLOADS;
+        }
+
+        List<Result> results = new ArrayList<>();
+        for (String name : names) {
+            Result result = run(name, loadWorkload(name), engine, iterations);
+            System.err.printf("%-14s best %8.2f ms, last %8.2f ms%n",
+                    name, millis(min(result.nanos)), millis(result.nanos[iterations - 1]));
+            results.add(result);
+        }
+        Files.writeString(out, toJson(engine, iterations, results));
+        System.err.println("Report written to " + out.toAbsolutePath());
+    }
+
+    static String loadWorkload(String name) throws IOException {
+        try (InputStream in = WorkloadRunner.class.getResourceAsStream("/workloads/" + name + ".lox")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Unknown workload " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static Result run(String name, String source, Interpreter.Engine engine, int iterations) {
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] nanos = new long[iterations];
+        long[] allocated = new long[iterations];
+        Object output = null;
+        for (int i = 0; i < iterations; i++) {
+            var cp = new Interpreter.CapturePrint();
+            long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            new Lox(engine).run(source, cp);
+            nanos[i] = System.nanoTime() - start;
+            allocated[i] = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+            output = cp.capturedValue;
+        }
+        return new Result(name, output, nanos, allocated);
+    }
+
+    static String toJson(Interpreter.Engine engine, int iterations, List<Result> results) {
+        var json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"engine\": \"").append(engine).append("\",\n");
+        json.append("  \"iterations\": ").append(iterations).append(",\n");
+        json.append("  \"java\": \"").append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"workloads\": [\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result result = results.get(i);
+            json.append("    {\n");
+            json.append("      \"name\": ").append(quote(result.name)).append(",\n");
+            json.append("      \"output\": ").append(quote(String.valueOf(result.output))).append(",\n");
+            json.append("      \"bestMs\": ").append(format(millis(min(result.nanos)))).append(",\n");
+            // the second half of the iterations, once the JIT has warmed up
+            json.append("      \"steadyMeanMs\": ").append(format(millis(steadyMean(result.nanos)))).append(",\n");
+            json.append("      \"steadyAllocatedBytes\": ").append(steadyMean(result.allocatedBytes)).append(",\n");
+            json.append("      \"timesMs\": [");
+            for (int j = 0; j < result.nanos.length; j++) {
+                json.append(j == 0 ? "" : ", ").append(format(millis(result.nanos[j])));
+            }
+            json.append("],\n");
+            json.append("      \"allocatedBytes\": [");
+            for (int j = 0; j < result.allocatedBytes.length; j++) {
+                json.append(j == 0 ? "" : ", ").append(result.allocatedBytes[j]);
+            }
+            json.append("]\n");
+            json.append(i == results.size() - 1 ? "    }\n" : "    },\n");
+        }
+        json.append("  ]\n");
+        json.append("}\n");
+        return json.toString();
+    }
+
+    private static String quote(String value) {
+        // a JSON string, the output of a workload may hold quotes, backslashes or newlines
+        var quoted = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> quoted.append("\\\"");
+                case '\\' -> quoted.append("\\\\");
+                case '\n' -> quoted.append("\\n");
+                case '\r' -> quoted.append("\\r");
+                case '\t' -> quoted.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        quoted.append(c);
+                    }
+                }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static long min(long[] values) {
+        long min = Long.MAX_VALUE;
+        for (long value : values) {
+            min = Math.min(min, value);
+        }
+        return min;
+    }
+
+    private static long steadyMean(long[] values) {
+        int from = values.length / 2;
+        long sum = 0;
+        for (int i = from; i < values.length; i++) {
+            sum += values[i];
+        }
+        return sum / (values.length - from);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+}
@@ -0,0 +1,612 @@
+package crafting.interpreters.closures;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Interpreter.Completion;
+import crafting.interpreters.core.base.Cell;
+import crafting.interpreters.core.base.Environment;
+import crafting.interpreters.core.base.Expr;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable;
+import crafting.interpreters.core.base.LoxCallable.LoxClass;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.core.base.PropertyCache;
+import crafting.interpreters.core.base.Stmt;
+import crafting.interpreters.core.base.SymbolMap;
+import crafting.interpreters.core.base.Token;
+import crafting.interpreters.core.base.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static crafting.interpreters.core.Interpreter.isEqual;
+import static crafting.interpreters.core.Interpreter.isTruthy;
+
+public class ClosureCompiler implements Expr.Visitor<ClosureCompiler.ExprCode>, Stmt.Visitor<ClosureCompiler.StmtCode> {
+    // Walks the resolved AST once and returns a tree of Java lambdas. Each lambda captures
+    // its already compiled children, slots and operator, so running the program is just
+    // calling lambdas: no visitor dispatch and no switch on the operator at runtime.
+
+    @FunctionalInterface
+    public interface ExprCode {
+        Object run(Frame frame);
+    }
+
+    @FunctionalInterface
+    public interface NumberCode {
+        // an operand that must be a number, computed without boxing
+        double run(Frame frame);
+    }
+
+    @FunctionalInterface
+    public interface StmtCode {
+        Completion run(Frame frame);
+    }
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+    // function whose body is being compiled, returns store their value in it
+    private ClosureFunction.Body function;
+
+    public ClosureCompiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    public ClosureFunction.Body compile(List<Stmt> statements) {
+        var script = new ClosureFunction.Body(null);
+        function = script;
+        script.statements = compileStatements(statements);
+        return script;
+    }
+
+    public StmtCode compileStatement(Stmt statement) {
+        // a single statement run on the tree-walker's frames, e.g. a loop replaced while it runs
+        function = new ClosureFunction.Body(null);
+        return statement.accept(this);
+    }
+
+    public StmtCode compileForLoop(Stmt.For forStmt) {
+        // the part of a for loop after its initializer, run on the loop frame
+        function = new ClosureFunction.Body(null);
+        return forLoop(forStmt);
+    }
+
+    public ClosureFunction.Body compileFunction(Stmt.Function declaration) {
+        ClosureFunction.Body enclosing = function;
+        var body = new ClosureFunction.Body(declaration);
+        function = body;
+        StmtCode[] statements = compileStatements(declaration.body);
+        int[] boxedParams = declaration.boxedParams;
+        if (boxedParams.length > 0) {
+            var withPrologue = new StmtCode[statements.length + 1];
+            withPrologue[0] = frame -> {
+                frame.box(boxedParams);
+                return Completion.NORMAL;
+            };
+            System.arraycopy(statements, 0, withPrologue, 1, statements.length);
+            statements = withPrologue;
+        }
+        body.statements = statements;
+        function = enclosing;
+        return body;
+    }
+
+    private StmtCode[] compileStatements(List<Stmt> statements) {
+        var code = new StmtCode[statements.size()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = statements.get(i).accept(this);
+        }
+        return code;
+    }
+
+    private ExprCode[] compileArguments(List<Expr> arguments) {
+        var code = new ExprCode[arguments.size()];
+        for (int i = 0; i < code.length; i++) {
+            code[i] = arguments.get(i).accept(this);
+        }
+        return code;
+    }
+
+    private static RuntimeException error(Token token, String message) {
+        System.out.printf("Error in line %d. Error: %s", token.line, message);
+        return new RuntimeException(message);
+    }
+
+    private NumberCode number(Expr expr, Token operator) {
+        // nested arithmetic stays on primitive doubles, anything else is checked once evaluated
+        if (expr instanceof Expr.Binary binary) {
+            NumberCode arithmetic = arithmetic(binary);
+            if (arithmetic != null) {
+                return arithmetic;
+            }
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return number(grouping.expression, operator);
+        } else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            NumberCode right = number(unary.right, unary.operator);
+            return frame -> -right.run(frame);
+        } else if (expr instanceof Expr.Literal literal && literal.value instanceof Double value) {
+            double constant = value;
+            return frame -> constant;
+        }
+        ExprCode code = expr.accept(this);
+        return frame -> {
+            if (code.run(frame) instanceof Double value) {
+                return value;
+            }
+            throw error(operator, "Number was expected");
+        };
+    }
+
+    private NumberCode arithmetic(Expr.Binary expr) {
+        // null when the operator isn't + - * /
+        return switch (expr.operator.type) {
+            case PLUS -> {
+                NumberCode left = number(expr.left, expr.operator);
+                NumberCode right = number(expr.right, expr.operator);
+                yield frame -> left.run(frame) + right.run(frame);
+            }
+            case MINUS -> {
+                NumberCode left = number(expr.left, expr.operator);
+                NumberCode right = number(expr.right, expr.operator);
+                yield frame -> left.run(frame) - right.run(frame);
+            }
+            case STAR -> {
+                NumberCode left = number(expr.left, expr.operator);
+                NumberCode right = number(expr.right, expr.operator);
+                yield frame -> left.run(frame) * right.run(frame);
+            }
+            case SLASH -> {
+                NumberCode left = number(expr.left, expr.operator);
+                NumberCode right = number(expr.right, expr.operator);
+                yield frame -> left.run(frame) / right.run(frame);
+            }
+            default -> null;
+        };
+    }
+
+    private ExprCode variable(Token name, int depth, int slot) {
+        if (depth == -1) {
+            int global = name.symbol;
+            return frame -> globals.readVariableValue(global);
+        }
+        if (depth == 0) {
+            return frame -> frame.slots[slot];
+        }
+        return frame -> frame.getAt(depth, slot);
+    }
+
+    private StmtCode declare(Token name, int slot, boolean boxed, ExprCode value) {
+        // globals are defined by the symbol of their name, locals go to the slot the Resolver gave them.
+        // A boxed local gets its cell first, so a function or class can capture itself
+        if (boxed) {
+            return frame -> {
+                var cell = new Cell(null);
+                frame.slots[slot] = cell;
+                cell.value = value.run(frame);
+                return Completion.NORMAL;
+            };
+        }
+        if (slot == -1) {
+            int global = name.symbol;
+            return frame -> {
+                globals.define(global, value.run(frame));
+                return Completion.NORMAL;
+            };
+        }
+        return frame -> {
+            frame.slots[slot] = value.run(frame);
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitPrint(Stmt.Print stmt) {
+        ExprCode expression = stmt.expression.accept(this);
+        return frame -> {
+            interpreter.print(expression.run(frame));
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitExprStmt(Stmt.ExprStmt stmt) {
+        ExprCode expression = stmt.expression.accept(this);
+        return frame -> {
+            expression.run(frame);
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitVarDcl(Stmt.VarDcl varDcl) {
+        ExprCode initializer = frame -> null;
+        if (varDcl.expressionInitializer != null) {
+            initializer = varDcl.expressionInitializer.accept(this);
+        }
+        return declare(varDcl.name, varDcl.slot, varDcl.boxed, initializer);
+    }
+
+    @Override
+    public StmtCode visitBlock(Stmt.Block block) {
+        StmtCode[] statements = compileStatements(block.statements);
+        if (!block.needsFrame) {
+            return frame -> {
+                for (StmtCode statement : statements) {
+                    if (statement.run(frame) == Completion.RETURN) {
+                        return Completion.RETURN;
+                    }
+                }
+                return Completion.NORMAL;
+            };
+        }
+        int slotCount = block.slotCount;
+        return frame -> {
+            var blockFrame = new Frame(frame, slotCount);
+            for (StmtCode statement : statements) {
+                if (statement.run(blockFrame) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitIf(Stmt.If ifStmt) {
+        ExprCode condition = ifStmt.condition.accept(this);
+        StmtCode thenBranch = ifStmt.thenBranch.accept(this);
+        if (ifStmt.elseBranch == null) {
+            return frame -> isTruthy(condition.run(frame)) ? thenBranch.run(frame) : Completion.NORMAL;
+        }
+        StmtCode elseBranch = ifStmt.elseBranch.accept(this);
+        return frame -> isTruthy(condition.run(frame)) ? thenBranch.run(frame) : elseBranch.run(frame);
+    }
+
+    @Override
+    public StmtCode visitWhile(Stmt.While whileStmt) {
+        ExprCode condition = whileStmt.condition.accept(this);
+        StmtCode body = whileStmt.statement.accept(this);
+        return frame -> {
+            while (isTruthy(condition.run(frame))) {
+                if (body.run(frame) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitFor(Stmt.For forStmt) {
+        StmtCode initializer = forStmt.initializer == null ? null : forStmt.initializer.accept(this);
+        StmtCode loop = forLoop(forStmt);
+        if (!forStmt.needsFrame) {
+            if (initializer == null) {
+                return loop;
+            }
+            return frame -> {
+                initializer.run(frame);
+                return loop.run(frame);
+            };
+        }
+        int slotCount = forStmt.slotCount;
+        return frame -> {
+            var loopFrame = new Frame(frame, slotCount);
+            if (initializer != null) {
+                initializer.run(loopFrame);
+            }
+            return loop.run(loopFrame);
+        };
+    }
+
+    private StmtCode forLoop(Stmt.For forStmt) {
+        ExprCode condition = forStmt.condition.accept(this);
+        StmtCode body = forStmt.body.accept(this);
+        ExprCode increment = forStmt.increment == null ? frame -> null : forStmt.increment.accept(this);
+        return loopFrame -> {
+            while (isTruthy(condition.run(loopFrame))) {
+                if (body.run(loopFrame) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+                increment.run(loopFrame);
+            }
+            return Completion.NORMAL;
+        };
+    }
+
+    @Override
+    public StmtCode visitFunction(Stmt.Function declaration) {
+        ClosureFunction.Body body = compileFunction(declaration);
+        return declare(declaration.name, declaration.slot, declaration.boxed,
+                frame -> new ClosureFunction(body, Frame.capture(frame, declaration)));
+    }
+
+    @Override
+    public StmtCode visitReturn(Stmt.Return ret) {
+        ClosureFunction.Body target = function;
+        if (ret.value == null) {
+            return frame -> {
+                target.returnValue = null;
+                return Completion.RETURN;
+            };
+        }
+        ExprCode value = ret.value.accept(this);
+        return frame -> {
+            target.returnValue = value.run(frame);
+            return Completion.RETURN;
+        };
+    }
+
+    @Override
+    public StmtCode visitClass(Stmt.Class klass) {
+        var methods = new ClosureFunction.Body[klass.methods.size()];
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = compileFunction(klass.methods.get(i));
+        }
+        String name = klass.name.lexeme;
+        return declare(klass.name, klass.slot, klass.boxed, frame -> {
+            var methodTable = new SymbolMap<LoxFunction>();
+            for (ClosureFunction.Body method : methods) {
+                Frame closure = Frame.capture(frame, method.declaration);
+                methodTable.put(method.declaration.name.symbol, new ClosureFunction(method, closure));
+            }
+            return new LoxClass(name, methodTable);
+        });
+    }
+
+    @Override
+    public ExprCode visitBinary(Expr.Binary expr) {
+        NumberCode arithmetic = arithmetic(expr);
+        if (arithmetic != null) {
+            return frame -> arithmetic.run(frame);
+        }
+        Token operator = expr.operator;
+        return switch (operator.type) {
+            case BANG_EQUAL, EQUAL_EQUAL -> {
+                ExprCode left = expr.left.accept(this);
+                ExprCode right = expr.right.accept(this);
+                yield operator.type == TokenType.EQUAL_EQUAL
+                        ? frame -> isEqual(left.run(frame), right.run(frame))
+                        : frame -> !isEqual(left.run(frame), right.run(frame));
+            }
+            case LESS -> {
+                NumberCode left = number(expr.left, operator);
+                NumberCode right = number(expr.right, operator);
+                yield frame -> left.run(frame) < right.run(frame);
+            }
+            case LESS_EQUAL -> {
+                NumberCode left = number(expr.left, operator);
+                NumberCode right = number(expr.right, operator);
+                yield frame -> left.run(frame) <= right.run(frame);
+            }
+            case GREATER -> {
+                NumberCode left = number(expr.left, operator);
+                NumberCode right = number(expr.right, operator);
+                yield frame -> left.run(frame) > right.run(frame);
+            }
+            case GREATER_EQUAL -> {
+                NumberCode left = number(expr.left, operator);
+                NumberCode right = number(expr.right, operator);
+                yield frame -> left.run(frame) >= right.run(frame);
+            }
+            default -> throw new RuntimeException(String.format("Unknown operator %s", operator.lexeme));
+        };
+    }
+
+    @Override
+    public ExprCode visitGrouping(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public ExprCode visitUnary(Expr.Unary expr) {
+        return switch (expr.operator.type) {
+            case MINUS -> {
+                NumberCode right = number(expr.right, expr.operator);
+                yield frame -> -right.run(frame);
+            }
+            case BANG -> {
+                ExprCode right = expr.right.accept(this);
+                yield frame -> !isTruthy(right.run(frame));
+            }
+            default -> throw new RuntimeException(String.format("Unknown operator %s", expr.operator.lexeme));
+        };
+    }
+
+    @Override
+    public ExprCode visitLiteral(Expr.Literal literal) {
+        Object value = literal.value;
+        return frame -> value;
+    }
+
+    @Override
+    public ExprCode visitVariable(Expr.Variable variable) {
+        ExprCode read = variable(variable.name, variable.depth, variable.slot);
+        if (variable.boxed) {
+            return frame -> ((Cell) read.run(frame)).value;
+        }
+        return read;
+    }
+
+    @Override
+    public ExprCode visitAssignment(Expr.Assignment assignment) {
+        ExprCode value = assignment.expression.accept(this);
+        int depth = assignment.depth;
+        int slot = assignment.slot;
+        if (assignment.boxed) {
+            ExprCode cell = variable(assignment.name, depth, slot);
+            return frame -> ((Cell) cell.run(frame)).value = value.run(frame);
+        }
+        if (depth == -1) {
+            int global = assignment.name.symbol;
+            return frame -> {
+                Object result = value.run(frame);
+                globals.assign(global, result);
+                return result;
+            };
+        }
+        if (depth == 0) {
+            return frame -> frame.slots[slot] = value.run(frame);
+        }
+        return frame -> {
+            Object result = value.run(frame);
+            frame.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprCode visitLogical(Expr.Logical logical) {
+        ExprCode left = logical.left.accept(this);
+        ExprCode right = logical.right.accept(this);
+        if (logical.operator.type == TokenType.AND) {
+            return frame -> {
+                Object leftValue = left.run(frame);
+                return isTruthy(leftValue) ? right.run(frame) : leftValue;
+            };
+        }
+        return frame -> {
+            Object leftValue = left.run(frame);
+            return isTruthy(leftValue) ? leftValue : right.run(frame);
+        };
+    }
+
+    @Override
+    public ExprCode visitCall(Expr.Call call) {
+        ExprCode[] arguments = compileArguments(call.arguments);
+        if (call.callee instanceof Expr.Get get) {
+            return invoke(get, arguments);
+        }
+        ExprCode callee = call.callee.accept(this);
+        return call(callee, arguments);
+    }
+
+    private ExprCode call(ExprCode callee, ExprCode[] arguments) {
+        // the argument count picks the lambda, so up to four arguments never build a list
+        return switch (arguments.length) {
+            case 0 -> frame -> callable(callee.run(frame), 0).call0(interpreter);
+            case 1 -> {
+                ExprCode a = arguments[0];
+                yield frame -> {
+                    Object function = callee.run(frame);
+                    Object first = a.run(frame);
+                    return callable(function, 1).call1(interpreter, first);
+                };
+            }
+            case 2 -> {
+                ExprCode a = arguments[0];
+                ExprCode b = arguments[1];
+                yield frame -> {
+                    Object function = callee.run(frame);
+                    Object first = a.run(frame);
+                    Object second = b.run(frame);
+                    return callable(function, 2).call2(interpreter, first, second);
+                };
+            }
+            case 3 -> {
+                ExprCode a = arguments[0];
+                ExprCode b = arguments[1];
+                ExprCode c = arguments[2];
+                yield frame -> {
+                    Object function = callee.run(frame);
+                    Object first = a.run(frame);
+                    Object second = b.run(frame);
+                    Object third = c.run(frame);
+                    return callable(function, 3).call3(interpreter, first, second, third);
+                };
+            }
+            case 4 -> {
+                ExprCode a = arguments[0];
+                ExprCode b = arguments[1];
+                ExprCode c = arguments[2];
+                ExprCode d = arguments[3];
+                yield frame -> {
+                    Object function = callee.run(frame);
+                    Object first = a.run(frame);
+                    Object second = b.run(frame);
+                    Object third = c.run(frame);
+                    Object fourth = d.run(frame);
+                    return callable(function, 4).call4(interpreter, first, second, third, fourth);
+                };
+            }
+            default -> frame -> {
+                Object function = callee.run(frame);
+                List<Object> args = new ArrayList<>(arguments.length);
+                for (ExprCode argument : arguments) {
+                    args.add(argument.run(frame));
+                }
+                return callable(function, args.size()).call(interpreter, args);
+            };
+        };
+    }
+
+    private static LoxCallable callable(Object function, int argc) {
+        if (!(function instanceof LoxCallable callable)) {
+            throw new RuntimeException(String.format("%s is not callable", function));
+        }
+        if (callable.arity() != argc) {
+            throw new RuntimeException("Wrong number of arguments");
+        }
+        return callable;
+    }
+
+    private ExprCode invoke(Expr.Get get, ExprCode[] arguments) {
+        // `object.name(...)`: methods get object as their receiver instead of being bound first
+        ExprCode object = get.object.accept(this);
+        PropertyCache cache = interpreter.propertyCache(get);
+        return frame -> {
+            LoxInstance instance = instance(object.run(frame));
+            LoxFunction method = cache.method(instance);
+            if (method == null) {
+                // a field holding something callable
+                Object function = instance.get(cache.key);
+                List<Object> args = new ArrayList<>(arguments.length);
+                for (ExprCode argument : arguments) {
+                    args.add(argument.run(frame));
+                }
+                return callable(function, args.size()).call(interpreter, args);
+            }
+            if (method.arity() != arguments.length) {
+                throw new RuntimeException("Wrong number of arguments");
+            }
+            Frame methodFrame = method.newFrame(instance);
+            for (int i = 0; i < arguments.length; i++) {
+                methodFrame.slots[i] = arguments[i].run(frame);
+            }
+            return method.execute(interpreter, methodFrame);
+        };
+    }
+
+    @Override
+    public ExprCode visitGet(Expr.Get get) {
+        ExprCode object = get.object.accept(this);
+        PropertyCache cache = interpreter.propertyCache(get);
+        return frame -> cache.get(instance(object.run(frame)));
+    }
+
+    @Override
+    public ExprCode visitSet(Expr.Set set) {
+        ExprCode object = set.object.accept(this);
+        ExprCode value = set.value.accept(this);
+        PropertyCache cache = interpreter.propertyCache(set);
+        return frame -> {
+            LoxInstance instance = instance(object.run(frame));
+            Object result = value.run(frame);
+            cache.set(instance, result);
+            return result;
+        };
+    }
+
+    @Override
+    public ExprCode visitThis(Expr.This expr) {
+        return variable(expr.keyword, expr.depth, expr.slot);
+    }
+
+    private static LoxInstance instance(Object object) {
+        if (!(object instanceof LoxInstance instance)) {
+            throw new RuntimeException(String.format("%s is not an instance of a class", object));
+        }
+        return instance;
+    }
+}
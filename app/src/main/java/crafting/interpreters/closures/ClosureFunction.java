@@ -0,0 +1,55 @@
+package crafting.interpreters.closures;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Interpreter.Completion;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.core.base.Stmt;
+
+public class ClosureFunction extends LoxFunction {
+    // A function whose body was compiled by the ClosureCompiler, once per declaration.
+    public final Body body;
+    private final Frame closure;
+
+    public ClosureFunction(Body body, Frame closure) {
+        super(body.declaration, closure);
+        this.body = body;
+        this.closure = closure;
+    }
+
+    @Override
+    public LoxFunction bind(LoxInstance instance) {
+        var thisFrame = new Frame(closure, 1);
+        thisFrame.slots[0] = instance;
+        return new ClosureFunction(body, thisFrame);
+    }
+
+    @Override
+    public Object execute(Interpreter interpreter, Frame frame) {
+        return body.execute(frame);
+    }
+
+    public static final class Body {
+        // null for the top level script
+        public final Stmt.Function declaration;
+        ClosureCompiler.StmtCode[] statements;
+        // set by a return right before the RETURN completion reaches execute
+        Object returnValue;
+
+        Body(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        public Object execute(Frame frame) {
+            for (ClosureCompiler.StmtCode statement : statements) {
+                if (statement.run(frame) == Completion.RETURN) {
+                    Object value = returnValue;
+                    returnValue = null;
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+}
@@ -5,20 +5,24 @@ import crafting.interpreters.core.base.*;
 import crafting.interpreters.core.base.LoxCallable.LoxFunction;
 import crafting.interpreters.core.base.LoxCallable.LoxClass;
 import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.closures.ClosureCompiler;
+import crafting.interpreters.handles.HandleCompiler;
+import crafting.interpreters.nodes.NodeBuilder;
+import crafting.interpreters.vm.Compiler;
+import crafting.interpreters.vm.VM;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    public static class ReturnException extends RuntimeException {
-        public final Object value;
-
-        public ReturnException(Object value) {
-            super(null, null, false, false);
-            this.value = value;
-        }
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Interpreter.Completion> {
+    public enum Completion {
+        // How a statement finished. RETURN unwinds the enclosing blocks and loops
+        // up to the function call, the returned value is left in returnValue.
+        NORMAL,
+        RETURN
     }
 
     public static class CapturePrint {
@@ -26,13 +30,50 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         public boolean captured = false;
     }
 
+    public enum Engine {
+        TREE_WALKER,
+        VM,
+        // executable nodes that specialize themselves, see crafting.interpreters.nodes
+        SPECIALIZING,
+        // a tree of Java lambdas, see crafting.interpreters.closures
+        CLOSURES,
+        // a graph of method handles, see crafting.interpreters.handles
+        HANDLES;
+
+        public static Engine fromProperty() {
+            // e.g. -Dlox.engine=vm
+            String name = System.getProperty("lox.engine");
+            if (name == null) {
+                return TREE_WALKER;
+            }
+            return parse(name);
+        }
+
+        public static Engine parse(String name) {
+            // accepts the names in any case, with - for _, e.g. tree-walker
+            return Engine.valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
 
     public final Environment globals = new Environment();
-    public Environment environment = globals;
+    // frame of the innermost block or function being executed, null at the top level
+    public Frame frame = null;
+    // tiering state of the function whose body the tree-walker is running, null at the top level
+    public Tiering.FunctionTier function = null;
     public final List<Stmt> statements;
     public boolean hadError;
 
     public final CapturePrint cp;
+    public Engine engine = Engine.fromProperty();
+    // value of the last return statement, read by the function call that it completes
+    private Object returnValue = null;
+    // inline caches of the property access sites this interpreter has run, for -Dlox.icstats
+    public final List<PropertyCache> propertyCaches = new ArrayList<>();
+    // the cache of each Expr.Get and Expr.Set site, shared by the engines and tiers of this interpreter
+    private final Map<Expr, PropertyCache> siteCaches = new IdentityHashMap<>();
+    // counters and compiled code of the tree-walker's tiers, for the statements this interpreter runs
+    public final Tiering tiering;
 
     private void defineNativeFunctions() {
         var clock = new LoxCallable() {
@@ -43,39 +84,68 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
             @Override
             public Object call(Interpreter interpreter, List<Object> arguments) {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
         };
-        globals.define("clock", clock);
+        globals.define(Symbols.intern("clock"), clock);
     }
 
     public Interpreter(List<Stmt> statements, CapturePrint cp) {
         this.statements = statements;
         this.cp = cp;
+        this.tiering = new Tiering();
         defineNativeFunctions();
     }
 
     public void interpret() {
+        if (engine == Engine.VM) {
+            var compiler = new Compiler();
+            var script = compiler.compile(statements);
+            propertyCaches.addAll(compiler.propertyCaches);
+            new VM(this).interpret(script);
+            return;
+        }
+        if (engine == Engine.SPECIALIZING) {
+            var script = new NodeBuilder(this).build(statements);
+            script.execute(null);
+            return;
+        }
+        if (engine == Engine.CLOSURES) {
+            var script = new ClosureCompiler(this).compile(statements);
+            script.execute(null);
+            return;
+        }
+        if (engine == Engine.HANDLES) {
+            var script = new HandleCompiler(this).compile(statements);
+            script.execute(null);
+            return;
+        }
         for (var stmt : statements) {
-            stmt.accept(this);
+            if (stmt.accept(this) == Completion.RETURN) {
+                return;
+            }
         }
     }
 
-    private final List<TokenType> numberRequired = new ArrayList<>(Arrays.asList(
-            TokenType.PLUS,
-            TokenType.MINUS,
-            TokenType.SLASH,
-            TokenType.STAR,
-            TokenType.LESS_EQUAL,
-            TokenType.LESS,
-            TokenType.GREATER,
-            TokenType.GREATER_EQUAL
-    ));
+    public Object takeReturnValue() {
+        Object value = returnValue;
+        returnValue = null;
+        return value;
+    }
 
 
     @Override
-    public Void visitPrint(Stmt.Print stmt) {
-        Object val = stmt.expression.accept(this);
+    public Completion visitPrint(Stmt.Print stmt) {
+        print(stmt.expression.accept(this));
+        return Completion.NORMAL;
+    }
+
+    public void print(Object val) {
         if (val != null) {
             System.out.println(val);
         } else {
@@ -90,37 +160,59 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 this.cp.capturedValue = val.toString();
             }
         }
-        return null;
     }
 
     @Override
-    public Void visitExprStmt(Stmt.ExprStmt stmt) {
+    public Completion visitExprStmt(Stmt.ExprStmt stmt) {
         stmt.expression.accept(this);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
     public Object visitBinary(Expr.Binary expr) {
+        Token operator = expr.operator;
+        return switch (operator.type) {
+            case PLUS, MINUS, SLASH, STAR -> arithmetic(expr);
+            case BANG_EQUAL -> !isEqual(expr.left.accept(this), expr.right.accept(this));
+            case EQUAL_EQUAL -> isEqual(expr.left.accept(this), expr.right.accept(this));
+            case LESS_EQUAL -> evaluateDouble(expr.left, operator) <= evaluateDouble(expr.right, operator);
+            case LESS -> evaluateDouble(expr.left, operator) < evaluateDouble(expr.right, operator);
+            case GREATER -> evaluateDouble(expr.left, operator) > evaluateDouble(expr.right, operator);
+            case GREATER_EQUAL -> evaluateDouble(expr.left, operator) >= evaluateDouble(expr.right, operator);
+            default -> throw new RuntimeException(String.format("Unknown operator %s", operator.lexeme));
+        };
+    }
 
-        Object leftValue = expr.left.accept(this);
-
-        Object rightValue = expr.right.accept(this);
-
-        if (numberRequired.contains(expr.operator.type)) {
-            checkNumber(expr.operator, leftValue);
-            checkNumber(expr.operator, rightValue);
+    double evaluateDouble(Expr expr, Token operator) {
+        // Evaluates an operand that must be a number, for the given operator.
+        // Arithmetic sub-expressions are computed on primitive doubles, so a chain
+        // like `a * b + c * d` only boxes its final result.
+        if (expr instanceof Expr.Binary binary) {
+            switch (binary.operator.type) {
+                case PLUS, MINUS, SLASH, STAR -> {
+                    return arithmetic(binary);
+                }
+            }
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return evaluateDouble(grouping.expression, operator);
+        } else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            return -evaluateDouble(unary.right, unary.operator);
+        } else if (expr instanceof Expr.Literal literal && literal.value instanceof Double value) {
+            return value;
         }
+        Object value = expr.accept(this);
+        checkNumber(operator, value);
+        return (Double) value;
+    }
+
+    private double arithmetic(Expr.Binary expr) {
+        double left = evaluateDouble(expr.left, expr.operator);
+        double right = evaluateDouble(expr.right, expr.operator);
         return switch (expr.operator.type) {
-            case PLUS -> (Double) leftValue + (Double) rightValue;
-            case MINUS -> (Double) leftValue - (Double) rightValue;
-            case SLASH -> (Double) leftValue / (Double) rightValue;
-            case STAR -> (Double) leftValue * (Double) rightValue;
-            case BANG_EQUAL -> !isEqual(leftValue, rightValue);
-            case EQUAL_EQUAL -> isEqual(leftValue, rightValue);
-            case LESS_EQUAL -> (Double) leftValue <= (Double) rightValue;
-            case LESS -> (Double) leftValue < (Double) rightValue;
-            case GREATER -> (Double) leftValue > (Double) rightValue;
-            case GREATER_EQUAL -> (Double) leftValue >= (Double) rightValue;
+            case PLUS -> left + right;
+            case MINUS -> left - right;
+            case SLASH -> left / right;
+            case STAR -> left * right;
             default -> throw new RuntimeException(String.format("Unknown operator %s", expr.operator.lexeme));
         };
     }
@@ -132,15 +224,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnary(Expr.Unary expr) {
-        Object rightValue = expr.right.accept(this);
-
         switch (expr.operator.type) {
             case MINUS -> {
-                checkNumber(expr.operator, rightValue);
-                return -(Double) rightValue;
+                return -evaluateDouble(expr.right, expr.operator);
             }
             case BANG -> {
-                return !isTruthy(rightValue);
+                return !isTruthy(expr.right.accept(this));
             }
             default -> throw new RuntimeException(String.format("Unknown operator %s", expr.operator.lexeme));
         }
@@ -152,56 +241,147 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     @Override
-    public Void visitAssignment(Expr.Assignment assignment) {
+    public Object visitAssignment(Expr.Assignment assignment) {
         Object value = assignment.expression.accept(this);
-        this.environment.assign(assignment.name.lexeme, value);
-        return null;
+        if (assignment.depth == -1) {
+            globals.assign(assignment.name.symbol, value);
+        } else if (assignment.boxed) {
+            ((Cell) frame.getAt(assignment.depth, assignment.slot)).value = value;
+        } else {
+            frame.assignAt(assignment.depth, assignment.slot, value);
+        }
+        return value;
     }
 
     @Override
-    public Void visitVarDcl(Stmt.VarDcl varDcl) {
-        Object value = varDcl.expressionInitializer.accept(this);
-        this.environment.define(varDcl.name.lexeme, value);
-        return null;
+    public Completion visitVarDcl(Stmt.VarDcl varDcl) {
+        Object value = null;
+        if (varDcl.expressionInitializer != null) {
+            value = varDcl.expressionInitializer.accept(this);
+        }
+        declare(varDcl.name, varDcl.slot, varDcl.boxed ? new Cell(value) : value);
+        return Completion.NORMAL;
     }
 
     @Override
     public Object visitVariable(Expr.Variable variable) {
-        return this.environment.readVariableValue(variable.name.lexeme);
+        Object value = lookUpVariable(variable.name, variable.depth, variable.slot);
+        return variable.boxed ? ((Cell) value).value : value;
+    }
+
+    private Object lookUpVariable(Token name, int depth, int slot) {
+        if (depth == -1) {
+            return globals.readVariableValue(name.symbol);
+        }
+        return frame.getAt(depth, slot);
+    }
+
+    private void declare(Token name, int slot, Object value) {
+        // globals are looked up by the symbol of their name, locals by the slot the Resolver gave them
+        if (slot == -1) {
+            globals.define(name.symbol, value);
+            return;
+        }
+        frame.slots[slot] = value;
+    }
+
+    private Cell declareCell(int slot) {
+        // a boxed function or class gets its cell before its closures capture it
+        var cell = new Cell(null);
+        frame.slots[slot] = cell;
+        return cell;
     }
 
     @Override
-    public Void visitClass(Stmt.Class klass) {
-        var methods = new HashMap<String, LoxFunction>();
+    public Completion visitClass(Stmt.Class klass) {
+        Cell cell = klass.boxed ? declareCell(klass.slot) : null;
+        var methods = new SymbolMap<LoxFunction>();
         for (var methodStmt: klass.methods){
-            var method = new LoxFunction(methodStmt);
-            methods.put(methodStmt.name.lexeme, method);
+            var method = new LoxFunction(methodStmt, Frame.capture(frame, methodStmt), tiering.function(methodStmt));
+            methods.put(methodStmt.name.symbol, method);
         }
         LoxClass c = new LoxClass(klass.name.lexeme, methods);
-        environment.define(klass.name.lexeme, c);
-        return null;
+        if (cell != null) {
+            cell.value = c;
+        } else {
+            declare(klass.name, klass.slot, c);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunction(Stmt.Function function) {
-        var f = new LoxFunction(function);
-        environment.define(function.name.lexeme, f);
-        return null;
+    public Completion visitFunction(Stmt.Function function) {
+        Cell cell = function.boxed ? declareCell(function.slot) : null;
+        var f = new LoxFunction(function, Frame.capture(frame, function), tiering.function(function));
+        if (cell != null) {
+            cell.value = f;
+        } else {
+            declare(function.name, function.slot, f);
+        }
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitWhile(Stmt.While whileStmt) {
+    public Completion visitWhile(Stmt.While whileStmt) {
+        // only the loops at the top level are replaced, the others count in their function
+        Tiering.LoopTier loop = function == null ? tiering.loop(whileStmt) : null;
+        if (loop != null && loop.osrCode != null) {
+            return loop.osrCode.run(frame);
+        }
         while (isTruthy(whileStmt.condition.accept(this))) {
-            whileStmt.statement.accept(this);
+            if (whileStmt.statement.accept(this) == Completion.RETURN) {
+                return Completion.RETURN;
+            }
+            if (loop == null) {
+                function.backEdges++;
+            } else if (++loop.backEdges == Tiering.OSR_THRESHOLD) {
+                // a top level loop is never called again, so it's replaced while it runs:
+                // the compiled loop picks up at the condition, on the same frame and globals
+                return Tiering.replaceLoop(this, whileStmt, loop).run(frame);
+            }
+        }
+        return Completion.NORMAL;
+    }
+
+    @Override
+    public Completion visitFor(Stmt.For forStmt) {
+        Frame previous = frame;
+        try {
+            if (forStmt.needsFrame) {
+                frame = new Frame(previous, forStmt.slotCount);
+            }
+            if (forStmt.initializer != null) {
+                forStmt.initializer.accept(this);
+            }
+            Tiering.LoopTier loop = function == null ? tiering.loop(forStmt) : null;
+            if (loop != null && loop.osrCode != null) {
+                return loop.osrCode.run(frame);
+            }
+            while (isTruthy(forStmt.condition.accept(this))) {
+                if (forStmt.body.accept(this) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+                if (forStmt.increment != null) {
+                    forStmt.increment.accept(this);
+                }
+                if (loop == null) {
+                    function.backEdges++;
+                } else if (++loop.backEdges == Tiering.OSR_THRESHOLD) {
+                    // same as visitWhile, the compiled loop continues on the loop's frame
+                    return Tiering.replaceLoop(this, forStmt, loop).run(frame);
+                }
+            }
+            return Completion.NORMAL;
+        } finally {
+            frame = previous;
         }
-        return null;
     }
 
     @Override
     public Object visitLogical(Expr.Logical logical) {
         Object left = logical.left.accept(this);
         if (logical.operator.type == TokenType.AND) {
-            if (!isTruthy(logical.left)) {
+            if (!isTruthy(left)) {
                 return left;
             }
             return logical.right.accept(this);
@@ -213,52 +393,117 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     @Override
-    public Void visitIf(Stmt.If ifStmt) {
+    public Completion visitIf(Stmt.If ifStmt) {
         Object conditionValue = ifStmt.condition.accept(this);
         if (isTruthy(conditionValue)) {
-            ifStmt.thenBranch.accept(this);
+            return ifStmt.thenBranch.accept(this);
         } else if (ifStmt.elseBranch != null) {
-            ifStmt.elseBranch.accept(this);
+            return ifStmt.elseBranch.accept(this);
         }
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitBlock(Stmt.Block block) {
-        executeBlock(block.statements, new Environment(this.environment));
-        return null;
+    public Completion visitBlock(Stmt.Block block) {
+        if (!block.needsFrame) {
+            for (Stmt stmt : block.statements) {
+                if (stmt.accept(this) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+            }
+            return Completion.NORMAL;
+        }
+        return executeBlock(block.statements, new Frame(this.frame, block.slotCount));
     }
 
-    public void executeBlock(
+    public Completion executeBlock(
             List<Stmt> statements,
-            Environment environment
+            Frame frame
     ) {
-        Environment previous = this.environment;
+        Frame previous = this.frame;
 
         try {
-            this.environment = environment;
+            this.frame = frame;
             for (Stmt stmt : statements) {
-                stmt.accept(this);
+                if (stmt.accept(this) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
             }
+            return Completion.NORMAL;
         } finally {
-            this.environment = previous;
+            this.frame = previous;
         }
     }
 
     @Override
     public Object visitCall(Expr.Call call) {
-        Object callee = call.callee.accept(this);
-        List<Object> args = new ArrayList<>();
-        for (Expr arg : call.arguments) {
-            args.add(arg.accept(this));
+        if (call.callee instanceof Expr.Get get) {
+            // `object.name(...)` calling a method: object is passed as the receiver
+            // instead of creating the bound function that visitGet would return
+            Object object = get.object.accept(this);
+            checkIsInstance(object);
+            var instance = (LoxInstance) object;
+            LoxFunction method = propertyCache(get).method(instance);
+            if (method == null) {
+                return callValue(instance.get(get.name.symbol), call.arguments);
+            }
+            if (method.arity() != call.arguments.size()) {
+                throw new RuntimeException("Wrong number of arguments");
+            }
+            // the arguments are evaluated straight into the method's frame
+            Frame methodFrame = method.newFrame(instance);
+            for (int i = 0; i < call.arguments.size(); i++) {
+                methodFrame.slots[i] = call.arguments.get(i).accept(this);
+            }
+            return method.execute(this, methodFrame);
         }
+        return callValue(call.callee.accept(this), call.arguments);
+    }
+
+    private Object callValue(Object callee, List<Expr> arguments) {
+        // up to four arguments go through the fixed arity entry points, without a list
+        return switch (arguments.size()) {
+            case 0 -> callable(callee, 0).call0(this);
+            case 1 -> {
+                Object a = arguments.get(0).accept(this);
+                yield callable(callee, 1).call1(this, a);
+            }
+            case 2 -> {
+                Object a = arguments.get(0).accept(this);
+                Object b = arguments.get(1).accept(this);
+                yield callable(callee, 2).call2(this, a, b);
+            }
+            case 3 -> {
+                Object a = arguments.get(0).accept(this);
+                Object b = arguments.get(1).accept(this);
+                Object c = arguments.get(2).accept(this);
+                yield callable(callee, 3).call3(this, a, b, c);
+            }
+            case 4 -> {
+                Object a = arguments.get(0).accept(this);
+                Object b = arguments.get(1).accept(this);
+                Object c = arguments.get(2).accept(this);
+                Object d = arguments.get(3).accept(this);
+                yield callable(callee, 4).call4(this, a, b, c, d);
+            }
+            default -> {
+                List<Object> args = new ArrayList<>();
+                for (Expr arg : arguments) {
+                    args.add(arg.accept(this));
+                }
+                yield callable(callee, args.size()).call(this, args);
+            }
+        };
+    }
+
+    private static LoxCallable callable(Object callee, int argc) {
         if (!(callee instanceof LoxCallable function)) {
-            throw new RuntimeException(String.format("%s is not callable", callee.toString()));
+            throw new RuntimeException(String.format("%s is not callable", callee));
         }
-        if (function.arity() != args.size()) {
+        if (function.arity() != argc) {
             throw new RuntimeException("Wrong number of arguments");
         }
-        return function.call(this, args);
+        return function;
     }
 
 
@@ -266,7 +511,25 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     public Object visitGet(Expr.Get get) {
         Object instance = get.object.accept(this);
         checkIsInstance(instance);
-        return ((LoxInstance) instance).get(get.name.lexeme);
+        return propertyCache(get).get((LoxInstance) instance);
+    }
+
+    public PropertyCache propertyCache(Expr.Get get) {
+        return propertyCache(get, get.name);
+    }
+
+    public PropertyCache propertyCache(Expr.Set set) {
+        return propertyCache(set, set.name);
+    }
+
+    private PropertyCache propertyCache(Expr site, Token name) {
+        var cache = siteCaches.get(site);
+        if (cache == null) {
+            cache = new PropertyCache(name);
+            siteCaches.put(site, cache);
+            propertyCaches.add(cache);
+        }
+        return cache;
     }
 
 
@@ -275,13 +538,13 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object instance = set.object.accept(this);
         checkIsInstance(instance);
         Object value = set.value.accept(this);
-        ((LoxInstance) instance).set(set.name.lexeme, value);
+        propertyCache(set).set((LoxInstance) instance, value);
         return value;
     }
 
     @Override
     public Object visitThis(Expr.This expr) {
-        return environment.readVariableValue("this");
+        return lookUpVariable(expr.keyword, expr.depth, expr.slot);
     }
 
     private void checkIsInstance(Object instance){
@@ -290,10 +553,11 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
     @Override
-    public Void visitReturn(Stmt.Return ret) {
+    public Completion visitReturn(Stmt.Return ret) {
         Object value = null;
         if (ret.value != null) value = ret.value.accept(this);
-        throw new ReturnException(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     void checkNumber(Token operator, Object operand) {
@@ -305,14 +569,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeException(msg);
     }
 
-    static Boolean isEqual(Object leftValue, Object rightValue) {
+    public static Boolean isEqual(Object leftValue, Object rightValue) {
         if (leftValue == null || rightValue == null) {
             return leftValue == null && rightValue == null;
         }
         return leftValue.equals(rightValue);
     }
 
-    static Boolean isTruthy(Object object) {
+    public static Boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
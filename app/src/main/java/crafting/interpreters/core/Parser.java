@@ -13,11 +13,15 @@ import static crafting.interpreters.core.base.TokenType.*;
 
 public class Parser {
 
-    private final List<Token> tokens;
+    // Tokens are read by index from 'tokens', a Token is only made for the ones the AST keeps.
+    // Given a Scanner, tokens are scanned as the parser reaches them and the ones before the
+    // previous token are dropped whenever the buffer fills up.
+    private final TokenBuffer tokens;
+    // null once there's nothing more to scan
+    private Scanner scanner;
+    // index of the current token, counted from the start of the source
     private int current = 0;
 
-    private final int lastIdx;
-
     private final List<TokenType> comparisonTokens = new ArrayList<>(
             Arrays.asList(
                     TokenType.GREATER,
@@ -37,16 +41,24 @@ public class Parser {
     }
 
     public Parser(List<Token> tokens) {
+        this(TokenBuffer.of(tokens));
+    }
+
+    public Parser(TokenBuffer tokens) {
         this.tokens = tokens;
-        lastIdx = tokens.size() - 1;
+    }
+
+    public Parser(Scanner scanner) {
+        this.tokens = new TokenBuffer();
+        this.scanner = scanner;
     }
 
     public List<Stmt> parse() {
         List<Stmt> statements = new ArrayList<>();
-        while (beforeEnd()) {
+        while (beforeEnd() && peekType() != TokenType.EOF) {
             Stmt stmt = declaration();
             statements.add(stmt);
-            if (beforeEnd() && (tokens.get(current).type == TokenType.EOF) || (current < lastIdx && tokens.get(current + 1).type == TokenType.EOF)) {
+            if (beforeEnd() && (peekType() == TokenType.EOF) || (has(current + 1) && tokens.type(current + 1) == TokenType.EOF)) {
                 return statements;
             }
         }
@@ -86,33 +98,33 @@ public class Parser {
 
 
     private Stmt declaration() {
-        if (match(CLASS) != null) {
+        if (match(CLASS)) {
             return classDecl();
         }
-        if (match(VAR) != null) {
+        if (match(VAR)) {
             return varDecl();
         }
-        if (match(FUN) != null) {
+        if (match(FUN)) {
             return funDecl();
         }
         return statement();
     }
 
     private Stmt classDecl() {
-        var name = consume(IDENTIFIER);
+        var name = consumeToken(IDENTIFIER);
         consume(LEFT_BRACE);
         List<Stmt.Function> methods = new ArrayList<>();
-        while (match(RIGHT_BRACE) == null) {
+        while (!match(RIGHT_BRACE)) {
             methods.add((Stmt.Function) funDecl());
         }
         return new Stmt.Class(name, methods);
     }
 
     private Stmt funDecl() {
-        var funName = consume(IDENTIFIER);
+        var funName = consumeToken(IDENTIFIER);
         consume(LEFT_PAREN);
         List<Token> params = null;
-        if (match(RIGHT_PAREN) == null) {
+        if (!match(RIGHT_PAREN)) {
             params = parameters();
             consume(RIGHT_PAREN);
         }
@@ -129,15 +141,15 @@ public class Parser {
     private List<Token> parameters() {
         List<Token> params = new ArrayList<>();
         do {
-            params.add(consume(IDENTIFIER));
-        } while (match(COMMA) != null);
+            params.add(consumeToken(IDENTIFIER));
+        } while (match(COMMA));
         return params;
     }
 
     private Stmt varDecl() {
-        var varName = consume(IDENTIFIER);
+        var varName = consumeToken(IDENTIFIER);
         Expr initializer = null;
-        if (match(EQUAL) != null) {
+        if (match(EQUAL)) {
             initializer = expression();
         }
         consume(SEMICOLON);
@@ -146,30 +158,30 @@ public class Parser {
 
     private Stmt statement() {
 
-        if (match(IF) != null) {
+        if (match(IF)) {
             return ifStmt();
         }
-        if (match(PRINT) != null) {
+        if (match(PRINT)) {
             return printStmt();
         }
-        if (match(LEFT_BRACE) != null) {
+        if (match(LEFT_BRACE)) {
             return new Stmt.Block(block());
         }
-        if (match(WHILE) != null) {
+        if (match(WHILE)) {
             return whileStmt();
         }
-        if (match(FOR) != null) {
+        if (match(FOR)) {
             return forStmt();
         }
-        if (match(RETURN) != null) {
+        if (match(RETURN)) {
             return returnStmt();
         }
         return exprStmt();
     }
 
     private Stmt returnStmt() {
-        Token keyword = tokens.get(current - 1);
-        if (match(SEMICOLON) != null) {
+        Token keyword = previous();
+        if (match(SEMICOLON)) {
             return new Stmt.Return(keyword, null);
         }
         Expr expr = expression();
@@ -183,43 +195,29 @@ public class Parser {
         Expr condition = null;
         Expr increment = null;
 
-        if (match(VAR) != null) {
+        if (match(VAR)) {
             initializer = varDecl();
-        } else if (match(SEMICOLON) != null) {
+        } else if (match(SEMICOLON)) {
             initializer = null;
         } else {
             initializer = exprStmt();
         }
 
-        if (match(SEMICOLON) == null) {
+        if (!match(SEMICOLON)) {
             condition = expression();
             consume(SEMICOLON);
         }
 
-        if (match(RIGHT_PAREN) == null) {
+        if (!match(RIGHT_PAREN)) {
             increment = expression();
             consume(RIGHT_PAREN);
         }
 
         Stmt body = statement();
-        return forToWhile(initializer, condition, increment, body);
-    }
-
-    Stmt forToWhile(Stmt init, Expr cond, Expr inc, Stmt body) {
-        if (cond == null) {
-            cond = new Expr.Literal(true);
-        }
-        List<Stmt> stmts = new ArrayList<>();
-        List<Stmt> bodyStmts = new ArrayList<>();
-        if (init != null) {
-            stmts.add(init);
-        }
-        bodyStmts.add(body);
-        if (inc != null) {
-            bodyStmts.add(new Stmt.ExprStmt(inc));
+        if (condition == null) {
+            condition = new Expr.Literal(true);
         }
-        stmts.add(new Stmt.While(cond, new Stmt.Block(bodyStmts)));
-        return new Stmt.Block(stmts);
+        return new Stmt.For(initializer, condition, increment, body);
     }
 
     private Stmt whileStmt() {
@@ -236,7 +234,7 @@ public class Parser {
         consume(RIGHT_PAREN);
         Stmt thenBranch = statement();
         Stmt elseBranch = null;
-        if (match(ELSE) != null) {
+        if (match(ELSE)) {
             elseBranch = statement();
         }
         return new Stmt.If(condition, thenBranch, elseBranch);
@@ -244,7 +242,7 @@ public class Parser {
 
     private List<Stmt> block() {
         List<Stmt> stmts = new ArrayList<>();
-        while (beforeEnd() && tokens.get(current).type != RIGHT_BRACE) {
+        while (beforeEnd() && peekType() != RIGHT_BRACE) {
             stmts.add(declaration());
         }
         consume(RIGHT_BRACE);
@@ -270,7 +268,7 @@ public class Parser {
     private Expr assignment() {
         var expr = logic_or();
 
-        if (match(EQUAL) != null) {
+        if (match(EQUAL)) {
             if (expr instanceof Expr.Variable) {
                 var rValue = expression();
                 return new Expr.Assignment(
@@ -294,8 +292,8 @@ public class Parser {
 
     private Expr logic_or() {
         var expr = logical_and();
-        Token tk;
-        while ((tk = match(OR)) != null) {
+        while (match(OR)) {
+            Token tk = previous();
             var right = logical_and();
             expr = new Expr.Logical(
                     expr,
@@ -308,8 +306,8 @@ public class Parser {
 
     private Expr logical_and() {
         var expr = equality();
-        Token tk;
-        while ((tk = match(AND)) != null) {
+        while (match(AND)) {
+            Token tk = previous();
             Expr right = equality();
             expr = new Expr.Logical(
                     expr,
@@ -325,9 +323,9 @@ public class Parser {
         if (!beforeEnd()) {
             return expr;
         }
-        Token tk = tokens.get(current);
-        while (equalityTokens.contains(tk.type)) {
-            current++;
+        TokenType type = peekType();
+        while (equalityTokens.contains(type)) {
+            Token tk = advance();
             Expr right = comparison();
             expr = new Expr.Binary(
                     expr, right,
@@ -336,7 +334,7 @@ public class Parser {
             if (!beforeEnd()) {
                 break;
             }
-            tk = tokens.get(current);
+            type = peekType();
         }
         return expr;
     }
@@ -346,10 +344,10 @@ public class Parser {
         if (!beforeEnd()) {
             return expr;
         }
-        Token tk = tokens.get(current);
+        TokenType type = peekType();
 
-        while (comparisonTokens.contains(tk.type)) {
-            current++;
+        while (comparisonTokens.contains(type)) {
+            Token tk = advance();
             Expr right = term();
             expr = new Expr.Binary(
                     expr,
@@ -359,7 +357,7 @@ public class Parser {
             if (!beforeEnd()) {
                 break;
             }
-            tk = tokens.get(current);
+            type = peekType();
         }
         return expr;
     }
@@ -369,23 +367,23 @@ public class Parser {
         if (!beforeEnd()) {
             return expr;
         }
-        Token tk = tokens.get(current);
-        while (tk.type == TokenType.MINUS || tk.type == TokenType.PLUS) {
-            current++;
+        TokenType type = peekType();
+        while (type == TokenType.MINUS || type == TokenType.PLUS) {
+            Token tk = advance();
             Expr right = factor();
             expr = new Expr.Binary(expr, right, tk);
             if (!beforeEnd()) {
                 break;
             }
-            tk = tokens.get(current);
+            type = peekType();
         }
         return expr;
     }
 
     private Expr factor() {
         Expr expr = unary();
-        Token tk;
-        while ((tk = match(TokenType.SLASH, TokenType.STAR)) != null) {
+        while (match(TokenType.SLASH, TokenType.STAR)) {
+            Token tk = previous();
             Expr right = unary();
             expr = new Expr.Binary(expr, right, tk);
             if (!beforeEnd()) {
@@ -396,8 +394,8 @@ public class Parser {
     }
 
     private Expr unary() {
-        Token tk;
-        if ((tk = match(TokenType.BANG, TokenType.MINUS)) != null) {
+        if (match(TokenType.BANG, TokenType.MINUS)) {
+            Token tk = previous();
             Expr expr = unary();
             return new Expr.Unary(tk, expr);
         }
@@ -406,26 +404,25 @@ public class Parser {
 
     private Expr call() {
         var expr = primary();
-        Token tk;
-        while ((tk = match(LEFT_PAREN, DOT)) != null) {
+        while (match(LEFT_PAREN, DOT)) {
             // it's call
-            if (tk.type == LEFT_PAREN) {
+            if (tokens.type(current - 1) == LEFT_PAREN) {
                 Token paren;
 
-                if ((paren = match(RIGHT_PAREN)) != null) {
-                    expr = new Expr.Call(expr, paren, new ArrayList<>());
+                if (match(RIGHT_PAREN)) {
+                    expr = new Expr.Call(expr, previous(), new ArrayList<>());
                     continue;
                 }
                 List<Expr> args = arguments();
                 if (args.size() > 255) {
                     System.err.println("Can't have more than 255 arguments");
                 }
-                paren = consume(RIGHT_PAREN);
+                paren = consumeToken(RIGHT_PAREN);
                 expr = new Expr.Call(expr, paren, args);
                 continue;
             }
             // otherwise, we're getting a property
-            var identifier = consume(IDENTIFIER);
+            var identifier = consumeToken(IDENTIFIER);
             expr = new Expr.Get(expr, identifier);
         }
         return expr;
@@ -437,68 +434,100 @@ public class Parser {
         do {
             expr = expression();
             args.add(expr);
-        } while (match(COMMA) != null);
+        } while (match(COMMA));
         return args;
     }
 
     private Expr primary() {
-        Token tk = tokens.get(current);
-        if (tk.type == TokenType.NUMBER || tk.type == FALSE || tk.type == TRUE || tk.type == STRING) {
+        if (!beforeEnd()) {
+            throw new ParserError();
+        }
+        TokenType type = peekType();
+        if (type == TokenType.NUMBER || type == FALSE || type == TRUE || type == STRING) {
             current++;
-            return new Expr.Literal(tk.literal);
+            return new Expr.Literal(tokens.literal(current - 1));
         }
-        if (tk.type == TokenType.NIL) {
+        if (type == TokenType.NIL) {
             current++;
             return new Expr.Literal(null);
         }
 
-        if (tk.type == TokenType.LEFT_PAREN) {
+        if (type == TokenType.LEFT_PAREN) {
             current++;
             Expr expr = expression();
             consume(TokenType.RIGHT_PAREN);
             return new Expr.Grouping(expr);
         }
-        if (tk.type == IDENTIFIER) {
-            current++;
-            return new Expr.Variable(tk);
+        if (type == IDENTIFIER) {
+            return new Expr.Variable(advance());
         }
-        if(tk.type == THIS){
-            current++;
-            return new Expr.This(tk);
+        if(type == THIS){
+            return new Expr.This(advance());
         }
         throw new ParserError();
     }
 
     private boolean beforeEnd() {
-        return current <= lastIdx;
+        return has(current);
     }
 
-    private Token match(TokenType... tts) {
-        // if the current token matches one of 'tts', then return the current token and advance.
-        // otherwise, return null
-        if (!beforeEnd()) {
-            return null;
-        }
-        var token = tokens.get(current);
-        for (var tt : tts) {
-            if (token.type == tt) {
-                current++;
-                return token;
+    private boolean has(int index) {
+        // scans tokens up to 'index', false if the source ends before it
+        while (index >= tokens.size() && scanner != null) {
+            if (tokens.isFull()) {
+                tokens.discardBefore(current - 1);
+            }
+            if (!scanner.scanToken(tokens)) {
+                scanner = null;
             }
         }
-        return null;
+        return index < tokens.size();
+    }
+
+    private TokenType peekType() {
+        return tokens.type(current);
+    }
+
+    private Token advance() {
+        current++;
+        return previous();
+    }
+
+    private Token previous() {
+        return tokens.token(current - 1);
     }
 
-    private Token consume(TokenType tt) {
+    private boolean match(TokenType tt) {
+        // if the current token is a 'tt', advance past it
+        if (!beforeEnd() || peekType() != tt) {
+            return false;
+        }
+        current++;
+        return true;
+    }
+
+    private boolean match(TokenType first, TokenType second) {
         if (!beforeEnd()) {
-            throw new ParserError();
+            return false;
         }
-        var tk = tokens.get(current);
-        if (tk.type != tt) {
+        TokenType type = peekType();
+        if (type != first && type != second) {
+            return false;
+        }
+        current++;
+        return true;
+    }
+
+    private void consume(TokenType tt) {
+        if (!beforeEnd() || peekType() != tt) {
             throw new ParserError();
         }
         current++;
-        return tk;
+    }
+
+    private Token consumeToken(TokenType tt) {
+        consume(tt);
+        return previous();
     }
 
 }
@@ -0,0 +1,463 @@
+package crafting.interpreters.core;
+
+import crafting.interpreters.core.base.Expr;
+import crafting.interpreters.core.base.Stmt;
+import crafting.interpreters.core.base.Token;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // Static pass that runs between the Parser and the Interpreter.
+    // Every local variable reference gets the number of frames to walk up (depth)
+    // and its index inside that frame (slot), so the interpreter doesn't need to
+    // look variables up by name. References that are not found in any scope are globals.
+    // Blocks and functions also get the number of slots their frame needs.
+    //
+    // Functions are flat closures: a function gets the list of outer variables it uses, which
+    // are copied to its closure frame when it's declared, so it doesn't keep the frames it's
+    // declared in alive. A captured variable that is assigned lives in a Cell, shared by its
+    // frame and the closures.
+    //
+    // A block whose variables can't be captured, because nothing in it declares a function or
+    // class, gets no frame: its variables take slots of the enclosing frame, which are free again
+    // once the block ends. The same goes for a block declaring no variable at all.
+
+    private static class Local {
+        // a variable in a scope, or a function's capture of an outer one
+        final int slot;
+        // the declared variable, this one unless it's a capture
+        final Local variable;
+        // what the declaration and the references get marked with once the variable is boxed.
+        // A param has no declaration node, resolveFunction looks at its Local instead
+        final Stmt declaration;
+        final List<Expr> references = new ArrayList<>();
+        boolean captured = false;
+        boolean assigned = false;
+        // captured while its own declaration runs: a function calling itself, a method using its class
+        boolean initializing = false;
+        boolean capturedEarly = false;
+
+        Local(int slot, Stmt declaration) {
+            this.slot = slot;
+            this.variable = this;
+            this.declaration = declaration;
+        }
+
+        Local(int slot, Local variable) {
+            this.slot = slot;
+            this.variable = variable;
+            this.declaration = null;
+        }
+
+        boolean boxed() {
+            // a copy in the closure would miss the later assignments
+            return captured && (assigned || capturedEarly);
+        }
+    }
+
+    private record Resolution(int depth, int slot, Local variable) {
+    }
+
+    private static class Scope {
+        private final HashMap<String, Local> locals = new HashMap<>();
+        // every variable declared here, including the ones shadowed by a re-declaration
+        private final List<Local> declared = new ArrayList<>();
+        // the scope whose frame holds the variables, this one unless the scope is merged into it
+        private final Scope frame;
+        // first slot of a merged scope, its slots are given back to the frame when it ends
+        private final int base;
+        // set for the closure scope of a function, whose frame holds the function's captures
+        private final Stmt.Function function;
+        private final List<Resolution> captures = new ArrayList<>();
+        private int size = 0;
+        private int maxSize = 0;
+
+        Scope(Stmt.Function function) {
+            this.frame = this;
+            this.base = 0;
+            this.function = function;
+        }
+
+        Scope(Scope frame) {
+            this.frame = frame;
+            this.base = frame.size;
+            this.function = null;
+        }
+
+        Local declare(String name, Stmt declaration) {
+            // re-declaring a name takes a new slot, the old one keeps its value
+            var local = new Local(frame.size++, declaration);
+            frame.maxSize = Math.max(frame.maxSize, frame.size);
+            locals.put(name, local);
+            declared.add(local);
+            return local;
+        }
+
+        Local capture(String name, Resolution outer) {
+            var local = new Local(size++, outer.variable);
+            captures.add(outer);
+            locals.put(name, local);
+            return local;
+        }
+    }
+
+    private final List<Scope> scopes = new ArrayList<>();
+
+    public void resolve(List<Stmt> statements) {
+        for (Stmt stmt : statements) {
+            stmt.accept(this);
+        }
+    }
+
+    private void resolve(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void beginScope() {
+        scopes.add(new Scope((Stmt.Function) null));
+    }
+
+    private void beginMergedScope() {
+        scopes.add(new Scope(scopes.get(scopes.size() - 1).frame));
+    }
+
+    private int endScope() {
+        // returns how many slots the frame for this scope needs, 0 for a merged scope
+        Scope scope = scopes.remove(scopes.size() - 1);
+        for (Local local : scope.declared) {
+            if (local.boxed()) {
+                box(local);
+            }
+        }
+        if (scope.frame != scope) {
+            scope.frame.size = scope.base;
+            return 0;
+        }
+        return scope.maxSize;
+    }
+
+    private static void box(Local local) {
+        if (local.declaration instanceof Stmt.VarDcl varDcl) {
+            varDcl.boxed = true;
+        } else if (local.declaration instanceof Stmt.Function function) {
+            function.boxed = true;
+        } else if (local.declaration instanceof Stmt.Class klass) {
+            klass.boxed = true;
+        }
+        for (Expr reference : local.references) {
+            if (reference instanceof Expr.Variable variable) {
+                variable.boxed = true;
+            } else if (reference instanceof Expr.Assignment assignment) {
+                assignment.boxed = true;
+            }
+        }
+    }
+
+    private Local declare(Token name, Stmt declaration) {
+        // null for a global
+        if (scopes.isEmpty()) {
+            return null;
+        }
+        return scopes.get(scopes.size() - 1).declare(name.lexeme, declaration);
+    }
+
+    private static int slot(Local local) {
+        return local == null ? -1 : local.slot;
+    }
+
+    private Resolution resolveLocal(String name, int top) {
+        // returns where the name is found from the scope at index top, or null when it must be
+        // looked up in the globals. Only the scopes with a frame of their own count in the depth.
+        // A function only sees its own frames and its closure: the first time it uses an outer
+        // variable, the variable becomes one of its captures
+        int depth = 0;
+        for (int i = top; i >= 0; i--) {
+            Scope scope = scopes.get(i);
+            Local local = scope.locals.get(name);
+            if (local == null && scope.function != null) {
+                Resolution outer = resolveLocal(name, i - 1);
+                if (outer == null) {
+                    return null;
+                }
+                outer.variable.captured = true;
+                outer.variable.capturedEarly |= outer.variable.initializing;
+                local = scope.capture(name, outer);
+            }
+            if (local != null) {
+                return new Resolution(depth, local.slot, local.variable);
+            }
+            if (scope.frame == scope) {
+                depth++;
+            }
+        }
+        return null;
+    }
+
+    private Resolution resolveLocal(String name) {
+        return resolveLocal(name, scopes.size() - 1);
+    }
+
+    private void resolveFunction(Stmt.Function function) {
+        // params and body share the same frame, see LoxFunction.call
+        beginScope();
+        var params = new ArrayList<Local>();
+        for (Token param : function.params) {
+            params.add(declare(param, null));
+        }
+        resolve(function.body);
+        function.slotCount = endScope();
+        function.boxedParams = params.stream().filter(Local::boxed).mapToInt(param -> param.slot).toArray();
+    }
+
+    private void beginClosure(Stmt.Function function) {
+        scopes.add(new Scope(function));
+    }
+
+    private void endClosure() {
+        Scope closure = scopes.remove(scopes.size() - 1);
+        closure.function.captureDepths = closure.captures.stream().mapToInt(Resolution::depth).toArray();
+        closure.function.captureSlots = closure.captures.stream().mapToInt(Resolution::slot).toArray();
+    }
+
+    @Override
+    public Void visitPrint(Stmt.Print stmt) {
+        resolve(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitExprStmt(Stmt.ExprStmt exprStmt) {
+        resolve(exprStmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarDcl(Stmt.VarDcl varDcl) {
+        if (varDcl.expressionInitializer != null) {
+            resolve(varDcl.expressionInitializer);
+        }
+        varDcl.slot = slot(declare(varDcl.name, varDcl));
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Stmt.Block block) {
+        // at the top level there's no frame to merge into, the variables would become globals
+        if (!scopes.isEmpty() && (!declaresFunction(block) || !declaresVariable(block))) {
+            block.needsFrame = false;
+            beginMergedScope();
+        } else {
+            beginScope();
+        }
+        resolve(block.statements);
+        block.slotCount = endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIf(Stmt.If ifStmt) {
+        resolve(ifStmt.condition);
+        ifStmt.thenBranch.accept(this);
+        if (ifStmt.elseBranch != null) {
+            ifStmt.elseBranch.accept(this);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(Stmt.While whileStmt) {
+        resolve(whileStmt.condition);
+        whileStmt.statement.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitFor(Stmt.For forStmt) {
+        // one loop frame, allocated once per run of the loop. It's merged like a block's when the
+        // loop can't be captured, as a loop nested in another one would otherwise allocate it on
+        // every iteration of the outer loop
+        if (!scopes.isEmpty() && !declaresFunction(forStmt.body)) {
+            forStmt.needsFrame = false;
+            beginMergedScope();
+        } else {
+            beginScope();
+        }
+        if (forStmt.initializer != null) {
+            forStmt.initializer.accept(this);
+        }
+        resolve(forStmt.condition);
+        if (forStmt.increment != null) {
+            resolve(forStmt.increment);
+        }
+        forStmt.body.accept(this);
+        forStmt.slotCount = endScope();
+        return null;
+    }
+
+    private static boolean declaresFunction(Stmt stmt) {
+        // functions and methods keep their enclosing frames alive
+        if (stmt instanceof Stmt.Function || stmt instanceof Stmt.Class) {
+            return true;
+        }
+        if (stmt instanceof Stmt.Block block) {
+            return block.statements.stream().anyMatch(Resolver::declaresFunction);
+        }
+        if (stmt instanceof Stmt.If ifStmt) {
+            return declaresFunction(ifStmt.thenBranch)
+                    || (ifStmt.elseBranch != null && declaresFunction(ifStmt.elseBranch));
+        }
+        if (stmt instanceof Stmt.While whileStmt) {
+            return declaresFunction(whileStmt.statement);
+        }
+        if (stmt instanceof Stmt.For forStmt) {
+            return declaresFunction(forStmt.body);
+        }
+        return false;
+    }
+
+    private static boolean declaresVariable(Stmt.Block block) {
+        for (Stmt stmt : block.statements) {
+            if (stmt instanceof Stmt.VarDcl || stmt instanceof Stmt.Function || stmt instanceof Stmt.Class) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Void visitFunction(Stmt.Function function) {
+        // declared before the body is resolved, so the function can call itself
+        Local local = declare(function.name, function);
+        function.slot = slot(local);
+        if (local != null) {
+            local.initializing = true;
+        }
+        beginClosure(function);
+        resolveFunction(function);
+        endClosure();
+        if (local != null) {
+            local.initializing = false;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitReturn(Stmt.Return ret) {
+        if (ret.value != null) {
+            resolve(ret.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClass(Stmt.Class klass) {
+        Local local = declare(klass.name, klass);
+        klass.slot = slot(local);
+        if (local != null) {
+            local.initializing = true;
+        }
+        for (Stmt.Function method : klass.methods) {
+            // a bound method gets an extra frame holding only 'this' between its frame and its
+            // closure, see LoxFunction.bind
+            beginClosure(method);
+            beginScope();
+            scopes.get(scopes.size() - 1).declare("this", null);
+            resolveFunction(method);
+            endScope();
+            endClosure();
+        }
+        if (local != null) {
+            local.initializing = false;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(Expr.Binary expr) {
+        resolve(expr.left);
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Expr.Grouping expr) {
+        resolve(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Expr.Unary expr) {
+        resolve(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Expr.Literal literal) {
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Expr.Variable variable) {
+        Resolution resolution = resolveLocal(variable.name.lexeme);
+        if (resolution != null) {
+            variable.depth = resolution.depth;
+            variable.slot = resolution.slot;
+            resolution.variable.references.add(variable);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignment(Expr.Assignment assignment) {
+        resolve(assignment.expression);
+        Resolution resolution = resolveLocal(assignment.name.lexeme);
+        if (resolution != null) {
+            assignment.depth = resolution.depth;
+            assignment.slot = resolution.slot;
+            resolution.variable.assigned = true;
+            resolution.variable.references.add(assignment);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(Expr.Logical logical) {
+        resolve(logical.left);
+        resolve(logical.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Expr.Call call) {
+        resolve(call.callee);
+        for (Expr arg : call.arguments) {
+            resolve(arg);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGet(Expr.Get get) {
+        resolve(get.object);
+        return null;
+    }
+
+    @Override
+    public Void visitSet(Expr.Set set) {
+        resolve(set.object);
+        resolve(set.value);
+        return null;
+    }
+
+    @Override
+    public Void visitThis(Expr.This expr) {
+        Resolution resolution = resolveLocal("this");
+        if (resolution != null) {
+            expr.depth = resolution.depth;
+            expr.slot = resolution.slot;
+        }
+        return null;
+    }
+}
@@ -1,30 +1,77 @@
 package crafting.interpreters.core;
 
 import crafting.interpreters.core.base.Char;
+import crafting.interpreters.core.base.Symbols;
 import crafting.interpreters.core.base.Token;
 import crafting.interpreters.core.base.TokenType;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 
 import static crafting.interpreters.core.base.TokenType.*;
 
 public class Scanner {
+    // Pulls tokens one at a time from a Reader, see scanToken. The source is read in
+    // fixed-size chunks into 'buffer', only the characters of the token being scanned are
+    // kept when the buffer is refilled, so a whole program is never held in memory.
+    // Given UTF-8 bytes instead (a mapped file), the scanner reads them in place, see advance.
+    static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private char[] buffer;
+    // the source as UTF-8 bytes, null when it's read through 'reader'
+    private final ByteBuffer bytes;
+    // number of characters read into the buffer
+    private int limit = 0;
+    // offset in the source of the first character in the buffer
+    private int offset = 0;
+    private boolean endOfInput = false;
     private int current = 0;
-    private final int last_idx;
 
     public boolean hadError;
-    private final String source;
     private int line = 1;
     private int start = 0;
-    private final HashMap<String, TokenType> keywords;
     private final List<Token> tokens = new ArrayList<>();
+    // buffer the token being scanned goes to, and whether it got one yet
+    private TokenBuffer into;
+    private boolean added;
+    private boolean reachedEof = false;
+    // one token buffer for nextToken
+    private TokenBuffer single;
     public static class ScannerError extends RuntimeException {}
     public Scanner(String source) {
-        this.source = source;
-        last_idx = source.length() - 1;
-        keywords = Token.buildKeywordsMap();
+        this(new StringReader(source), Math.max(1, Math.min(source.length(), BUFFER_SIZE)));
+    }
+
+    public Scanner(Reader reader) {
+        this(reader, BUFFER_SIZE);
+    }
+
+    public Scanner(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    Scanner(Reader reader, int bufferSize) {
+        this.reader = reader;
+        this.buffer = new char[bufferSize];
+        this.bytes = null;
+    }
+
+    public Scanner(ByteBuffer source) {
+        // scans the bytes from the buffer's position to its limit, without copying them
+        this.reader = null;
+        this.bytes = source.slice();
+        this.limit = bytes.limit();
+        this.endOfInput = true;
     }
 
     public List<Token> scanTokens() {
@@ -34,43 +81,75 @@ public class Scanner {
             return tokens;
         }
 
-        if (source.length() == 0) {
+        if (!beforeEnd()) {
             return new ArrayList<>();
         }
-        while (beforeEnd()) {
+        Token next;
+        while ((next = nextToken()) != null) {
+            tokens.add(next);
+        }
+        return tokens;
+    }
+
+    public Token nextToken() {
+        // scans and returns the next token, EOF once the source ends and null after that
+        if (single == null) {
+            single = new TokenBuffer(1);
+        }
+        single.clear();
+        return scanToken(single) ? single.token(0) : null;
+    }
+
+    public TokenBuffer scanAll() {
+        // scans the rest of the source into one buffer
+        var buffer = new TokenBuffer();
+        while (scanToken(buffer)) {
+        }
+        return buffer;
+    }
+
+    public boolean scanToken(TokenBuffer into) {
+        // scans the next token into the buffer, EOF once the source ends.
+        // false when there's nothing left, after EOF
+        if (reachedEof) {
+            return false;
+        }
+        this.into = into;
+        added = false;
+        while (!added && beforeEnd()) {
             start = current;
             char c = advance();
 
             switch (c) {
                 case ';':
-                    addToken(SEMICOLON, ";", null);
+                    addToken(SEMICOLON);
                     break;
                 case '+':
-                    addToken(PLUS, "+", null);
+                    addToken(PLUS);
                     break;
                 case '(':
-                    addToken(LEFT_PAREN, "(", null);
+                    addToken(LEFT_PAREN);
                     break;
                 case ')':
-                    addToken(RIGHT_PAREN, ")", null);
+                    addToken(RIGHT_PAREN);
                     break;
                 case '{':
-                    addToken(LEFT_BRACE, "{", null);
+                    addToken(LEFT_BRACE);
                     break;
                 case '}':
-                    addToken(RIGHT_BRACE, "}", null);
+                    addToken(RIGHT_BRACE);
                     break;
                 case ',':
-                    addToken(COMMA, ",", null);
+                    addToken(COMMA);
                     break;
                 case '.':
-                    addToken(DOT, ".", null);
+                    addToken(DOT);
                     break;
                 case '-':
-                    addToken(MINUS, "-", null);
+                    addToken(MINUS);
                     break;
                 case '*':
-                    addToken(STAR, "*", null);
+                    addToken(STAR);
                     break;
                 case '\n':
                     line += 1;
@@ -82,39 +161,39 @@ public class Scanner {
                         }
                         break;
                     }
-                    addToken(SLASH, "/", null);
+                    addToken(SLASH);
                     break;
                 case '=':
                     if (beforeEnd() && peek() == '=') {
                         advance();
-                        addToken(EQUAL_EQUAL, "==", null);
+                        addToken(EQUAL_EQUAL);
                         break;
                     }
-                    addToken(EQUAL, "=", null);
+                    addToken(EQUAL);
                     break;
                 case '!':
                     if (beforeEnd() && peek() == '=') {
                         advance();
-                        addToken(BANG_EQUAL, "!=", null);
+                        addToken(BANG_EQUAL);
                         break;
                     }
-                    addToken(BANG, "!", null);
+                    addToken(BANG);
                     break;
                 case '>':
                     if (beforeEnd() && peek() == '=') {
                         advance();
-                        addToken(GREATER_EQUAL, ">=", null);
+                        addToken(GREATER_EQUAL);
                         break;
                     }
-                    addToken(GREATER, ">", null);
+                    addToken(GREATER);
                     break;
                 case '<':
                     if (beforeEnd() && peek() == '=') {
                         advance();
-                        addToken(LESS_EQUAL, "<=", null);
+                        addToken(LESS_EQUAL);
                         break;
                     }
-                    addToken(LESS, "<", null);
+                    addToken(LESS);
                     break;
                 case '"':
                     string();
@@ -137,37 +216,108 @@ public class Scanner {
 
         }
 
-        // add EOF if not added yet
-        if (tokens.size() == 0 || tokens.get(tokens.size() - 1).type != TokenType.EOF) {
-            addToken(EOF, null, null);
+        if (!added) {
+            reachedEof = true;
+            start = current;
+            addToken(EOF);
         }
-        return tokens;
+        into = null;
+        return true;
+    }
+
+    void addToken(TokenType type) {
+        addToken(type, null);
     }
 
-    void addToken(TokenType type, String lexeme, Object literal) {
-        tokens.add(new Token(
-                type, lexeme, literal, line
-        ));
+    void addToken(TokenType type, String lexeme) {
+        into.add(type, offset + start, current - start, line, lexeme);
+        added = true;
     }
 
     private char advance() {
-        // return 'current' and increment 1
-        return source.charAt(current++);
+        // return 'current' and increment 1.
+        // A byte is returned as the char with the same value: everything outside string
+        // literals is ASCII and the bytes of a multi-byte UTF-8 character are all >= 0x80,
+        // so they can't be mistaken for a quote or a newline. Strings are decoded in stringLexeme.
+        if (bytes != null) {
+            return (char) (bytes.get(current++) & 0xff);
+        }
+        return buffer[current++];
     }
 
     private char peek() {
         // return 'current' without advancing
-        return source.charAt(current);
+        return charAt(current);
+    }
+
+    private char charAt(int index) {
+        if (bytes != null) {
+            return (char) (bytes.get(index) & 0xff);
+        }
+        return buffer[index];
     }
 
     private boolean beforeEnd() {
-        return current <= last_idx;
+        return current < limit || fill();
+    }
+
+    private boolean fill() {
+        // reads more of the source, keeping the token being scanned at the front of the buffer.
+        // The buffer only grows when a single token is longer than it.
+        while (!endOfInput) {
+            if (start > 0) {
+                System.arraycopy(buffer, start, buffer, 0, limit - start);
+                offset += start;
+                limit -= start;
+                current -= start;
+                start = 0;
+            }
+            if (limit == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read;
+            try {
+                read = reader.read(buffer, limit, buffer.length - limit);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (read == -1) {
+                endOfInput = true;
+            } else if (read > 0) {
+                limit += read;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String lexeme(int from, int to) {
+        // identifiers and numbers, which only have ASCII characters
+        if (bytes != null) {
+            return new String(copy(from, to), StandardCharsets.ISO_8859_1);
+        }
+        return new String(buffer, from, to - from);
+    }
+
+    private String stringLexeme(int from, int to) {
+        if (bytes != null) {
+            return new String(copy(from, to), StandardCharsets.UTF_8);
+        }
+        return new String(buffer, from, to - from);
+    }
+
+    private byte[] copy(int from, int to) {
+        byte[] chunk = new byte[to - from];
+        bytes.get(from, chunk);
+        return chunk;
     }
 
     private void string() {
+        boolean terminated = false;
         while (beforeEnd()) {
             if (peek() == '"') {
                 advance();
+                terminated = true;
                 break;
             }
             if (peek() == '\n') {
@@ -176,35 +326,93 @@ public class Scanner {
             advance();
         }
 
-        if (source.charAt(current - 1) != '"') {
+        if (!terminated) {
             error(line, "Unterminated string");
             return;
         }
 
-        String lex = source.substring(start, current);
-        addToken(STRING, lex, source.substring(start + 1, current - 1));
+        addToken(STRING, stringLexeme(start, current));
     }
 
     private void identifier_or_keyword() {
         while (beforeEnd() && Char.isAlphaNumeric(peek())) {
             advance();
         }
-        String lex = source.substring(start, current);
-        TokenType kw = keywords.get(lex);
-        if (kw == null) {
-            addToken(IDENTIFIER, lex, null);
-            return;
-        }
-        if (kw == TRUE) {
-            addToken(kw, lex, true);
+        TokenType type = keyword();
+        if (type == IDENTIFIER) {
+            // interned from the buffer, a name seen before makes no String
+            int symbol = bytes != null ? Symbols.intern(bytes, start, current) : Symbols.intern(buffer, start, current);
+            into.addIdentifier(symbol, offset + start, current - start, line);
+            added = true;
             return;
         }
-        if (kw == FALSE) {
-            addToken(kw, lex, false);
-            return;
+        addToken(type);
+    }
+
+    private TokenType keyword() {
+        // decides from the characters in the buffer whether the identifier is a keyword:
+        // switch on its first one (two for 'f' and 't'), then compare the length and the rest
+        int length = current - start;
+        switch (charAt(start)) {
+            case 'a':
+                return keyword(1, "nd", AND);
+            case 'c':
+                return keyword(1, "lass", CLASS);
+            case 'e':
+                return keyword(1, "lse", ELSE);
+            case 'f':
+                if (length > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'a':
+                            return keyword(2, "lse", FALSE);
+                        case 'o':
+                            return keyword(2, "r", FOR);
+                        case 'u':
+                            return keyword(2, "n", FUN);
+                    }
+                }
+                break;
+            case 'i':
+                return keyword(1, "f", IF);
+            case 'n':
+                return keyword(1, "il", NIL);
+            case 'o':
+                return keyword(1, "r", OR);
+            case 'p':
+                return keyword(1, "rint", PRINT);
+            case 'r':
+                return keyword(1, "eturn", RETURN);
+            case 's':
+                return keyword(1, "uper", SUPER);
+            case 't':
+                if (length > 1) {
+                    switch (charAt(start + 1)) {
+                        case 'h':
+                            return keyword(2, "is", THIS);
+                        case 'r':
+                            return keyword(2, "ue", TRUE);
+                    }
+                }
+                break;
+            case 'v':
+                return keyword(1, "ar", VAR);
+            case 'w':
+                return keyword(1, "hile", WHILE);
         }
-        addToken(kw, lex, null);
+        return IDENTIFIER;
+    }
 
+    private TokenType keyword(int from, String rest, TokenType type) {
+        // 'type' when the identifier is 'rest' after its first 'from' characters
+        if (current - start != from + rest.length()) {
+            return IDENTIFIER;
+        }
+        for (int i = 0; i < rest.length(); i++) {
+            if (charAt(start + from + i) != rest.charAt(i)) {
+                return IDENTIFIER;
+            }
+        }
+        return type;
     }
 
     private void number() {
@@ -217,8 +425,8 @@ public class Scanner {
                 advance();
             }
         }
-        String lex = source.substring(start, current);
-        addToken(NUMBER, lex, Double.parseDouble(lex));
+        String lex = lexeme(start, current);
+        addToken(NUMBER, lex);
     }
 
     void error(int line, String message) {
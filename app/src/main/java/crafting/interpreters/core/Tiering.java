@@ -0,0 +1,100 @@
+package crafting.interpreters.core;
+
+import crafting.interpreters.closures.ClosureCompiler;
+import crafting.interpreters.closures.ClosureFunction;
+import crafting.interpreters.core.base.Stmt;
+import crafting.interpreters.jit.JitCode;
+import crafting.interpreters.jit.JitCompiler;
+
+import java.util.IdentityHashMap;
+
+public final class Tiering {
+    // Decides when a function of the tree-walker moves to a faster tier. Each function counts
+    // its calls and the back-edges of its loops; once its hotness reaches a threshold the body
+    // is compiled by the ClosureCompiler, then by the JitCompiler if it supports the function.
+    // A short script stays in the tree-walker and compiles nothing. The switch happens on the
+    // next call, a threshold of 0 turns a tier off, e.g. -Dlox.tier.closures=0 -Dlox.tier.bytecode=1
+    // Loops at the top level run only once, they are compiled in the middle of their run instead.
+    //
+    // Each Interpreter has its own Tiering. The counters and the compiled code are kept here,
+    // keyed by the AST node, and not on the node: compiled code is bound to the interpreter that
+    // compiled it (its globals, its output), and the same statements may run on another one.
+
+    public static final int CLOSURES_THRESHOLD = Integer.getInteger("lox.tier.closures", 1000);
+    public static final int BYTECODE_THRESHOLD = Integer.getInteger("lox.tier.bytecode", 10000);
+    // back-edges after which a loop at the top level is replaced by its compiled version
+    public static final int OSR_THRESHOLD = Integer.getInteger("lox.tier.osr", 10000);
+    // loop iterations worth a call
+    static final int BACK_EDGES_PER_CALL = 16;
+
+    public static final class FunctionTier {
+        // counters of the tree-walker and the compiled bodies of the tiers above it
+        public int invocations = 0;
+        public int backEdges = 0;
+        // hotness at which promote is called next, 0 before the first call
+        public int promoteAt = 0;
+        public ClosureFunction.Body closureBody = null;
+        public JitCode jitCode = null;
+    }
+
+    public static final class LoopTier {
+        // back-edges taken at the top level and the compiled loop replacing it, see replaceLoop
+        public int backEdges = 0;
+        public ClosureCompiler.StmtCode osrCode = null;
+    }
+
+    private final IdentityHashMap<Stmt.Function, FunctionTier> functions = new IdentityHashMap<>();
+    private final IdentityHashMap<Stmt, LoopTier> loops = new IdentityHashMap<>();
+
+    public FunctionTier function(Stmt.Function function) {
+        // looked up when the function is declared, the LoxFunction keeps it for its calls
+        return functions.computeIfAbsent(function, f -> new FunctionTier());
+    }
+
+    public LoopTier loop(Stmt loop) {
+        return loops.computeIfAbsent(loop, l -> new LoopTier());
+    }
+
+    public static int hotness(FunctionTier tier) {
+        return tier.invocations + tier.backEdges / BACK_EDGES_PER_CALL;
+    }
+
+    public static void promote(Interpreter interpreter, Stmt.Function function, FunctionTier tier) {
+        // called when the hotness reaches tier.promoteAt
+        int hotness = hotness(tier);
+        if (BYTECODE_THRESHOLD > 0 && hotness >= BYTECODE_THRESHOLD && tier.jitCode == null) {
+            // stays null for the functions the JitCompiler doesn't handle
+            tier.jitCode = JitCompiler.compile(function);
+        }
+        if (CLOSURES_THRESHOLD > 0 && hotness >= CLOSURES_THRESHOLD && tier.jitCode == null
+                && tier.closureBody == null) {
+            tier.closureBody = new ClosureCompiler(interpreter).compileFunction(function);
+        }
+        tier.promoteAt = nextThreshold(tier, hotness);
+    }
+
+    public static ClosureCompiler.StmtCode replaceLoop(Interpreter interpreter, Stmt.While loop, LoopTier tier) {
+        tier.osrCode = new ClosureCompiler(interpreter).compileStatement(loop);
+        return tier.osrCode;
+    }
+
+    public static ClosureCompiler.StmtCode replaceLoop(Interpreter interpreter, Stmt.For loop, LoopTier tier) {
+        // runs the condition, body and increment on the loop frame, the initializer already ran
+        tier.osrCode = new ClosureCompiler(interpreter).compileForLoop(loop);
+        return tier.osrCode;
+    }
+
+    private static int nextThreshold(FunctionTier tier, int hotness) {
+        int next = Integer.MAX_VALUE;
+        if (tier.jitCode != null) {
+            return next;
+        }
+        if (BYTECODE_THRESHOLD > hotness) {
+            next = BYTECODE_THRESHOLD;
+        }
+        if (CLOSURES_THRESHOLD > hotness && tier.closureBody == null) {
+            next = Math.min(next, CLOSURES_THRESHOLD);
+        }
+        return next;
+    }
+}
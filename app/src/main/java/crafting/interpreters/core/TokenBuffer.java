@@ -0,0 +1,201 @@
+package crafting.interpreters.core;
+
+import crafting.interpreters.core.base.Symbols;
+import crafting.interpreters.core.base.Token;
+import crafting.interpreters.core.base.TokenType;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static crafting.interpreters.core.base.TokenType.*;
+
+public final class TokenBuffer {
+    // Tokens kept as parallel arrays instead of Token objects: the type, the offset and length of
+    // the token in the source, and its line. Only identifiers, numbers and strings have a lexeme
+    // of their own, it goes to the 'lexemes' side table. Everything else is known from the type.
+    // Identifiers also keep their symbol id, their lexeme is the name shared in Symbols.
+    // A Token is only made when one is asked for, see token.
+    //
+    // Tokens are indexed from the start of the source. The Parser drops the ones it's done with
+    // (discardBefore), so scanning a large file doesn't keep all of its tokens.
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final String[] FIXED_LEXEMES = new String[TYPES.length];
+
+    static {
+        FIXED_LEXEMES[LEFT_PAREN.ordinal()] = "(";
+        FIXED_LEXEMES[RIGHT_PAREN.ordinal()] = ")";
+        FIXED_LEXEMES[LEFT_BRACE.ordinal()] = "{";
+        FIXED_LEXEMES[RIGHT_BRACE.ordinal()] = "}";
+        FIXED_LEXEMES[COMMA.ordinal()] = ",";
+        FIXED_LEXEMES[DOT.ordinal()] = ".";
+        FIXED_LEXEMES[MINUS.ordinal()] = "-";
+        FIXED_LEXEMES[PLUS.ordinal()] = "+";
+        FIXED_LEXEMES[SEMICOLON.ordinal()] = ";";
+        FIXED_LEXEMES[SLASH.ordinal()] = "/";
+        FIXED_LEXEMES[STAR.ordinal()] = "*";
+        FIXED_LEXEMES[BANG.ordinal()] = "!";
+        FIXED_LEXEMES[BANG_EQUAL.ordinal()] = "!=";
+        FIXED_LEXEMES[EQUAL.ordinal()] = "=";
+        FIXED_LEXEMES[EQUAL_EQUAL.ordinal()] = "==";
+        FIXED_LEXEMES[GREATER.ordinal()] = ">";
+        FIXED_LEXEMES[GREATER_EQUAL.ordinal()] = ">=";
+        FIXED_LEXEMES[LESS.ordinal()] = "<";
+        FIXED_LEXEMES[LESS_EQUAL.ordinal()] = "<=";
+        FIXED_LEXEMES[AND.ordinal()] = "and";
+        FIXED_LEXEMES[CLASS.ordinal()] = "class";
+        FIXED_LEXEMES[ELSE.ordinal()] = "else";
+        FIXED_LEXEMES[FALSE.ordinal()] = "false";
+        FIXED_LEXEMES[FUN.ordinal()] = "fun";
+        FIXED_LEXEMES[FOR.ordinal()] = "for";
+        FIXED_LEXEMES[IF.ordinal()] = "if";
+        FIXED_LEXEMES[NIL.ordinal()] = "nil";
+        FIXED_LEXEMES[OR.ordinal()] = "or";
+        FIXED_LEXEMES[PRINT.ordinal()] = "print";
+        FIXED_LEXEMES[RETURN.ordinal()] = "return";
+        FIXED_LEXEMES[SUPER.ordinal()] = "super";
+        FIXED_LEXEMES[THIS.ordinal()] = "this";
+        FIXED_LEXEMES[TRUE.ordinal()] = "true";
+        FIXED_LEXEMES[VAR.ordinal()] = "var";
+        FIXED_LEXEMES[WHILE.ordinal()] = "while";
+    }
+
+    private int[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+    private int[] symbols;
+    private String[] lexemes;
+    // index of the token in the first slot, the ones before it were discarded
+    private int first = 0;
+    // number of tokens in the arrays
+    private int count = 0;
+
+    public TokenBuffer() {
+        this(64);
+    }
+
+    public TokenBuffer(int capacity) {
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        symbols = new int[capacity];
+        lexemes = new String[capacity];
+    }
+
+    public static TokenBuffer of(List<Token> tokens) {
+        var buffer = new TokenBuffer(Math.max(1, tokens.size()));
+        for (Token token : tokens) {
+            int length = token.lexeme == null ? 0 : token.lexeme.length();
+            if (token.type == IDENTIFIER && token.symbol != -1) {
+                buffer.addIdentifier(token.symbol, 0, length, token.line);
+            } else {
+                buffer.add(token.type, 0, length, token.line, token.lexeme);
+            }
+        }
+        return buffer;
+    }
+
+    void addIdentifier(int symbol, int start, int length, int line) {
+        add(IDENTIFIER, start, length, line, Symbols.name(symbol));
+        symbols[count - 1] = symbol;
+    }
+
+    void add(TokenType type, int start, int length, int line, String lexeme) {
+        if (count == types.length) {
+            int capacity = count * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+            lexemes = Arrays.copyOf(lexemes, capacity);
+        }
+        types[count] = type.ordinal();
+        starts[count] = start;
+        lengths[count] = length;
+        lines[count] = line;
+        symbols[count] = -1;
+        lexemes[count] = FIXED_LEXEMES[type.ordinal()] == null ? lexeme : null;
+        count++;
+    }
+
+    boolean isFull() {
+        return count == types.length;
+    }
+
+    void discardBefore(int index) {
+        // drops the tokens before 'index', making room for new ones without growing
+        int drop = index - first;
+        if (drop <= 0) {
+            return;
+        }
+        count -= drop;
+        System.arraycopy(types, drop, types, 0, count);
+        System.arraycopy(starts, drop, starts, 0, count);
+        System.arraycopy(lengths, drop, lengths, 0, count);
+        System.arraycopy(lines, drop, lines, 0, count);
+        System.arraycopy(symbols, drop, symbols, 0, count);
+        System.arraycopy(lexemes, drop, lexemes, 0, count);
+        Arrays.fill(lexemes, count, count + drop, null);
+        first = index;
+    }
+
+    void clear() {
+        Arrays.fill(lexemes, 0, count, null);
+        first = 0;
+        count = 0;
+    }
+
+    public int size() {
+        // index after the last token added
+        return first + count;
+    }
+
+    public TokenType type(int index) {
+        return TYPES[types[index - first]];
+    }
+
+    public int start(int index) {
+        return starts[index - first];
+    }
+
+    public int length(int index) {
+        return lengths[index - first];
+    }
+
+    public int line(int index) {
+        return lines[index - first];
+    }
+
+    public int symbol(int index) {
+        return symbols[index - first];
+    }
+
+    public String lexeme(int index) {
+        int slot = index - first;
+        String fixed = FIXED_LEXEMES[types[slot]];
+        return fixed != null ? fixed : lexemes[slot];
+    }
+
+    public Object literal(int index) {
+        // computed from the lexeme, only the literals the parser keeps are ever made
+        switch (type(index)) {
+            case NUMBER:
+                return Double.parseDouble(lexeme(index));
+            case STRING:
+                String lexeme = lexeme(index);
+                return lexeme.substring(1, lexeme.length() - 1);
+            case TRUE:
+                return true;
+            case FALSE:
+                return false;
+            default:
+                return null;
+        }
+    }
+
+    public Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), line(index), symbol(index));
+    }
+}
@@ -0,0 +1,11 @@
+package crafting.interpreters.core.base;
+
+public final class Cell {
+    // Box of a local variable that closures capture and that is assigned after they capture it.
+    // The frame slot and the closures' copies all point to the cell, so they see the same value.
+    public Object value;
+
+    public Cell(Object value) {
+        this.value = value;
+    }
+}
@@ -1,45 +1,41 @@
 package crafting.interpreters.core.base;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class Environment {
-    public final Map<String, Object> values;
-    public final Environment enclosing;
+    // Global variables. Local variables live in a Frame.
+    // A global takes the next slot of 'values' when it's first defined, 'slots' maps the symbol
+    // id of its name to that slot. The array grows with this interpreter's own globals only,
+    // whatever ids the other programs of the process interned before.
+    private final SymbolMap<Integer> slots = new SymbolMap<>();
+    private Object[] values = new Object[16];
+    private int count = 0;
 
-    public Environment() {
-        values = new HashMap<>();
-        enclosing = null;
-    }
-
-    public Environment(Environment enclosing) {
-        values = new HashMap<>();
-        this.enclosing = enclosing;
-    }
-
-    public void define(String name, Object value) {
-        values.put(name, value);
+    public void define(int symbol, Object value) {
+        Integer slot = slots.get(symbol);
+        if (slot == null) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            slot = count++;
+            slots.put(symbol, slot);
+        }
+        values[slot] = value;
     }
 
-    public Object readVariableValue(String name) {
-        if (values.containsKey(name)) {
-            return values.get(name);
-        }
-        if (enclosing != null) {
-            return enclosing.readVariableValue(name);
+    public Object readVariableValue(int symbol) {
+        Integer slot = slots.get(symbol);
+        if (slot == null) {
+            throw new RuntimeException("Variable not declared");
         }
-        throw new RuntimeException("Variable not declared");
+        return values[slot];
     }
 
-    public void assign(String name, Object value) {
-        if (values.containsKey(name)) {
-            values.put(name, value);
-            return;
-        }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+    public void assign(int symbol, Object value) {
+        Integer slot = slots.get(symbol);
+        if (slot == null) {
+            throw new RuntimeException("Variable not declared");
         }
-        throw new RuntimeException("Variable not declared");
+        values[slot] = value;
     }
 }
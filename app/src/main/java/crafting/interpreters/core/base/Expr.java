@@ -87,6 +87,11 @@ public abstract class Expr {
 
     static public class Variable extends Expr {
         public final Token name;
+        // lexical coordinates filled in by the Resolver. depth -1 means a global lookup by name.
+        // A boxed variable holds a Cell shared with the closures capturing it, see Resolver
+        public int depth = -1;
+        public int slot = -1;
+        public boolean boxed = false;
 
         public Variable(Token name) {
             this.name = name;
@@ -116,6 +121,9 @@ public abstract class Expr {
     static public class Assignment extends Expr {
         public final Token name;
         public final Expr expression;
+        public int depth = -1;
+        public int slot = -1;
+        public boolean boxed = false;
 
         public Assignment(Token name, Expr expression) {
             this.name = name;
@@ -179,6 +187,8 @@ public abstract class Expr {
     }
     static public class This extends Expr {
         public final Token keyword;
+        public int depth = -1;
+        public int slot = -1;
 
         public This(Token keyword) {
             this.keyword = keyword;
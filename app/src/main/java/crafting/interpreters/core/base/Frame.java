@@ -0,0 +1,52 @@
+package crafting.interpreters.core.base;
+
+public class Frame {
+    // Environment of a block or a function call. Its size is computed by the Resolver,
+    // so a frame is a single array instead of a map. Globals still live in an Environment.
+    // The frame chain of a call ends at the function's closure frame, not at the frame the
+    // function was declared in.
+    public final Object[] slots;
+    public final Frame enclosing;
+
+    public Frame(Frame enclosing, int size) {
+        this.slots = new Object[size];
+        this.enclosing = enclosing;
+    }
+
+    public Object getAt(int depth, int slot) {
+        return ancestor(depth).slots[slot];
+    }
+
+    public void assignAt(int depth, int slot, Object value) {
+        ancestor(depth).slots[slot] = value;
+    }
+
+    public static Frame capture(Frame frame, Stmt.Function function) {
+        // the closure of a function: a flat frame with only the variables it uses, read from
+        // the frame it's declared in. Boxed variables copy their cell, so they stay shared
+        int count = function.captureSlots.length;
+        if (count == 0) {
+            return null;
+        }
+        var closure = new Frame(null, count);
+        for (int i = 0; i < count; i++) {
+            closure.slots[i] = frame.getAt(function.captureDepths[i], function.captureSlots[i]);
+        }
+        return closure;
+    }
+
+    public void box(int[] slots) {
+        // puts the params a closure captures and assigns in cells, at the start of a call
+        for (int slot : slots) {
+            this.slots[slot] = new Cell(this.slots[slot]);
+        }
+    }
+
+    private Frame ancestor(int depth) {
+        Frame frame = this;
+        for (int i = 0; i < depth; i++) {
+            frame = frame.enclosing;
+        }
+        return frame;
+    }
+}
@@ -2,29 +2,61 @@ package crafting.interpreters.core.base;
 
 import crafting.interpreters.Lox;
 import crafting.interpreters.core.Interpreter;
-import crafting.interpreters.core.Interpreter.ReturnException;
+import crafting.interpreters.core.Tiering;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
 
 public interface LoxCallable {
     int arity();
 
     Object call(Interpreter interpreter, List<Object> arguments);
 
+    // Fixed arity entry points, so the common calls don't build a list of arguments.
+    // Callers check the arity before calling, the defaults fall back to call(interpreter, arguments).
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, List.of());
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, Arrays.asList(a));
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
+
+    default Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+        return call(interpreter, Arrays.asList(a, b, c, d));
+    }
+
     class LoxFunction implements LoxCallable {
         private final Stmt.Function declaration;
-        private final LoxInstance thisInstance;
+        // the captured variables, see Frame.capture. null when the function captures nothing
+        private final Frame closure;
+        // counters and compiled bodies of the declaration in the interpreter that declared it,
+        // null for the functions of the other engines, which override execute
+        private final Tiering.FunctionTier tier;
 
-        public LoxFunction(Stmt.Function declaration) {
-            this.declaration = declaration;
-            this.thisInstance = null;
+        public LoxFunction(Stmt.Function declaration, Frame closure) {
+            this(declaration, closure, null);
         }
 
-        public LoxFunction(Stmt.Function declaration, LoxInstance thisInstance) {
+        public LoxFunction(Stmt.Function declaration, Frame closure, Tiering.FunctionTier tier) {
             this.declaration = declaration;
-            this.thisInstance = thisInstance;
+            this.closure = closure;
+            this.tier = tier;
+        }
+
+        public LoxFunction bind(LoxInstance instance) {
+            // 'this' lives in its own frame between the closure and the function's frame
+            var thisFrame = new Frame(closure, 1);
+            thisFrame.slots[0] = instance;
+            return new LoxFunction(declaration, thisFrame, tier);
         }
 
         @Override
@@ -34,36 +66,108 @@ public interface LoxCallable {
 
         @Override
         public Object call(Interpreter interpreter, List<Object> arguments) {
-            var enclosingEnv = interpreter.environment;
-            var functionEnv = new Environment(enclosingEnv);
+            var frame = newFrame(null);
             for (var i = 0; i < arguments.size(); i++) {
-                functionEnv.define(declaration.params.get(i).lexeme, arguments.get(i));
+                frame.slots[i] = arguments.get(i);
+            }
+            return execute(interpreter, frame);
+        }
+
+        @Override
+        public Object call0(Interpreter interpreter) {
+            return execute(interpreter, newFrame(null));
+        }
+
+        @Override
+        public Object call1(Interpreter interpreter, Object a) {
+            var frame = newFrame(null);
+            frame.slots[0] = a;
+            return execute(interpreter, frame);
+        }
+
+        @Override
+        public Object call2(Interpreter interpreter, Object a, Object b) {
+            var frame = newFrame(null);
+            frame.slots[0] = a;
+            frame.slots[1] = b;
+            return execute(interpreter, frame);
+        }
+
+        @Override
+        public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+            var frame = newFrame(null);
+            frame.slots[0] = a;
+            frame.slots[1] = b;
+            frame.slots[2] = c;
+            return execute(interpreter, frame);
+        }
+
+        @Override
+        public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+            var frame = newFrame(null);
+            frame.slots[0] = a;
+            frame.slots[1] = b;
+            frame.slots[2] = c;
+            frame.slots[3] = d;
+            return execute(interpreter, frame);
+        }
+
+        public Frame newFrame(LoxInstance receiver) {
+            // frame for a call, the arguments go in its first slots.
+            // Given a receiver, it's put in the 'this' frame the same way bind does,
+            // so a method can be called without allocating the bound function.
+            Frame enclosing = closure;
+            if (receiver != null) {
+                enclosing = new Frame(closure, 1);
+                enclosing.slots[0] = receiver;
+            }
+            return new Frame(enclosing, declaration.slotCount);
+        }
+
+        public Object execute(Interpreter interpreter, Frame frame) {
+            Stmt.Function function = declaration;
+            Tiering.FunctionTier tier = this.tier;
+            tier.invocations++;
+            if (Tiering.hotness(tier) >= tier.promoteAt) {
+                Tiering.promote(interpreter, function, tier);
+            }
+            if (tier.jitCode != null) {
+                return tier.jitCode.execute(interpreter, frame.slots);
             }
-            if (this.thisInstance != null) {
-                functionEnv.define("this", thisInstance);
+            if (tier.closureBody != null) {
+                return tier.closureBody.execute(frame);
             }
+            frame.box(function.boxedParams);
+            // the loops of the body count their back-edges in this function
+            Tiering.FunctionTier caller = interpreter.function;
+            interpreter.function = tier;
             try {
-                interpreter.executeBlock(declaration.body, functionEnv);
-            } catch (ReturnException ret) {
-                return ret.value;
+                if (interpreter.executeBlock(function.body, frame) == Interpreter.Completion.RETURN) {
+                    return interpreter.takeReturnValue();
+                }
+                return null;
+            } finally {
+                interpreter.function = caller;
             }
-            return null;
         }
     }
 
     class LoxClass implements LoxCallable {
 
         private final String name;
-        private final HashMap<String, LoxFunction> methods;
+        // keyed by the symbol id of the method's name
+        private final SymbolMap<LoxFunction> methods;
+        // shape of a new instance, with no fields yet
+        final Shape rootShape = Shape.root();
 
-        public LoxClass(String name, HashMap<String, LoxFunction> methods) {
+        public LoxClass(String name, SymbolMap<LoxFunction> methods) {
             this.name = name;
             this.methods = methods;
         }
 
         @Override
         public int arity() {
-            LoxFunction init = findMethod("init");
+            LoxFunction init = findMethod(Symbols.INIT);
             if (init != null) {
                 return init.arity();
             }
@@ -73,26 +177,70 @@ public interface LoxCallable {
         @Override
         public Object call(Interpreter interpreter, List<Object> arguments) {
             var instance = new LoxInstance(this);
-            LoxFunction init = instance.getInit();
+            LoxFunction init = findMethod(Symbols.INIT);
             if (init != null) {
-                Object ret = init.call(interpreter, arguments);
-                if (ret != null) {
-                    throw new RuntimeException("init should return nil");
+                var frame = init.newFrame(instance);
+                for (var i = 0; i < arguments.size(); i++) {
+                    frame.slots[i] = arguments.get(i);
                 }
+                initialize(interpreter, init, frame);
             }
             return instance;
         }
 
+        @Override
+        public Object call0(Interpreter interpreter) {
+            return construct(interpreter, 0, null, null, null, null);
+        }
+
+        @Override
+        public Object call1(Interpreter interpreter, Object a) {
+            return construct(interpreter, 1, a, null, null, null);
+        }
+
+        @Override
+        public Object call2(Interpreter interpreter, Object a, Object b) {
+            return construct(interpreter, 2, a, b, null, null);
+        }
+
+        @Override
+        public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+            return construct(interpreter, 3, a, b, c, null);
+        }
+
+        @Override
+        public Object call4(Interpreter interpreter, Object a, Object b, Object c, Object d) {
+            return construct(interpreter, 4, a, b, c, d);
+        }
+
+        private LoxInstance construct(Interpreter interpreter, int argc, Object a, Object b, Object c, Object d) {
+            var instance = new LoxInstance(this);
+            LoxFunction init = findMethod(Symbols.INIT);
+            if (init != null) {
+                var frame = init.newFrame(instance);
+                Object[] slots = frame.slots;
+                if (argc > 0) slots[0] = a;
+                if (argc > 1) slots[1] = b;
+                if (argc > 2) slots[2] = c;
+                if (argc > 3) slots[3] = d;
+                initialize(interpreter, init, frame);
+            }
+            return instance;
+        }
+
+        private static void initialize(Interpreter interpreter, LoxFunction init, Frame frame) {
+            if (init.execute(interpreter, frame) != null) {
+                throw new RuntimeException("init should return nil");
+            }
+        }
+
         @Override
         public String toString() {
             return name;
         }
 
-        LoxFunction findMethod(String name) {
-            if (!methods.containsKey(name)) {
-                return null;
-            }
-            return methods.get(name);
+        LoxFunction findMethod(int symbol) {
+            return methods.get(symbol);
         }
 
     }
@@ -100,44 +248,66 @@ public interface LoxCallable {
     class LoxInstance {
         // This is the internal representation of a class instance in the Lox interpreter.
         // When we invoke `var x = Klass()`, x will hold a LoxInstance produced by the 'Klass' call.
-        private final LoxClass klass;
+        final LoxClass klass;
 
-        private final HashMap<String, Object> properties = new HashMap<>();
+        // fields are stored in an array, their position comes from the shape
+        Shape shape;
+        Object[] fields = EMPTY_FIELDS;
+        private static final Object[] EMPTY_FIELDS = new Object[0];
 
         public LoxInstance(LoxClass klass) {
             this.klass = klass;
+            this.shape = klass.rootShape;
+        }
+
+        Shape shape() {
+            return shape;
         }
 
         public LoxFunction getInit() {
-            return getMethod("init");
+            return getMethod(Symbols.INIT);
         }
 
-        private LoxFunction getMethod(String name) {
+        private LoxFunction getMethod(int symbol) {
             // bind the function to the instance before returning a new instance of LoxFunction
-            LoxFunction method = klass.findMethod(name);
+            LoxFunction method = klass.findMethod(symbol);
             if (method != null) {
-                return new LoxFunction(method.declaration, this);
+                return method.bind(this);
             }
             return null;
         }
 
-        public Object get(String name) {
-            if (properties.containsKey(name)) {
-                return properties.get(name);
+        public Object get(int symbol) {
+            int index = shape.indexOf(symbol);
+            if (index != -1) {
+                return fields[index];
             }
-            ;
-            LoxFunction method = getMethod(name);
+            LoxFunction method = getMethod(symbol);
             if (method != null){
                 return method;
             }
-            throw new RuntimeException(toString() + " doesn't contain the property " + name);
+            throw new RuntimeException(toString() + " doesn't contain the property " + Symbols.name(symbol));
         }
 
-        public void set(String name, Object value) {
-            if (Objects.equals(name, "this")) {
+        public void set(int symbol, Object value) {
+            if (symbol == Symbols.THIS) {
                 throw new RuntimeException("Property can't be named 'this'");
             }
-            properties.put(name, value);
+            int index = shape.indexOf(symbol);
+            if (index != -1) {
+                fields[index] = value;
+                return;
+            }
+            store(shape.withField(symbol), shape.size, value);
+        }
+
+        void store(Shape nextShape, int index, Object value) {
+            // writes a field whose index is already known, moving to nextShape if it's a new field
+            if (nextShape.size > fields.length) {
+                fields = Arrays.copyOf(fields, Math.max(4, fields.length * 2));
+            }
+            fields[index] = value;
+            shape = nextShape;
         }
 
         @Override
@@ -0,0 +1,118 @@
+package crafting.interpreters.core.base;
+
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+
+public final class PropertyCache {
+    // Inline cache for one property access site (an Expr.Get or Expr.Set).
+    // It remembers, for the last few shapes seen at the site, where the property lives:
+    // a field index, or for gets a method of the class, or for sets the shape after the store.
+    // Past POLYMORPHIC_LIMIT shapes the site is megamorphic and always takes the slow path.
+
+    private static final int POLYMORPHIC_LIMIT = 4;
+
+    public final Token name;
+    // symbol id of the property's name
+    public final int key;
+
+    private final Shape[] shapes = new Shape[POLYMORPHIC_LIMIT];
+    // field index for each cached shape, -1 when the property is a method
+    private final int[] indexes = new int[POLYMORPHIC_LIMIT];
+    private final LoxFunction[] methods = new LoxFunction[POLYMORPHIC_LIMIT];
+    private final Shape[] nextShapes = new Shape[POLYMORPHIC_LIMIT];
+    private int entries = 0;
+    private boolean megamorphic = false;
+
+    public long hits = 0;
+    public long misses = 0;
+    public long megamorphicAccesses = 0;
+
+    public PropertyCache(Token name) {
+        this.name = name;
+        this.key = name.symbol;
+    }
+
+    public Object get(LoxInstance instance) {
+        int entry = lookup(instance);
+        if (entry == -1) {
+            return instance.get(key);
+        }
+        int index = indexes[entry];
+        return index != -1 ? instance.fields[index] : methods[entry].bind(instance);
+    }
+
+    public LoxFunction method(LoxInstance instance) {
+        // the method the property resolves to, not bound to the instance, or null if it's a field.
+        // Lets `a.m(...)` call m with a as receiver without creating a bound function first.
+        int entry = lookup(instance);
+        if (entry == -1) {
+            return instance.shape.indexOf(key) == -1 ? instance.klass.findMethod(key) : null;
+        }
+        return methods[entry];
+    }
+
+    private int lookup(LoxInstance instance) {
+        // returns the cache entry for the instance's shape, or -1 when the site is megamorphic
+        // or the property doesn't exist
+        Shape shape = instance.shape;
+        for (int i = 0; i < entries; i++) {
+            if (shapes[i] == shape) {
+                hits++;
+                return i;
+            }
+        }
+        if (megamorphic) {
+            megamorphicAccesses++;
+            return -1;
+        }
+        misses++;
+        int index = shape.indexOf(key);
+        if (index != -1) {
+            return add(shape, index, null, shape);
+        }
+        // the shape belongs to a single class, so the method found for it stays valid
+        LoxFunction method = instance.klass.findMethod(key);
+        if (method == null) {
+            return -1;
+        }
+        return add(shape, -1, method, shape);
+    }
+
+    public void set(LoxInstance instance, Object value) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < entries; i++) {
+            if (shapes[i] == shape) {
+                hits++;
+                instance.store(nextShapes[i], indexes[i], value);
+                return;
+            }
+        }
+        if (megamorphic) {
+            megamorphicAccesses++;
+            instance.set(key, value);
+            return;
+        }
+        misses++;
+        instance.set(key, value);
+        add(shape, instance.shape.indexOf(key), null, instance.shape);
+    }
+
+    private int add(Shape shape, int index, LoxFunction method, Shape nextShape) {
+        if (entries == POLYMORPHIC_LIMIT) {
+            megamorphic = true;
+            entries = 0;
+            return -1;
+        }
+        shapes[entries] = shape;
+        indexes[entries] = index;
+        methods[entries] = method;
+        nextShapes[entries] = nextShape;
+        return entries++;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("line %d .%s: hits=%d misses=%d megamorphic=%d",
+                name.line, name.lexeme, hits, misses, megamorphicAccesses);
+    }
+}
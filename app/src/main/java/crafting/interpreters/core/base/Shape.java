@@ -0,0 +1,37 @@
+package crafting.interpreters.core.base;
+
+public final class Shape {
+    // Layout of the fields of a LoxInstance: which index of the instance's array holds each field.
+    // Shapes are immutable and shared. Adding a field moves an instance to the next shape through
+    // a cached transition, so instances of a class that set their fields in the same order
+    // end up with the very same Shape object. Fields are keyed by the symbol id of their name.
+
+    private final SymbolMap<Integer> indexes;
+    private final SymbolMap<Shape> transitions = new SymbolMap<>();
+    public final int size;
+
+    private Shape(SymbolMap<Integer> indexes) {
+        this.indexes = indexes;
+        this.size = indexes.size();
+    }
+
+    public static Shape root() {
+        return new Shape(new SymbolMap<>());
+    }
+
+    public int indexOf(int symbol) {
+        Integer index = indexes.get(symbol);
+        return index == null ? -1 : index;
+    }
+
+    public Shape withField(int symbol) {
+        Shape next = transitions.get(symbol);
+        if (next == null) {
+            var nextIndexes = new SymbolMap<>(indexes);
+            nextIndexes.put(symbol, size);
+            next = new Shape(nextIndexes);
+            transitions.put(symbol, next);
+        }
+        return next;
+    }
+}
@@ -16,6 +16,8 @@ public abstract class Stmt {
 
         R visitWhile(Stmt.While whileStmt);
 
+        R visitFor(Stmt.For forStmt);
+
         R visitFunction(Stmt.Function function);
         R visitReturn(Stmt.Return ret);
         R visitClass(Stmt.Class klass);
@@ -23,6 +25,8 @@ public abstract class Stmt {
 
     public abstract <R> R accept(Visitor<R> visitor);
 
+    private static final int[] NONE = new int[0];
+
     public static class Print extends Stmt {
         public final Expr expression;
 
@@ -51,6 +55,9 @@ public abstract class Stmt {
     public static class VarDcl extends Stmt {
         public final Token name;
         public final Expr expressionInitializer;
+        // frame slot filled in by the Resolver. -1 means a global
+        public int slot = -1;
+        public boolean boxed = false;
 
         public VarDcl(Token name, Expr expressionInitializer) {
             this.name = name;
@@ -64,6 +71,10 @@ public abstract class Stmt {
 
     public static class Block extends Stmt {
         public final List<Stmt> statements;
+        // filled in by the Resolver: the number of variables declared directly in the block, and
+        // false when they live in the enclosing frame so running the block allocates nothing
+        public int slotCount = 0;
+        public boolean needsFrame = true;
 
         public Block(List<Stmt> statements) {
             this.statements = statements;
@@ -104,10 +115,44 @@ public abstract class Stmt {
         }
     }
 
+    public static class For extends Stmt {
+        // null when the loop has no initializer
+        public final Stmt initializer;
+        public final Expr condition;
+        // null when the loop has no increment
+        public final Expr increment;
+        public final Stmt body;
+        // filled in by the Resolver, like Block's. The loop frame holds the initializer's variable
+        // and the variables of a body block that needs no frame of its own
+        public int slotCount = 0;
+        public boolean needsFrame = true;
+
+        public For(Stmt initializer, Expr condition, Expr increment, Stmt body) {
+            this.initializer = initializer;
+            this.condition = condition;
+            this.increment = increment;
+            this.body = body;
+        }
+
+        public <R> R accept(Visitor<R> visitor) {
+            return visitor.visitFor(this);
+        }
+    }
+
     public static class Function extends Stmt {
         public final Token name;
         public final List<Token> params;
         public final List<Stmt> body;
+        public int slot = -1;
+        public boolean boxed = false;
+        // params plus the variables declared directly in the body
+        public int slotCount = 0;
+        // filled in by the Resolver: the (depth, slot) where each variable the function captures is
+        // found from its declaration, copied in that order to the function's closure frame, and
+        // the params a closure captures and assigns, which the call puts in cells
+        public int[] captureDepths = NONE;
+        public int[] captureSlots = NONE;
+        public int[] boxedParams = NONE;
 
         public Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -136,6 +181,8 @@ public abstract class Stmt {
     static public class Class extends Stmt {
         public final Token name;
         public final List<Stmt.Function> methods;
+        public int slot = -1;
+        public boolean boxed = false;
         public Class(Token name, List<Stmt.Function> methods){
             this.name = name;
             this.methods = methods;
@@ -0,0 +1,82 @@
+package crafting.interpreters.core.base;
+
+import java.util.Arrays;
+
+public final class SymbolMap<V> {
+    // Map from symbol ids (see Symbols) to values, with open addressing over parallel arrays,
+    // so a lookup neither boxes the key nor hashes a name. Used for method tables and shapes,
+    // which are small and mostly read.
+
+    private int[] keys;
+    private Object[] values;
+    private int size = 0;
+
+    public SymbolMap() {
+        this(8);
+    }
+
+    private SymbolMap(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, -1);
+        values = new Object[capacity];
+    }
+
+    public SymbolMap(SymbolMap<V> other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int symbol) {
+        int mask = keys.length - 1;
+        for (int slot = symbol & mask; ; slot = (slot + 1) & mask) {
+            int key = keys[slot];
+            if (key == symbol) {
+                return (V) values[slot];
+            }
+            if (key == -1) {
+                return null;
+            }
+        }
+    }
+
+    public void put(int symbol, V value) {
+        int mask = keys.length - 1;
+        int slot = symbol & mask;
+        while (keys[slot] != -1 && keys[slot] != symbol) {
+            slot = (slot + 1) & mask;
+        }
+        if (keys[slot] == -1) {
+            size++;
+        }
+        keys[slot] = symbol;
+        values[slot] = value;
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new int[oldKeys.length * 2];
+        Arrays.fill(keys, -1);
+        values = new Object[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != -1) {
+                int slot = oldKeys[i] & mask;
+                while (keys[slot] != -1) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package crafting.interpreters.core.base;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public final class Symbols {
+    // Global table of identifier names. The Scanner interns every identifier into a dense int id,
+    // and the runtime keys globals, method tables and shapes by that id instead of hashing and
+    // comparing the name again on every lookup. Each name is kept once, see name. Ids are never
+    // freed, the table holds each distinct name the process scanned; it's the runtime structures
+    // keyed by ids (Environment, SymbolMap) that stay as small as their own program.
+    //
+    // The table is an open addressing hash set of ids, probed with the characters of the name,
+    // so an identifier already seen is found without making a String for it.
+    //
+    // intern is synchronized. name is not: 'names' is volatile and written again after every new
+    // name is stored, so a thread reading it sees the names of all the ids handed out before.
+
+    private static volatile String[] names = new String[256];
+    private static int[] hashes = new int[256];
+    // ids, -1 for an empty slot. Always at most half full
+    private static int[] table = newTable(512);
+    private static int count = 0;
+
+    public static final int INIT = intern("init");
+    public static final int THIS = intern("this");
+
+    private Symbols() {
+    }
+
+    public static int intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    public static synchronized int intern(CharSequence chars, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + chars.charAt(i);
+        }
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot];
+            if (id == -1) {
+                return add(chars.subSequence(from, to).toString(), hash, slot);
+            }
+            if (hashes[id] == hash && equals(names[id], chars, from, to)) {
+                return id;
+            }
+        }
+    }
+
+    public static synchronized int intern(char[] chars, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot];
+            if (id == -1) {
+                return add(new String(chars, from, to - from), hash, slot);
+            }
+            if (hashes[id] == hash && equals(names[id], chars, from, to)) {
+                return id;
+            }
+        }
+    }
+
+    public static synchronized int intern(ByteBuffer ascii, int from, int to) {
+        // identifiers in UTF-8 source are ASCII, one byte per character
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + ascii.get(i);
+        }
+        int mask = table.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot];
+            if (id == -1) {
+                char[] chars = new char[to - from];
+                for (int i = from; i < to; i++) {
+                    chars[i - from] = (char) ascii.get(i);
+                }
+                return add(new String(chars), hash, slot);
+            }
+            if (hashes[id] == hash && equals(names[id], ascii, from, to)) {
+                return id;
+            }
+        }
+    }
+
+    public static String name(int id) {
+        return names[id];
+    }
+
+    private static int add(String name, int hash, int slot) {
+        int id = count++;
+        String[] grown = names;
+        if (id == grown.length) {
+            grown = Arrays.copyOf(grown, id * 2);
+            hashes = Arrays.copyOf(hashes, id * 2);
+        }
+        grown[id] = name;
+        // publishes the name, see name
+        names = grown;
+        hashes[id] = hash;
+        table[slot] = id;
+        if (count * 2 > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    private static void rehash() {
+        table = newTable(table.length * 2);
+        int mask = table.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = hashes[id] & mask;
+            while (table[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = id;
+        }
+    }
+
+    private static int[] newTable(int size) {
+        int[] ids = new int[size];
+        Arrays.fill(ids, -1);
+        return ids;
+    }
+
+    private static boolean equals(String name, CharSequence chars, int from, int to) {
+        if (name.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars.charAt(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(String name, char[] chars, int from, int to) {
+        if (name.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != chars[from + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean equals(String name, ByteBuffer ascii, int from, int to) {
+        if (name.length() != to - from) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != ascii.get(from + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
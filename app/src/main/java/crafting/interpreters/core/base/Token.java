@@ -1,6 +1,5 @@
 package crafting.interpreters.core.base;
 
-import java.util.HashMap;
 import java.util.Objects;
 
 public class Token {
@@ -11,11 +10,19 @@ public class Token {
 
     final public Object literal;
 
+    // symbol id of an identifier's name, see Symbols. -1 for other tokens
+    final public int symbol;
+
     public Token(TokenType type, String lexeme, Object literal, int line) {
+        this(type, lexeme, literal, line, type == TokenType.IDENTIFIER && lexeme != null ? Symbols.intern(lexeme) : -1);
+    }
+
+    public Token(TokenType type, String lexeme, Object literal, int line, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = symbol;
     }
 
     public String toString() {
@@ -30,25 +37,4 @@ public class Token {
         }
         return super.equals(obj);
     }
-
-    public static HashMap<String, TokenType> buildKeywordsMap() {
-        HashMap<String, TokenType> keywords = new HashMap<>();
-        keywords.put("var", TokenType.VAR);
-        keywords.put("and", TokenType.AND);
-        keywords.put("class", TokenType.CLASS);
-        keywords.put("else", TokenType.ELSE);
-        keywords.put("false", TokenType.FALSE);
-        keywords.put("fun", TokenType.FUN);
-        keywords.put("for", TokenType.FOR);
-        keywords.put("if", TokenType.IF);
-        keywords.put("nil", TokenType.NIL);
-        keywords.put("or", TokenType.OR);
-        keywords.put("print", TokenType.PRINT);
-        keywords.put("return", TokenType.RETURN);
-        keywords.put("super", TokenType.SUPER);
-        keywords.put("this", TokenType.THIS);
-        keywords.put("true", TokenType.TRUE);
-        keywords.put("while", TokenType.WHILE);
-        return keywords;
-    }
 }
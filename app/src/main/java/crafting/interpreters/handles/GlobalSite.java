@@ -0,0 +1,65 @@
+package crafting.interpreters.handles;
+
+import crafting.interpreters.core.base.Environment;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+final class GlobalSite extends MutableCallSite {
+    // Reads of one global, shared by every place that uses it. Once defined, the site returns
+    // the value as a constant, so HotSpot folds it into the compiled code (and inlines the calls
+    // of a global function). Redefining the global relinks the site, which deoptimizes that code.
+    // A global that keeps changing, like a counter, goes back to reading the Environment.
+
+    // relinks before the value is no longer treated as a constant
+    static final int MAX_CHANGES = 8;
+
+    private static final MethodHandle READ;
+
+    static {
+        try {
+            READ = MethodHandles.lookup().findVirtual(Environment.class, "readVariableValue",
+                    MethodType.methodType(Object.class, int.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // symbol id of the global's name
+    private final int symbol;
+    private final Environment globals;
+    private int changes = 0;
+
+    GlobalSite(int symbol, Environment globals) {
+        super(MethodType.methodType(Object.class));
+        this.symbol = symbol;
+        this.globals = globals;
+        // until the program defines it, the Environment has the value (natives) or the error
+        setTarget(read());
+    }
+
+    void define(Object value) {
+        globals.define(symbol, value);
+        changed(value);
+    }
+
+    Object assign(Object value) {
+        globals.assign(symbol, value);
+        changed(value);
+        return value;
+    }
+
+    private void changed(Object value) {
+        if (changes > MAX_CHANGES) {
+            return;
+        }
+        changes++;
+        setTarget(changes > MAX_CHANGES ? read() : MethodHandles.constant(Object.class, value));
+    }
+
+    private MethodHandle read() {
+        return MethodHandles.insertArguments(READ, 0, globals, symbol);
+    }
+}
@@ -0,0 +1,683 @@
+package crafting.interpreters.handles;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Interpreter.Completion;
+import crafting.interpreters.core.base.Cell;
+import crafting.interpreters.core.base.Expr;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable.LoxClass;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.core.base.PropertyCache;
+import crafting.interpreters.core.base.Stmt;
+import crafting.interpreters.core.base.SymbolMap;
+import crafting.interpreters.core.base.Token;
+import crafting.interpreters.core.base.TokenType;
+import crafting.interpreters.jit.JitRuntime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.invoke.MethodHandles.constant;
+import static java.lang.invoke.MethodHandles.dropArguments;
+import static java.lang.invoke.MethodHandles.filterArguments;
+import static java.lang.invoke.MethodHandles.filterReturnValue;
+import static java.lang.invoke.MethodHandles.foldArguments;
+import static java.lang.invoke.MethodHandles.guardWithTest;
+import static java.lang.invoke.MethodHandles.insertArguments;
+import static java.lang.invoke.MethodType.methodType;
+
+public class HandleCompiler implements Expr.Visitor<MethodHandle>, Stmt.Visitor<MethodHandle> {
+    // Translates the resolved AST into a graph of method handles, one per function body.
+    // Expressions become (Frame)Object handles, numeric operands (Frame)double and conditions
+    // (Frame)boolean; statements are (Frame)void, or (Frame)Completion when they can return.
+    // Everything the tree knows is bound into the graph as a constant (slots, operators, the
+    // handles of the children), so HotSpot compiles a hot body like straight-line Java code.
+    // Globals and calls go through mutable call sites, see GlobalSite and LoxCallSite.
+
+    private static final MethodType EXPR = methodType(Object.class, Frame.class);
+    private static final MethodHandle NORMAL = dropArguments(constant(Completion.class, Completion.NORMAL), 0, Frame.class);
+    private static final MethodHandle RETURN = dropArguments(constant(Completion.class, Completion.RETURN), 0, Frame.class);
+
+    private static final MethodHandle SLOT;
+    private static final MethodHandle GET_AT;
+    private static final MethodHandle SET_LOCAL;
+    private static final MethodHandle SET_AT;
+    private static final MethodHandle NEW_FRAME;
+    private static final MethodHandle CAPTURE;
+    private static final MethodHandle BOX_PARAMS;
+    private static final MethodHandle NEW_CELL;
+    private static final MethodHandle CELL_VALUE;
+    private static final MethodHandle SET_CELL;
+    private static final MethodHandle NUMBER;
+    private static final MethodHandle TRUTHY;
+    private static final MethodHandle NOT;
+    private static final MethodHandle EQUAL;
+    private static final MethodHandle NOT_EQUAL;
+    private static final MethodHandle ADD;
+    private static final MethodHandle SUBTRACT;
+    private static final MethodHandle MULTIPLY;
+    private static final MethodHandle DIVIDE;
+    private static final MethodHandle NEGATE;
+    private static final MethodHandle LESS;
+    private static final MethodHandle LESS_EQUAL;
+    private static final MethodHandle GREATER;
+    private static final MethodHandle GREATER_EQUAL;
+    private static final MethodHandle IS_RETURN;
+    private static final MethodHandle LOOP;
+    private static final MethodHandle LOOP_UNTIL_RETURN;
+    private static final MethodHandle FOR_LOOP;
+    private static final MethodHandle FOR_LOOP_UNTIL_RETURN;
+    private static final MethodHandle PRINT;
+    private static final MethodHandle DEFINE_GLOBAL;
+    private static final MethodHandle ASSIGN_GLOBAL;
+    private static final MethodHandle RESULT;
+    private static final MethodHandle SET_RETURN_VALUE;
+    private static final MethodHandle NEW_FUNCTION;
+    private static final MethodHandle NEW_CLASS;
+    private static final MethodHandle GET_PROPERTY;
+    private static final MethodHandle SET_PROPERTY;
+    private static final MethodHandle INVOKE;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            var self = HandleCompiler.class;
+            MethodType numbers = methodType(double.class, double.class, double.class);
+            MethodType comparison = methodType(boolean.class, double.class, double.class);
+            SLOT = lookup.findStatic(self, "slot", methodType(Object.class, int.class, Frame.class));
+            GET_AT = lookup.findVirtual(Frame.class, "getAt", methodType(Object.class, int.class, int.class));
+            SET_LOCAL = lookup.findStatic(self, "setLocal", methodType(Object.class, int.class, Frame.class, Object.class));
+            SET_AT = lookup.findStatic(self, "setAt", methodType(Object.class, int.class, int.class, Frame.class, Object.class));
+            NEW_FRAME = lookup.findConstructor(Frame.class, methodType(void.class, Frame.class, int.class));
+            CAPTURE = lookup.findStatic(Frame.class, "capture", methodType(Frame.class, Frame.class, Stmt.Function.class));
+            BOX_PARAMS = lookup.findVirtual(Frame.class, "box", methodType(void.class, int[].class));
+            NEW_CELL = lookup.findStatic(self, "newCell", methodType(Object.class, int.class, Frame.class));
+            CELL_VALUE = lookup.findStatic(self, "cellValue", methodType(Object.class, Object.class));
+            SET_CELL = lookup.findStatic(self, "setCell", methodType(Object.class, Object.class, Object.class));
+            NUMBER = lookup.findStatic(JitRuntime.class, "number", methodType(double.class, Object.class, int.class));
+            TRUTHY = lookup.findStatic(JitRuntime.class, "truthy", methodType(boolean.class, Object.class));
+            NOT = lookup.findStatic(JitRuntime.class, "not", methodType(Boolean.class, Object.class));
+            EQUAL = lookup.findStatic(JitRuntime.class, "equal", methodType(Boolean.class, Object.class, Object.class));
+            NOT_EQUAL = lookup.findStatic(JitRuntime.class, "notEqual", methodType(Boolean.class, Object.class, Object.class));
+            ADD = lookup.findStatic(self, "add", numbers);
+            SUBTRACT = lookup.findStatic(self, "subtract", numbers);
+            MULTIPLY = lookup.findStatic(self, "multiply", numbers);
+            DIVIDE = lookup.findStatic(self, "divide", numbers);
+            NEGATE = lookup.findStatic(self, "negate", methodType(double.class, double.class));
+            LESS = lookup.findStatic(self, "less", comparison);
+            LESS_EQUAL = lookup.findStatic(self, "lessEqual", comparison);
+            GREATER = lookup.findStatic(self, "greater", comparison);
+            GREATER_EQUAL = lookup.findStatic(self, "greaterEqual", comparison);
+            IS_RETURN = lookup.findStatic(self, "isReturn", methodType(boolean.class, Completion.class));
+            LOOP = lookup.findStatic(self, "loop",
+                    methodType(void.class, MethodHandle.class, MethodHandle.class, Frame.class));
+            LOOP_UNTIL_RETURN = lookup.findStatic(self, "loopUntilReturn",
+                    methodType(Completion.class, MethodHandle.class, MethodHandle.class, Frame.class));
+            MethodType forLoop = methodType(void.class, MethodHandle.class, MethodHandle.class, MethodHandle.class, Frame.class);
+            FOR_LOOP = lookup.findStatic(self, "forLoop", forLoop);
+            FOR_LOOP_UNTIL_RETURN = lookup.findStatic(self, "forLoopUntilReturn", forLoop.changeReturnType(Completion.class));
+            PRINT = lookup.findVirtual(Interpreter.class, "print", methodType(void.class, Object.class));
+            DEFINE_GLOBAL = lookup.findVirtual(GlobalSite.class, "define", methodType(void.class, Object.class));
+            ASSIGN_GLOBAL = lookup.findVirtual(GlobalSite.class, "assign", methodType(Object.class, Object.class));
+            RESULT = lookup.findVirtual(HandleFunction.Body.class, "result", methodType(Object.class, Completion.class));
+            SET_RETURN_VALUE = lookup.findSetter(HandleFunction.Body.class, "returnValue", Object.class);
+            NEW_FUNCTION = lookup.findConstructor(HandleFunction.class,
+                    methodType(void.class, HandleFunction.Body.class, Frame.class));
+            NEW_CLASS = lookup.findStatic(self, "newClass",
+                    methodType(Object.class, String.class, HandleFunction.Body[].class, Frame.class));
+            GET_PROPERTY = lookup.findStatic(self, "getProperty",
+                    methodType(Object.class, PropertyCache.class, Object.class));
+            SET_PROPERTY = lookup.findStatic(self, "setProperty",
+                    methodType(Object.class, PropertyCache.class, Object.class, Object.class));
+            INVOKE = lookup.findStatic(self, "invoke",
+                    methodType(Object.class, PropertyCache.class, Interpreter.class, Object.class, Object[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Interpreter interpreter;
+    private final Map<Integer, GlobalSite> globalSites = new HashMap<>();
+    // function whose body is being compiled, returns store their value in it
+    private HandleFunction.Body function;
+
+    public HandleCompiler(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    public HandleFunction.Body compile(List<Stmt> statements) {
+        var script = new HandleFunction.Body(null);
+        function = script;
+        script.handle = result(script, sequence(statements));
+        return script;
+    }
+
+    private HandleFunction.Body compileFunction(Stmt.Function declaration) {
+        HandleFunction.Body enclosing = function;
+        var body = new HandleFunction.Body(declaration);
+        function = body;
+        MethodHandle statements = sequence(declaration.body);
+        if (declaration.boxedParams.length > 0) {
+            statements = foldArguments(statements, insertArguments(BOX_PARAMS, 1, declaration.boxedParams));
+        }
+        body.handle = result(body, statements);
+        function = enclosing;
+        return body;
+    }
+
+    private static MethodHandle result(HandleFunction.Body body, MethodHandle statements) {
+        // (Frame)Object, the value of the return that completed the statements or nil
+        if (statements.type().returnType() == void.class) {
+            return foldArguments(dropArguments(constant(Object.class, null), 0, Frame.class), statements);
+        }
+        return filterReturnValue(statements, RESULT.bindTo(body));
+    }
+
+    private MethodHandle sequence(List<Stmt> statements) {
+        var handles = new MethodHandle[statements.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = statements.get(i).accept(this);
+        }
+        if (handles.length == 0) {
+            return MethodHandles.empty(methodType(void.class, Frame.class));
+        }
+        return sequence(handles, 0, handles.length);
+    }
+
+    private static MethodHandle sequence(MethodHandle[] handles, int from, int to) {
+        // folded as a balanced tree: HotSpot stops inlining past a few levels of nested handles,
+        // a chain as long as the block would leave its end out of line
+        if (to - from == 1) {
+            return handles[from];
+        }
+        int middle = (from + to) >>> 1;
+        return then(sequence(handles, from, middle), sequence(handles, middle, to));
+    }
+
+    private static MethodHandle then(MethodHandle first, MethodHandle rest) {
+        if (first.type().returnType() == void.class) {
+            return foldArguments(rest, first);
+        }
+        // the rest only runs when first completed normally
+        MethodHandle next = dropArguments(completion(rest), 0, Completion.class);
+        MethodHandle returned = dropArguments(RETURN, 0, Completion.class);
+        return foldArguments(guardWithTest(IS_RETURN, returned, next), first);
+    }
+
+    private static MethodHandle completion(MethodHandle statement) {
+        // (Frame)Completion for a statement that may be (Frame)void
+        if (statement.type().returnType() == void.class) {
+            return foldArguments(NORMAL, statement);
+        }
+        return statement;
+    }
+
+    private static MethodHandle evaluate(MethodHandle target, MethodHandle... operands) {
+        // (Frame)R calling target with the values of the (Frame)X operands, evaluated left to right
+        MethodHandle handle = dropArguments(target, operands.length, Frame.class);
+        for (int i = operands.length - 1; i >= 0; i--) {
+            MethodHandle operand = operands[i];
+            operand = operand.asType(operand.type().changeReturnType(target.type().parameterType(i)));
+            handle = foldArguments(handle, i, operand);
+        }
+        return handle;
+    }
+
+    private MethodHandle[] compileArguments(List<Expr> arguments) {
+        var handles = new MethodHandle[arguments.size()];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = arguments.get(i).accept(this);
+        }
+        return handles;
+    }
+
+    private GlobalSite globalSite(Token name) {
+        return globalSites.computeIfAbsent(name.symbol, global -> new GlobalSite(global, interpreter.globals));
+    }
+
+    private MethodHandle number(Expr expr, Token operator) {
+        // nested arithmetic stays on primitive doubles, anything else is checked once evaluated
+        if (expr instanceof Expr.Binary binary) {
+            MethodHandle arithmetic = arithmetic(binary);
+            if (arithmetic != null) {
+                return arithmetic;
+            }
+        } else if (expr instanceof Expr.Grouping grouping) {
+            return number(grouping.expression, operator);
+        } else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            return filterReturnValue(number(unary.right, unary.operator), NEGATE);
+        } else if (expr instanceof Expr.Literal literal && literal.value instanceof Double value) {
+            return dropArguments(constant(double.class, value), 0, Frame.class);
+        }
+        return filterReturnValue(expr.accept(this), insertArguments(NUMBER, 1, operator.line));
+    }
+
+    private MethodHandle arithmetic(Expr.Binary expr) {
+        // null when the operator isn't + - * /
+        MethodHandle operator = switch (expr.operator.type) {
+            case PLUS -> ADD;
+            case MINUS -> SUBTRACT;
+            case STAR -> MULTIPLY;
+            case SLASH -> DIVIDE;
+            default -> null;
+        };
+        if (operator == null) {
+            return null;
+        }
+        return evaluate(operator, number(expr.left, expr.operator), number(expr.right, expr.operator));
+    }
+
+    private MethodHandle comparison(Expr expr) {
+        // null when expr isn't < <= > >=
+        if (!(expr instanceof Expr.Binary binary)) {
+            return null;
+        }
+        MethodHandle operator = switch (binary.operator.type) {
+            case LESS -> LESS;
+            case LESS_EQUAL -> LESS_EQUAL;
+            case GREATER -> GREATER;
+            case GREATER_EQUAL -> GREATER_EQUAL;
+            default -> null;
+        };
+        if (operator == null) {
+            return null;
+        }
+        return evaluate(operator, number(binary.left, binary.operator), number(binary.right, binary.operator));
+    }
+
+    private MethodHandle condition(Expr expr) {
+        // (Frame)boolean, comparisons don't box their result
+        while (expr instanceof Expr.Grouping grouping) {
+            expr = grouping.expression;
+        }
+        MethodHandle comparison = comparison(expr);
+        if (comparison != null) {
+            return comparison;
+        }
+        return filterReturnValue(expr.accept(this), TRUTHY);
+    }
+
+    private MethodHandle variable(Token name, int depth, int slot) {
+        if (depth == -1) {
+            return dropArguments(globalSite(name).dynamicInvoker(), 0, Frame.class);
+        }
+        if (depth == 0) {
+            return insertArguments(SLOT, 0, slot);
+        }
+        return insertArguments(GET_AT, 1, depth, slot);
+    }
+
+    private MethodHandle declare(Token name, int slot, boolean boxed, MethodHandle value) {
+        // globals are defined by name, locals go to the slot the Resolver gave them.
+        // A boxed local gets its cell first, so a function or class can capture itself
+        if (boxed) {
+            return evaluate(SET_CELL, insertArguments(NEW_CELL, 0, slot), value)
+                    .asType(methodType(void.class, Frame.class));
+        }
+        if (slot == -1) {
+            return evaluate(DEFINE_GLOBAL.bindTo(globalSite(name)), value);
+        }
+        MethodHandle store = evaluate(insertArguments(SET_LOCAL, 0, slot), MethodHandles.identity(Frame.class), value);
+        return store.asType(methodType(void.class, Frame.class));
+    }
+
+    @Override
+    public MethodHandle visitPrint(Stmt.Print stmt) {
+        return evaluate(PRINT.bindTo(interpreter), stmt.expression.accept(this));
+    }
+
+    @Override
+    public MethodHandle visitExprStmt(Stmt.ExprStmt stmt) {
+        return stmt.expression.accept(this).asType(methodType(void.class, Frame.class));
+    }
+
+    @Override
+    public MethodHandle visitVarDcl(Stmt.VarDcl varDcl) {
+        MethodHandle initializer = dropArguments(constant(Object.class, null), 0, Frame.class);
+        if (varDcl.expressionInitializer != null) {
+            initializer = varDcl.expressionInitializer.accept(this);
+        }
+        return declare(varDcl.name, varDcl.slot, varDcl.boxed, initializer);
+    }
+
+    @Override
+    public MethodHandle visitBlock(Stmt.Block block) {
+        if (!block.needsFrame) {
+            return sequence(block.statements);
+        }
+        return filterArguments(sequence(block.statements), 0, insertArguments(NEW_FRAME, 1, block.slotCount));
+    }
+
+    @Override
+    public MethodHandle visitIf(Stmt.If ifStmt) {
+        MethodHandle condition = condition(ifStmt.condition);
+        MethodHandle thenBranch = ifStmt.thenBranch.accept(this);
+        MethodHandle elseBranch = ifStmt.elseBranch == null
+                ? MethodHandles.empty(methodType(void.class, Frame.class))
+                : ifStmt.elseBranch.accept(this);
+        if (!thenBranch.type().equals(elseBranch.type())) {
+            thenBranch = completion(thenBranch);
+            elseBranch = completion(elseBranch);
+        }
+        return guardWithTest(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public MethodHandle visitWhile(Stmt.While whileStmt) {
+        // MethodHandles.whileLoop runs its clauses from a form shared by every loop of the same
+        // shape, where they are never customized and so never inlined; a Java loop calling them
+        // with invokeExact gets each clause compiled with its constants folded in
+        MethodHandle condition = condition(whileStmt.condition);
+        MethodHandle body = whileStmt.statement.accept(this);
+        if (body.type().returnType() == void.class) {
+            return insertArguments(LOOP, 0, condition, body);
+        }
+        return insertArguments(LOOP_UNTIL_RETURN, 0, condition, body);
+    }
+
+    @Override
+    public MethodHandle visitFor(Stmt.For forStmt) {
+        MethodHandle nothing = MethodHandles.empty(methodType(void.class, Frame.class));
+        MethodHandle initializer = forStmt.initializer == null ? nothing : forStmt.initializer.accept(this);
+        MethodHandle condition = condition(forStmt.condition);
+        MethodHandle body = forStmt.body.accept(this);
+        MethodHandle increment = forStmt.increment == null
+                ? nothing
+                : forStmt.increment.accept(this).asType(methodType(void.class, Frame.class));
+        MethodHandle loop = body.type().returnType() == void.class
+                ? insertArguments(FOR_LOOP, 0, condition, body, increment)
+                : insertArguments(FOR_LOOP_UNTIL_RETURN, 0, condition, body, increment);
+        // (frame): the initializer runs on the loop's frame before the loop
+        loop = foldArguments(loop, initializer);
+        if (!forStmt.needsFrame) {
+            return loop;
+        }
+        return filterArguments(loop, 0, insertArguments(NEW_FRAME, 1, forStmt.slotCount));
+    }
+
+    @Override
+    public MethodHandle visitFunction(Stmt.Function declaration) {
+        HandleFunction.Body body = compileFunction(declaration);
+        MethodHandle newFunction = filterArguments(insertArguments(NEW_FUNCTION, 0, body), 0,
+                insertArguments(CAPTURE, 1, declaration));
+        return declare(declaration.name, declaration.slot, declaration.boxed, newFunction);
+    }
+
+    @Override
+    public MethodHandle visitReturn(Stmt.Return ret) {
+        if (ret.value == null) {
+            return RETURN;
+        }
+        MethodHandle store = evaluate(SET_RETURN_VALUE.bindTo(function), ret.value.accept(this));
+        return foldArguments(RETURN, store);
+    }
+
+    @Override
+    public MethodHandle visitClass(Stmt.Class klass) {
+        var methods = new HandleFunction.Body[klass.methods.size()];
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = compileFunction(klass.methods.get(i));
+        }
+        return declare(klass.name, klass.slot, klass.boxed, insertArguments(NEW_CLASS, 0, klass.name.lexeme, methods));
+    }
+
+    @Override
+    public MethodHandle visitBinary(Expr.Binary expr) {
+        MethodHandle arithmetic = arithmetic(expr);
+        if (arithmetic != null) {
+            return arithmetic.asType(EXPR);
+        }
+        MethodHandle comparison = comparison(expr);
+        if (comparison != null) {
+            return comparison.asType(EXPR);
+        }
+        return switch (expr.operator.type) {
+            case EQUAL_EQUAL -> evaluate(EQUAL, expr.left.accept(this), expr.right.accept(this)).asType(EXPR);
+            case BANG_EQUAL -> evaluate(NOT_EQUAL, expr.left.accept(this), expr.right.accept(this)).asType(EXPR);
+            default -> throw new RuntimeException(String.format("Unknown operator %s", expr.operator.lexeme));
+        };
+    }
+
+    @Override
+    public MethodHandle visitGrouping(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public MethodHandle visitUnary(Expr.Unary expr) {
+        return switch (expr.operator.type) {
+            case MINUS -> number(expr, expr.operator).asType(EXPR);
+            case BANG -> filterReturnValue(expr.right.accept(this), NOT).asType(EXPR);
+            default -> throw new RuntimeException(String.format("Unknown operator %s", expr.operator.lexeme));
+        };
+    }
+
+    @Override
+    public MethodHandle visitLiteral(Expr.Literal literal) {
+        return dropArguments(constant(Object.class, literal.value), 0, Frame.class);
+    }
+
+    @Override
+    public MethodHandle visitVariable(Expr.Variable variable) {
+        MethodHandle read = variable(variable.name, variable.depth, variable.slot);
+        if (variable.boxed) {
+            return filterReturnValue(read, CELL_VALUE);
+        }
+        return read;
+    }
+
+    @Override
+    public MethodHandle visitAssignment(Expr.Assignment assignment) {
+        MethodHandle value = assignment.expression.accept(this);
+        if (assignment.boxed) {
+            return evaluate(SET_CELL, variable(assignment.name, assignment.depth, assignment.slot), value);
+        }
+        if (assignment.depth == -1) {
+            return evaluate(ASSIGN_GLOBAL.bindTo(globalSite(assignment.name)), value);
+        }
+        MethodHandle store = assignment.depth == 0
+                ? insertArguments(SET_LOCAL, 0, assignment.slot)
+                : insertArguments(SET_AT, 0, assignment.depth, assignment.slot);
+        return evaluate(store, MethodHandles.identity(Frame.class), value);
+    }
+
+    @Override
+    public MethodHandle visitLogical(Expr.Logical logical) {
+        // (left, frame): the left value is kept when it decides the result
+        MethodHandle keepLeft = dropArguments(MethodHandles.identity(Object.class), 1, Frame.class);
+        MethodHandle evaluateRight = dropArguments(logical.right.accept(this), 0, Object.class);
+        MethodHandle choice = logical.operator.type == TokenType.AND
+                ? guardWithTest(TRUTHY, evaluateRight, keepLeft)
+                : guardWithTest(TRUTHY, keepLeft, evaluateRight);
+        return foldArguments(choice, logical.left.accept(this));
+    }
+
+    @Override
+    public MethodHandle visitCall(Expr.Call call) {
+        if (call.callee instanceof Expr.Get get) {
+            return invoke(get, call.arguments);
+        }
+        MethodHandle callee = call.callee.accept(this);
+        MethodHandle[] arguments = compileArguments(call.arguments);
+        var site = new LoxCallSite(arguments.length, interpreter);
+        var operands = new MethodHandle[arguments.length + 1];
+        operands[0] = callee;
+        System.arraycopy(arguments, 0, operands, 1, arguments.length);
+        return evaluate(site.dynamicInvoker(), operands);
+    }
+
+    private MethodHandle invoke(Expr.Get get, List<Expr> arguments) {
+        // `object.name(...)`: methods get object as their receiver instead of being bound first
+        MethodHandle object = get.object.accept(this);
+        PropertyCache cache = interpreter.propertyCache(get);
+        MethodHandle[] compiled = compileArguments(arguments);
+        MethodHandle target = insertArguments(INVOKE, 0, cache, interpreter).asCollector(Object[].class, compiled.length);
+        var operands = new MethodHandle[compiled.length + 1];
+        operands[0] = object;
+        System.arraycopy(compiled, 0, operands, 1, compiled.length);
+        return evaluate(target, operands);
+    }
+
+    @Override
+    public MethodHandle visitGet(Expr.Get get) {
+        return evaluate(insertArguments(GET_PROPERTY, 0, interpreter.propertyCache(get)), get.object.accept(this));
+    }
+
+    @Override
+    public MethodHandle visitSet(Expr.Set set) {
+        MethodHandle object = set.object.accept(this);
+        MethodHandle value = set.value.accept(this);
+        return evaluate(insertArguments(SET_PROPERTY, 0, interpreter.propertyCache(set)), object, value);
+    }
+
+    @Override
+    public MethodHandle visitThis(Expr.This expr) {
+        return variable(expr.keyword, expr.depth, expr.slot);
+    }
+
+    // Targets of the handles above.
+
+    private static Object slot(int slot, Frame frame) {
+        return frame.slots[slot];
+    }
+
+    private static Object setLocal(int slot, Frame frame, Object value) {
+        return frame.slots[slot] = value;
+    }
+
+    private static Object setAt(int depth, int slot, Frame frame, Object value) {
+        frame.assignAt(depth, slot, value);
+        return value;
+    }
+
+    private static Object newCell(int slot, Frame frame) {
+        return frame.slots[slot] = new Cell(null);
+    }
+
+    private static Object cellValue(Object cell) {
+        return ((Cell) cell).value;
+    }
+
+    private static Object setCell(Object cell, Object value) {
+        return ((Cell) cell).value = value;
+    }
+
+    private static double add(double left, double right) {
+        return left + right;
+    }
+
+    private static double subtract(double left, double right) {
+        return left - right;
+    }
+
+    private static double multiply(double left, double right) {
+        return left * right;
+    }
+
+    private static double divide(double left, double right) {
+        return left / right;
+    }
+
+    private static double negate(double value) {
+        return -value;
+    }
+
+    private static boolean less(double left, double right) {
+        return left < right;
+    }
+
+    private static boolean lessEqual(double left, double right) {
+        return left <= right;
+    }
+
+    private static boolean greater(double left, double right) {
+        return left > right;
+    }
+
+    private static boolean greaterEqual(double left, double right) {
+        return left >= right;
+    }
+
+    private static boolean isReturn(Completion completion) {
+        return completion == Completion.RETURN;
+    }
+
+    private static void loop(MethodHandle condition, MethodHandle body, Frame frame) throws Throwable {
+        while ((boolean) condition.invokeExact(frame)) {
+            body.invokeExact(frame);
+        }
+    }
+
+    private static Completion loopUntilReturn(MethodHandle condition, MethodHandle body, Frame frame) throws Throwable {
+        while ((boolean) condition.invokeExact(frame)) {
+            if ((Completion) body.invokeExact(frame) == Completion.RETURN) {
+                return Completion.RETURN;
+            }
+        }
+        return Completion.NORMAL;
+    }
+
+    private static void forLoop(MethodHandle condition, MethodHandle body, MethodHandle increment,
+                                Frame frame) throws Throwable {
+        while ((boolean) condition.invokeExact(frame)) {
+            body.invokeExact(frame);
+            increment.invokeExact(frame);
+        }
+    }
+
+    private static Completion forLoopUntilReturn(MethodHandle condition, MethodHandle body, MethodHandle increment,
+                                                 Frame frame) throws Throwable {
+        while ((boolean) condition.invokeExact(frame)) {
+            if ((Completion) body.invokeExact(frame) == Completion.RETURN) {
+                return Completion.RETURN;
+            }
+            increment.invokeExact(frame);
+        }
+        return Completion.NORMAL;
+    }
+
+    private static Object newClass(String name, HandleFunction.Body[] methods, Frame frame) {
+        var methodTable = new SymbolMap<LoxFunction>();
+        for (HandleFunction.Body method : methods) {
+            methodTable.put(method.declaration.name.symbol,
+                    new HandleFunction(method, Frame.capture(frame, method.declaration)));
+        }
+        return new LoxClass(name, methodTable);
+    }
+
+    private static Object getProperty(PropertyCache cache, Object object) {
+        return cache.get(instance(object));
+    }
+
+    private static Object setProperty(PropertyCache cache, Object object, Object value) {
+        cache.set(instance(object), value);
+        return value;
+    }
+
+    private static Object invoke(PropertyCache cache, Interpreter interpreter, Object object, Object[] arguments) {
+        LoxInstance instance = instance(object);
+        LoxFunction method = cache.method(instance);
+        if (method == null) {
+            // a field holding something callable
+            return JitRuntime.call(instance.get(cache.key), arguments, interpreter);
+        }
+        if (method.arity() != arguments.length) {
+            throw new RuntimeException("Wrong number of arguments");
+        }
+        Frame frame = method.newFrame(instance);
+        System.arraycopy(arguments, 0, frame.slots, 0, arguments.length);
+        return method.execute(interpreter, frame);
+    }
+
+    private static LoxInstance instance(Object object) {
+        if (!(object instanceof LoxInstance instance)) {
+            throw new RuntimeException(String.format("%s is not an instance of a class", object));
+        }
+        return instance;
+    }
+}
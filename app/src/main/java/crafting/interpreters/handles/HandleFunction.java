@@ -0,0 +1,66 @@
+package crafting.interpreters.handles;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Interpreter.Completion;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.core.base.Stmt;
+
+import java.lang.invoke.MethodHandle;
+
+public class HandleFunction extends LoxFunction {
+    // A function whose body the HandleCompiler turned into a method handle, once per declaration.
+    public final Body body;
+    final Frame closure;
+
+    public HandleFunction(Body body, Frame closure) {
+        super(body.declaration, closure);
+        this.body = body;
+        this.closure = closure;
+    }
+
+    @Override
+    public LoxFunction bind(LoxInstance instance) {
+        var thisFrame = new Frame(closure, 1);
+        thisFrame.slots[0] = instance;
+        return new HandleFunction(body, thisFrame);
+    }
+
+    @Override
+    public Object execute(Interpreter interpreter, Frame frame) {
+        return body.execute(frame);
+    }
+
+    public static final class Body {
+        // null for the top level script
+        public final Stmt.Function declaration;
+        // (Frame)Object, runs the statements on the call's frame and returns the result
+        MethodHandle handle;
+        // set by a return right before the RETURN completion reaches the end of the body
+        Object returnValue;
+
+        Body(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        public Object execute(Frame frame) {
+            try {
+                return (Object) handle.invokeExact(frame);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Object result(Completion completion) {
+            if (completion != Completion.RETURN) {
+                return null;
+            }
+            Object value = returnValue;
+            returnValue = null;
+            return value;
+        }
+    }
+}
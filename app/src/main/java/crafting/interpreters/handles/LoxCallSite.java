@@ -0,0 +1,137 @@
+package crafting.interpreters.handles;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.jit.JitRuntime;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+final class LoxCallSite extends MutableCallSite {
+    // A call `callee(a, b, ...)`, with the type (Object callee, Object a, Object b, ...)Object.
+    // The first call links the site to the body of the function it reaches, behind a guard on
+    // that body, skipping the arity check and the virtual calls of the generic path. A miss
+    // relinks the site, e.g. when a global function was redefined, until it turns out to be
+    // polymorphic and stays generic. The body is entered through Body.execute rather than
+    // spliced into the caller's graph, recursive graphs are more than HotSpot can inline.
+
+    static final int MAX_RELINKS = 4;
+
+    private static final MethodHandle LINK;
+    private static final MethodHandle HAS_BODY;
+    private static final MethodHandle EXECUTE;
+    private static final MethodHandle[] FRAMES = new MethodHandle[5];
+    private static final MethodHandle FRAME_N;
+    private static final MethodHandle[] CALLS = new MethodHandle[5];
+    private static final MethodHandle CALL_N;
+
+    static {
+        try {
+            var lookup = MethodHandles.lookup();
+            LINK = lookup.findVirtual(LoxCallSite.class, "link",
+                    MethodType.methodType(Object.class, Object[].class));
+            HAS_BODY = lookup.findStatic(LoxCallSite.class, "hasBody",
+                    MethodType.methodType(boolean.class, HandleFunction.Body.class, Object.class));
+            EXECUTE = lookup.findVirtual(HandleFunction.Body.class, "execute",
+                    MethodType.methodType(Object.class, Frame.class));
+            for (int argc = 0; argc < FRAMES.length; argc++) {
+                FRAMES[argc] = lookup.findStatic(LoxCallSite.class, "frame" + argc,
+                        MethodType.genericMethodType(argc + 1).changeReturnType(Frame.class).insertParameterTypes(0, int.class));
+                CALLS[argc] = lookup.findStatic(JitRuntime.class, "call" + argc,
+                        MethodType.genericMethodType(argc + 1).appendParameterTypes(Interpreter.class));
+            }
+            FRAME_N = lookup.findStatic(LoxCallSite.class, "frame",
+                    MethodType.methodType(Frame.class, int.class, Object.class, Object[].class));
+            CALL_N = lookup.findStatic(JitRuntime.class, "call",
+                    MethodType.methodType(Object.class, Object.class, Object[].class, Interpreter.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int argc;
+    private final MethodHandle generic;
+    private final MethodHandle relink;
+    private int relinks = 0;
+
+    LoxCallSite(int argc, Interpreter interpreter) {
+        super(MethodType.genericMethodType(argc + 1));
+        this.argc = argc;
+        if (argc < CALLS.length) {
+            generic = MethodHandles.insertArguments(CALLS[argc], argc + 1, interpreter);
+        } else {
+            generic = MethodHandles.insertArguments(CALL_N, 2, interpreter).asCollector(Object[].class, argc);
+        }
+        relink = LINK.bindTo(this).asCollector(Object[].class, argc + 1);
+        setTarget(relink);
+    }
+
+    private Object link(Object[] values) throws Throwable {
+        if (values[0] instanceof HandleFunction function && function.arity() == argc && relinks < MAX_RELINKS) {
+            relinks++;
+            MethodHandle test = MethodHandles.insertArguments(HAS_BODY, 0, function.body);
+            setTarget(MethodHandles.guardWithTest(test, direct(function.body), relink));
+        } else {
+            setTarget(generic);
+        }
+        return getTarget().invokeWithArguments(values);
+    }
+
+    private MethodHandle direct(HandleFunction.Body body) {
+        // (callee, arguments)Object: builds the frame from the callee's closure and runs the body
+        int size = body.declaration.slotCount;
+        MethodHandle frame;
+        if (argc < FRAMES.length) {
+            frame = MethodHandles.insertArguments(FRAMES[argc], 0, size);
+        } else {
+            frame = MethodHandles.insertArguments(FRAME_N, 0, size).asCollector(Object[].class, argc);
+        }
+        return MethodHandles.collectArguments(EXECUTE.bindTo(body), 0, frame);
+    }
+
+    private static boolean hasBody(HandleFunction.Body body, Object callee) {
+        return callee instanceof HandleFunction function && function.body == body;
+    }
+
+    private static Frame frame0(int size, Object callee) {
+        return new Frame(((HandleFunction) callee).closure, size);
+    }
+
+    private static Frame frame1(int size, Object callee, Object a) {
+        Frame frame = frame0(size, callee);
+        frame.slots[0] = a;
+        return frame;
+    }
+
+    private static Frame frame2(int size, Object callee, Object a, Object b) {
+        Frame frame = frame0(size, callee);
+        frame.slots[0] = a;
+        frame.slots[1] = b;
+        return frame;
+    }
+
+    private static Frame frame3(int size, Object callee, Object a, Object b, Object c) {
+        Frame frame = frame0(size, callee);
+        frame.slots[0] = a;
+        frame.slots[1] = b;
+        frame.slots[2] = c;
+        return frame;
+    }
+
+    private static Frame frame4(int size, Object callee, Object a, Object b, Object c, Object d) {
+        Frame frame = frame0(size, callee);
+        frame.slots[0] = a;
+        frame.slots[1] = b;
+        frame.slots[2] = c;
+        frame.slots[3] = d;
+        return frame;
+    }
+
+    private static Frame frame(int size, Object callee, Object[] arguments) {
+        Frame frame = frame0(size, callee);
+        System.arraycopy(arguments, 0, frame.slots, 0, arguments.length);
+        return frame;
+    }
+}
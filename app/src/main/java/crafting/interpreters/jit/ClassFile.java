@@ -0,0 +1,312 @@
+package crafting.interpreters.jit;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+final class ClassFile {
+    // Just enough of a class file writer for the JitCompiler: a class implementing JitCode
+    // with a default constructor and a single `execute` method. It writes version 50 class
+    // files, which the JVM verifies by type inference, so no StackMapTable is needed.
+
+    static final int ACONST_NULL = 0x01, ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC = 0x12,
+            LDC_W = 0x13, LDC2_W = 0x14, ALOAD = 0x19, ALOAD_0 = 0x2a, AALOAD = 0x32, ASTORE = 0x3a, AASTORE = 0x53,
+            POP = 0x57, DUP = 0x59, DADD = 0x63, DSUB = 0x67, DMUL = 0x6b, DDIV = 0x6f, DNEG = 0x77,
+            DCMPL = 0x97, DCMPG = 0x98, IFEQ = 0x99, IFNE = 0x9a, IFLT = 0x9b, IFGE = 0x9c, IFGT = 0x9d,
+            IFLE = 0x9e, GOTO = 0xa7, ARETURN = 0xb0, RETURN = 0xb1, GETSTATIC = 0xb2,
+            INVOKESPECIAL = 0xb7, INVOKESTATIC = 0xb8, ANEWARRAY = 0xbd;
+
+    static final class Label {
+        int position = -1;
+        // offsets of the opcodes of the jumps to this label, and of their operands
+        final List<int[]> jumps = new ArrayList<>();
+    }
+
+    static final class TooLarge extends RuntimeException {
+        TooLarge(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolOut = new DataOutputStream(pool);
+    private final Map<String, Integer> poolIndexes = new HashMap<>();
+    private int poolCount = 1;
+
+    private byte[] code = new byte[256];
+    private int length = 0;
+    private int stack = 0;
+    private int maxStack = 0;
+    private int maxLocals = 0;
+
+    private final List<Label> labels = new ArrayList<>();
+    private final String className;
+
+    ClassFile(String className) {
+        this.className = className;
+    }
+
+    // constant pool
+
+    private int constant(String key, int tag, int width, Writer writer) {
+        Integer index = poolIndexes.get(key);
+        if (index != null) {
+            return index;
+        }
+        try {
+            poolOut.writeByte(tag);
+            writer.write(poolOut);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        index = poolCount;
+        poolCount += width;
+        poolIndexes.put(key, index);
+        return index;
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, 1, out -> out.writeUTF(value));
+    }
+
+    int classRef(String internalName) {
+        int name = utf8(internalName);
+        return constant("C" + internalName, 7, 1, out -> out.writeShort(name));
+    }
+
+    private int string(String value) {
+        int utf = utf8(value);
+        return constant("S" + value, 8, 1, out -> out.writeShort(utf));
+    }
+
+    private int integer(int value) {
+        return constant("I" + value, 3, 1, out -> out.writeInt(value));
+    }
+
+    private int doubleConstant(double value) {
+        return constant("D" + Double.doubleToRawLongBits(value), 6, 2, out -> out.writeDouble(value));
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int n = utf8(name);
+        int d = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, 12, 1, out -> {
+            out.writeShort(n);
+            out.writeShort(d);
+        });
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        int c = classRef(owner);
+        int nt = nameAndType(name, descriptor);
+        return constant(tag + owner + "." + name + descriptor, tag, 1, out -> {
+            out.writeShort(c);
+            out.writeShort(nt);
+        });
+    }
+
+    // code
+
+    private void emit(int b) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, length * 2);
+        }
+        code[length++] = (byte) b;
+    }
+
+    private void emitShort(int value) {
+        emit(value >> 8);
+        emit(value);
+    }
+
+    void adjustStack(int effect) {
+        // in stack slots, doubles take two
+        stack += effect;
+        maxStack = Math.max(maxStack, stack);
+    }
+
+    void op(int opcode, int stackEffect) {
+        emit(opcode);
+        adjustStack(stackEffect);
+    }
+
+    void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH, 1);
+            emit(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH, 1);
+            emitShort(value);
+        } else {
+            op(LDC_W, 1);
+            emitShort(integer(value));
+        }
+    }
+
+    void pushString(String value) {
+        int index = string(value);
+        if (index < 256) {
+            op(LDC, 1);
+            emit(index);
+        } else {
+            op(LDC_W, 1);
+            emitShort(index);
+        }
+    }
+
+    void pushDouble(double value) {
+        op(LDC2_W, 2);
+        emitShort(doubleConstant(value));
+    }
+
+    void load(int local) {
+        op(ALOAD, 1);
+        localOperand(local);
+    }
+
+    void store(int local) {
+        op(ASTORE, -1);
+        localOperand(local);
+    }
+
+    private void localOperand(int local) {
+        if (local > 255) {
+            throw new TooLarge("Too many locals");
+        }
+        emit(local);
+        maxLocals = Math.max(maxLocals, local + 1);
+    }
+
+    void useLocals(int count) {
+        maxLocals = Math.max(maxLocals, count);
+    }
+
+    void invokeStatic(String owner, String name, String descriptor, int stackEffect) {
+        op(INVOKESTATIC, stackEffect);
+        emitShort(member(10, owner, name, descriptor));
+    }
+
+    void getStatic(String owner, String name, String descriptor) {
+        op(GETSTATIC, 1);
+        emitShort(member(9, owner, name, descriptor));
+    }
+
+    void newObjectArray(String elementClass) {
+        op(ANEWARRAY, 0);
+        emitShort(classRef(elementClass));
+    }
+
+    void jump(int opcode, Label target, int stackEffect) {
+        int at = length;
+        op(opcode, stackEffect);
+        emitShort(0);
+        target.jumps.add(new int[]{at, at + 1});
+    }
+
+    Label newLabel() {
+        var label = new Label();
+        labels.add(label);
+        return label;
+    }
+
+    void mark(Label label) {
+        label.position = length;
+    }
+
+    int stack() {
+        return stack;
+    }
+
+    void resetStack(int depth) {
+        // where control only arrives by a jump, the depth is the one at the jump
+        stack = depth;
+    }
+
+    private void patchJumps() {
+        for (Label label : labels) {
+            for (int[] jump : label.jumps) {
+                int offset = label.position - jump[0];
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new TooLarge("Jump too long");
+                }
+                code[jump[1]] = (byte) (offset >> 8);
+                code[jump[1] + 1] = (byte) offset;
+            }
+        }
+    }
+
+    byte[] toByteArray(String interfaceName, String methodName, String descriptor) {
+        // the method's code is what was emitted so far
+        patchJumps();
+        int thisClass = classRef(className);
+        int superClass = classRef("java/lang/Object");
+        int iface = classRef(interfaceName);
+        int init = utf8("<init>");
+        int voidDescriptor = utf8("()V");
+        int objectInit = member(10, "java/lang/Object", "<init>", "()V");
+        int name = utf8(methodName);
+        int desc = utf8(descriptor);
+        int codeAttribute = utf8("Code");
+        try {
+            var bytes = new ByteArrayOutputStream();
+            var out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(50);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(0x0031); // public final super
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(1);
+            out.writeShort(iface);
+            out.writeShort(0); // fields
+            out.writeShort(2); // methods
+
+            out.writeShort(0x0001);
+            out.writeShort(init);
+            out.writeShort(voidDescriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + 5);
+            out.writeShort(1);
+            out.writeShort(1);
+            out.writeInt(5);
+            out.writeByte(ALOAD_0);
+            out.writeByte(INVOKESPECIAL);
+            out.writeShort(objectInit);
+            out.writeByte(RETURN);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            out.writeShort(0x0001);
+            out.writeShort(name);
+            out.writeShort(desc);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            out.writeShort(0);
+            out.writeShort(0);
+
+            out.writeShort(0); // class attributes
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
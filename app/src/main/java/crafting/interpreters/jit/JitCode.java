@@ -0,0 +1,9 @@
+package crafting.interpreters.jit;
+
+import crafting.interpreters.core.Interpreter;
+
+public interface JitCode {
+    // Entry point of a function compiled to JVM bytecode by the JitCompiler.
+    // slots are the slots of the call's frame, with the arguments first.
+    Object execute(Interpreter interpreter, Object[] slots);
+}
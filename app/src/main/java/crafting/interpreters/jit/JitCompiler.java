@@ -0,0 +1,447 @@
+package crafting.interpreters.jit;
+
+import crafting.interpreters.core.base.Expr;
+import crafting.interpreters.core.base.Stmt;
+import crafting.interpreters.core.base.Token;
+import crafting.interpreters.core.base.TokenType;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+import static crafting.interpreters.jit.ClassFile.*;
+
+public class JitCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // Compiles a hot function to a hidden JVM class implementing JitCode, so HotSpot
+    // compiles the Lox code itself. Lox locals become JVM locals (blocks don't allocate frames)
+    // and arithmetic runs on doubles. Only self-contained functions are compiled: nested
+    // functions or classes, properties, 'this' and variables of enclosing functions are left
+    // to the interpreter. The class isn't strongly linked to its loader, so it's unloaded
+    // together with the function's JitCode.
+
+    private static final String RUNTIME = "crafting/interpreters/jit/JitRuntime";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String INTERPRETER = "Lcrafting/interpreters/core/Interpreter;";
+    private static final String BOOLEAN = "Ljava/lang/Boolean;";
+
+    // JVM locals of `execute(Interpreter interpreter, Object[] slots)`, Lox locals follow
+    private static final int INTERPRETER_LOCAL = 1;
+    private static final int SLOTS_LOCAL = 2;
+    private static final int FIRST_LOCAL = 3;
+
+    private static final class Unsupported extends RuntimeException {
+        Unsupported(String what) {
+            super(what, null, false, false);
+        }
+    }
+
+    private final ClassFile cf;
+    // JVM local holding slot 0 of each enclosing scope of the function, innermost last
+    private final List<Integer> scopes = new ArrayList<>();
+    private int nextLocal = FIRST_LOCAL;
+
+    private JitCompiler(Stmt.Function function) {
+        cf = new ClassFile("crafting/interpreters/jit/Lox_" + function.name.lexeme);
+    }
+
+    public static JitCode compile(Stmt.Function function) {
+        // null when the function uses something this compiler doesn't handle
+        byte[] bytes;
+        try {
+            bytes = new JitCompiler(function).generate(function);
+        } catch (Unsupported | ClassFile.TooLarge e) {
+            return null;
+        }
+        try {
+            var lookup = MethodHandles.lookup().defineHiddenClass(bytes, true);
+            var constructor = lookup.findConstructor(lookup.lookupClass(), MethodType.methodType(void.class));
+            return (JitCode) constructor.invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Can't load the compiled code of " + function.name.lexeme, e);
+        }
+    }
+
+    private byte[] generate(Stmt.Function function) {
+        scopes.add(FIRST_LOCAL);
+        nextLocal = FIRST_LOCAL + function.slotCount;
+        cf.useLocals(nextLocal);
+        for (int i = 0; i < function.params.size(); i++) {
+            cf.load(SLOTS_LOCAL);
+            cf.pushInt(i);
+            cf.op(AALOAD, -1);
+            cf.store(FIRST_LOCAL + i);
+        }
+        for (Stmt stmt : function.body) {
+            stmt.accept(this);
+        }
+        cf.op(ACONST_NULL, 1);
+        cf.op(ARETURN, -1);
+        return cf.toByteArray("crafting/interpreters/jit/JitCode", "execute",
+                "(" + INTERPRETER + "[" + OBJECT + ")" + OBJECT);
+    }
+
+    private int local(int depth, int slot) {
+        int scope = scopes.size() - 1 - depth;
+        if (scope < 0) {
+            throw new Unsupported("variable of an enclosing function");
+        }
+        return scopes.get(scope) + slot;
+    }
+
+    private void number(Expr expr, Token operator) {
+        // leaves a double on the stack; nested arithmetic never boxes
+        if (expr instanceof Expr.Binary binary && arithmeticOpcode(binary.operator.type) != 0) {
+            number(binary.left, binary.operator);
+            number(binary.right, binary.operator);
+            cf.op(arithmeticOpcode(binary.operator.type), -2);
+        } else if (expr instanceof Expr.Grouping grouping) {
+            number(grouping.expression, operator);
+        } else if (expr instanceof Expr.Unary unary && unary.operator.type == TokenType.MINUS) {
+            number(unary.right, unary.operator);
+            cf.op(DNEG, 0);
+        } else if (expr instanceof Expr.Literal literal && literal.value instanceof Double value) {
+            cf.pushDouble(value);
+        } else {
+            expr.accept(this);
+            cf.pushInt(operator.line);
+            cf.invokeStatic(RUNTIME, "number", "(" + OBJECT + "I)D", 0);
+        }
+    }
+
+    private static int arithmeticOpcode(TokenType type) {
+        return switch (type) {
+            case PLUS -> DADD;
+            case MINUS -> DSUB;
+            case STAR -> DMUL;
+            case SLASH -> DDIV;
+            default -> 0;
+        };
+    }
+
+    private void boxNumber() {
+        cf.invokeStatic("java/lang/Double", "valueOf", "(D)Ljava/lang/Double;", -1);
+    }
+
+    private boolean isComparison(Expr expr) {
+        return expr instanceof Expr.Binary binary && switch (binary.operator.type) {
+            case LESS, LESS_EQUAL, GREATER, GREATER_EQUAL -> true;
+            default -> false;
+        };
+    }
+
+    private void compare(Expr.Binary expr, Label ifFalse) {
+        // NaN makes every comparison false, hence dcmpg for < and <= and dcmpl for > and >=
+        number(expr.left, expr.operator);
+        number(expr.right, expr.operator);
+        switch (expr.operator.type) {
+            case LESS -> {
+                cf.op(DCMPG, -3);
+                cf.jump(IFGE, ifFalse, -1);
+            }
+            case LESS_EQUAL -> {
+                cf.op(DCMPG, -3);
+                cf.jump(IFGT, ifFalse, -1);
+            }
+            case GREATER -> {
+                cf.op(DCMPL, -3);
+                cf.jump(IFLE, ifFalse, -1);
+            }
+            default -> {
+                cf.op(DCMPL, -3);
+                cf.jump(IFLT, ifFalse, -1);
+            }
+        }
+    }
+
+    private void condition(Expr expr, Label ifFalse) {
+        while (expr instanceof Expr.Grouping grouping) {
+            expr = grouping.expression;
+        }
+        if (isComparison(expr)) {
+            compare((Expr.Binary) expr, ifFalse);
+            return;
+        }
+        expr.accept(this);
+        cf.invokeStatic(RUNTIME, "truthy", "(" + OBJECT + ")Z", 0);
+        cf.jump(IFEQ, ifFalse, -1);
+    }
+
+    @Override
+    public Void visitPrint(Stmt.Print stmt) {
+        stmt.expression.accept(this);
+        cf.load(INTERPRETER_LOCAL);
+        cf.invokeStatic(RUNTIME, "print", "(" + OBJECT + INTERPRETER + ")V", -2);
+        return null;
+    }
+
+    @Override
+    public Void visitExprStmt(Stmt.ExprStmt stmt) {
+        stmt.expression.accept(this);
+        cf.op(POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVarDcl(Stmt.VarDcl varDcl) {
+        if (varDcl.slot == -1) {
+            throw new Unsupported("global declaration");
+        }
+        if (varDcl.expressionInitializer != null) {
+            varDcl.expressionInitializer.accept(this);
+        } else {
+            cf.op(ACONST_NULL, 1);
+        }
+        cf.store(local(0, varDcl.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Stmt.Block block) {
+        if (!block.needsFrame) {
+            // the variables are in locals reserved by the enclosing scope
+            for (Stmt stmt : block.statements) {
+                stmt.accept(this);
+            }
+            return null;
+        }
+        int base = nextLocal;
+        scopes.add(base);
+        nextLocal += block.slotCount;
+        cf.useLocals(nextLocal);
+        for (Stmt stmt : block.statements) {
+            stmt.accept(this);
+        }
+        scopes.remove(scopes.size() - 1);
+        nextLocal = base;
+        return null;
+    }
+
+    @Override
+    public Void visitIf(Stmt.If ifStmt) {
+        Label elseBranch = cf.newLabel();
+        Label end = cf.newLabel();
+        condition(ifStmt.condition, elseBranch);
+        ifStmt.thenBranch.accept(this);
+        cf.jump(GOTO, end, 0);
+        cf.mark(elseBranch);
+        if (ifStmt.elseBranch != null) {
+            ifStmt.elseBranch.accept(this);
+        }
+        cf.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(Stmt.While whileStmt) {
+        Label start = cf.newLabel();
+        Label exit = cf.newLabel();
+        cf.mark(start);
+        condition(whileStmt.condition, exit);
+        whileStmt.statement.accept(this);
+        cf.jump(GOTO, start, 0);
+        cf.mark(exit);
+        return null;
+    }
+
+    @Override
+    public Void visitFor(Stmt.For forStmt) {
+        // the loop frame is a scope of its own, like a block around the loop
+        int base = nextLocal;
+        if (forStmt.needsFrame) {
+            scopes.add(base);
+            nextLocal += forStmt.slotCount;
+            cf.useLocals(nextLocal);
+        }
+        if (forStmt.initializer != null) {
+            forStmt.initializer.accept(this);
+        }
+        Label start = cf.newLabel();
+        Label exit = cf.newLabel();
+        cf.mark(start);
+        condition(forStmt.condition, exit);
+        forStmt.body.accept(this);
+        if (forStmt.increment != null) {
+            forStmt.increment.accept(this);
+            cf.op(POP, -1);
+        }
+        cf.jump(GOTO, start, 0);
+        cf.mark(exit);
+        if (forStmt.needsFrame) {
+            scopes.remove(scopes.size() - 1);
+            nextLocal = base;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunction(Stmt.Function function) {
+        throw new Unsupported("nested function");
+    }
+
+    @Override
+    public Void visitReturn(Stmt.Return ret) {
+        if (ret.value != null) {
+            ret.value.accept(this);
+        } else {
+            cf.op(ACONST_NULL, 1);
+        }
+        cf.op(ARETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitClass(Stmt.Class klass) {
+        throw new Unsupported("class declaration");
+    }
+
+    @Override
+    public Void visitBinary(Expr.Binary expr) {
+        if (arithmeticOpcode(expr.operator.type) != 0) {
+            number(expr, expr.operator);
+            boxNumber();
+            return null;
+        }
+        if (isComparison(expr)) {
+            Label isFalse = cf.newLabel();
+            Label end = cf.newLabel();
+            int depth = cf.stack();
+            compare(expr, isFalse);
+            cf.getStatic("java/lang/Boolean", "TRUE", BOOLEAN);
+            cf.jump(GOTO, end, 0);
+            cf.resetStack(depth);
+            cf.mark(isFalse);
+            cf.getStatic("java/lang/Boolean", "FALSE", BOOLEAN);
+            cf.mark(end);
+            return null;
+        }
+        expr.left.accept(this);
+        expr.right.accept(this);
+        switch (expr.operator.type) {
+            case EQUAL_EQUAL -> cf.invokeStatic(RUNTIME, "equal", "(" + OBJECT + OBJECT + ")" + BOOLEAN, -1);
+            case BANG_EQUAL -> cf.invokeStatic(RUNTIME, "notEqual", "(" + OBJECT + OBJECT + ")" + BOOLEAN, -1);
+            default -> throw new Unsupported("operator " + expr.operator.lexeme);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Expr.Unary expr) {
+        switch (expr.operator.type) {
+            case MINUS -> {
+                number(expr, expr.operator);
+                boxNumber();
+            }
+            case BANG -> {
+                expr.right.accept(this);
+                cf.invokeStatic(RUNTIME, "not", "(" + OBJECT + ")" + BOOLEAN, 0);
+            }
+            default -> throw new Unsupported("operator " + expr.operator.lexeme);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Expr.Literal literal) {
+        Object value = literal.value;
+        if (value == null) {
+            cf.op(ACONST_NULL, 1);
+        } else if (value instanceof Boolean bool) {
+            cf.getStatic("java/lang/Boolean", bool ? "TRUE" : "FALSE", BOOLEAN);
+        } else if (value instanceof Double number) {
+            cf.pushDouble(number);
+            boxNumber();
+        } else if (value instanceof String string) {
+            cf.pushString(string);
+        } else {
+            throw new Unsupported("literal " + value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Expr.Variable variable) {
+        if (variable.depth == -1) {
+            cf.load(INTERPRETER_LOCAL);
+            cf.pushInt(variable.name.symbol);
+            cf.invokeStatic(RUNTIME, "global", "(" + INTERPRETER + "I)" + OBJECT, -1);
+            return null;
+        }
+        cf.load(local(variable.depth, variable.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitAssignment(Expr.Assignment assignment) {
+        assignment.expression.accept(this);
+        if (assignment.depth == -1) {
+            cf.load(INTERPRETER_LOCAL);
+            cf.pushInt(assignment.name.symbol);
+            cf.invokeStatic(RUNTIME, "setGlobal", "(" + OBJECT + INTERPRETER + "I)" + OBJECT, -2);
+            return null;
+        }
+        cf.op(DUP, 1);
+        cf.store(local(assignment.depth, assignment.slot));
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(Expr.Logical logical) {
+        Label end = cf.newLabel();
+        logical.left.accept(this);
+        cf.op(DUP, 1);
+        cf.invokeStatic(RUNTIME, "truthy", "(" + OBJECT + ")Z", 0);
+        cf.jump(logical.operator.type == TokenType.AND ? IFEQ : IFNE, end, -1);
+        cf.op(POP, -1);
+        logical.right.accept(this);
+        cf.mark(end);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Expr.Call call) {
+        call.callee.accept(this);
+        int argc = call.arguments.size();
+        if (argc <= 4) {
+            for (Expr argument : call.arguments) {
+                argument.accept(this);
+            }
+            cf.load(INTERPRETER_LOCAL);
+            String descriptor = "(" + OBJECT.repeat(argc + 1) + INTERPRETER + ")" + OBJECT;
+            cf.invokeStatic(RUNTIME, "call" + argc, descriptor, -(argc + 1));
+            return null;
+        }
+        cf.pushInt(argc);
+        cf.newObjectArray("java/lang/Object");
+        for (int i = 0; i < argc; i++) {
+            cf.op(DUP, 1);
+            cf.pushInt(i);
+            call.arguments.get(i).accept(this);
+            cf.op(AASTORE, -3);
+        }
+        cf.load(INTERPRETER_LOCAL);
+        cf.invokeStatic(RUNTIME, "call", "(" + OBJECT + "[" + OBJECT + INTERPRETER + ")" + OBJECT, -2);
+        return null;
+    }
+
+    @Override
+    public Void visitGet(Expr.Get get) {
+        throw new Unsupported("property");
+    }
+
+    @Override
+    public Void visitSet(Expr.Set set) {
+        throw new Unsupported("property");
+    }
+
+    @Override
+    public Void visitThis(Expr.This expr) {
+        throw new Unsupported("this");
+    }
+}
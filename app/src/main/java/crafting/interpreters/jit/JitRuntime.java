@@ -0,0 +1,86 @@
+package crafting.interpreters.jit;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.base.LoxCallable;
+
+import java.util.Arrays;
+
+public final class JitRuntime {
+    // Static helpers called from compiled functions, for everything that isn't
+    // a plain JVM instruction. Their behavior matches the Interpreter's.
+
+    private JitRuntime() {
+    }
+
+    public static double number(Object value, int line) {
+        if (value instanceof Double number) {
+            return number;
+        }
+        String msg = "Number was expected";
+        System.out.printf("Error in line %d. Error: %s", line, msg);
+        throw new RuntimeException(msg);
+    }
+
+    public static boolean truthy(Object value) {
+        return Interpreter.isTruthy(value);
+    }
+
+    public static Boolean not(Object value) {
+        return !Interpreter.isTruthy(value);
+    }
+
+    public static Boolean equal(Object left, Object right) {
+        return Interpreter.isEqual(left, right);
+    }
+
+    public static Boolean notEqual(Object left, Object right) {
+        return !Interpreter.isEqual(left, right);
+    }
+
+    public static Object global(Interpreter interpreter, int symbol) {
+        return interpreter.globals.readVariableValue(symbol);
+    }
+
+    public static Object setGlobal(Object value, Interpreter interpreter, int symbol) {
+        interpreter.globals.assign(symbol, value);
+        return value;
+    }
+
+    public static void print(Object value, Interpreter interpreter) {
+        interpreter.print(value);
+    }
+
+    public static Object call0(Object callee, Interpreter interpreter) {
+        return callable(callee, 0).call0(interpreter);
+    }
+
+    public static Object call1(Object callee, Object a, Interpreter interpreter) {
+        return callable(callee, 1).call1(interpreter, a);
+    }
+
+    public static Object call2(Object callee, Object a, Object b, Interpreter interpreter) {
+        return callable(callee, 2).call2(interpreter, a, b);
+    }
+
+    public static Object call3(Object callee, Object a, Object b, Object c, Interpreter interpreter) {
+        return callable(callee, 3).call3(interpreter, a, b, c);
+    }
+
+    public static Object call4(Object callee, Object a, Object b, Object c, Object d, Interpreter interpreter) {
+        return callable(callee, 4).call4(interpreter, a, b, c, d);
+    }
+
+    public static Object call(Object callee, Object[] arguments, Interpreter interpreter) {
+        return callable(callee, arguments.length).call(interpreter, Arrays.asList(arguments));
+    }
+
+    private static LoxCallable callable(Object callee, int argc) {
+        if (!(callee instanceof LoxCallable function)) {
+            throw new RuntimeException(String.format("%s is not callable", callee));
+        }
+        if (function.arity() != argc) {
+            throw new RuntimeException("Wrong number of arguments");
+        }
+        return function;
+    }
+}
@@ -0,0 +1,140 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable;
+import crafting.interpreters.core.base.Token;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public abstract class CallNode extends ExprNode {
+    // A call `callee(arguments)`. It starts Uninitialized; if the first callee is a function
+    // with matching arity it becomes a Direct call to that function's body, and it goes
+    // Generic when the callee turns out to be something else.
+
+    final Interpreter interpreter;
+    final Token paren;
+    ExprNode callee;
+    final ExprNode[] arguments;
+
+    CallNode(Interpreter interpreter, Token paren, ExprNode callee, ExprNode[] arguments) {
+        this.interpreter = interpreter;
+        this.paren = paren;
+        this.callee = adopt(callee);
+        this.arguments = adopt(arguments);
+    }
+
+    CallNode(CallNode previous) {
+        this(previous.interpreter, previous.paren, previous.callee, previous.arguments);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        return call(frame, callee.execute(frame));
+    }
+
+    abstract Object call(Frame frame, Object function);
+
+    @Override
+    void replaceChild(ExprNode child, ExprNode replacement) {
+        if (callee == child) callee = replacement;
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] == child) arguments[i] = replacement;
+        }
+    }
+
+    public static final class Uninitialized extends CallNode {
+        Uninitialized(Interpreter interpreter, Token paren, ExprNode callee, ExprNode[] arguments) {
+            super(interpreter, paren, callee, arguments);
+        }
+
+        @Override
+        Object call(Frame frame, Object function) {
+            if (function instanceof NodeFunction nodeFunction && nodeFunction.arity() == arguments.length) {
+                return replace(new Direct(this, nodeFunction.body)).call(frame, function);
+            }
+            return replace(new Generic(this)).call(frame, function);
+        }
+    }
+
+    public static final class Direct extends CallNode {
+        // every closure of the same declaration shares the body, so they all pass the guard
+        final NodeFunction.Body body;
+
+        Direct(CallNode previous, NodeFunction.Body body) {
+            super(previous);
+            this.body = body;
+        }
+
+        @Override
+        Object call(Frame frame, Object function) {
+            if (function instanceof NodeFunction nodeFunction && nodeFunction.body == body) {
+                // the arity was checked when the node specialized
+                Frame callFrame = nodeFunction.newFrame(null);
+                for (int i = 0; i < arguments.length; i++) {
+                    callFrame.slots[i] = arguments[i].execute(frame);
+                }
+                return body.execute(callFrame);
+            }
+            return replace(new Generic(this)).call(frame, function);
+        }
+    }
+
+    public static final class Generic extends CallNode {
+        Generic(CallNode previous) {
+            super(previous);
+        }
+
+        @Override
+        Object call(Frame frame, Object function) {
+            return callValue(interpreter, frame, function, arguments);
+        }
+    }
+
+    static Object callValue(Interpreter interpreter, Frame frame, Object function, ExprNode[] arguments) {
+        // up to four arguments go through the fixed arity entry points, without a list
+        return switch (arguments.length) {
+            case 0 -> callable(function, 0).call0(interpreter);
+            case 1 -> {
+                Object a = arguments[0].execute(frame);
+                yield callable(function, 1).call1(interpreter, a);
+            }
+            case 2 -> {
+                Object a = arguments[0].execute(frame);
+                Object b = arguments[1].execute(frame);
+                yield callable(function, 2).call2(interpreter, a, b);
+            }
+            case 3 -> {
+                Object a = arguments[0].execute(frame);
+                Object b = arguments[1].execute(frame);
+                Object c = arguments[2].execute(frame);
+                yield callable(function, 3).call3(interpreter, a, b, c);
+            }
+            case 4 -> {
+                Object a = arguments[0].execute(frame);
+                Object b = arguments[1].execute(frame);
+                Object c = arguments[2].execute(frame);
+                Object d = arguments[3].execute(frame);
+                yield callable(function, 4).call4(interpreter, a, b, c, d);
+            }
+            default -> {
+                List<Object> args = new ArrayList<>();
+                for (ExprNode argument : arguments) {
+                    args.add(argument.execute(frame));
+                }
+                yield callable(function, args.size()).call(interpreter, args);
+            }
+        };
+    }
+
+    private static LoxCallable callable(Object function, int argc) {
+        if (!(function instanceof LoxCallable callable)) {
+            throw new RuntimeException(String.format("%s is not callable", function));
+        }
+        if (callable.arity() != argc) {
+            throw new RuntimeException("Wrong number of arguments");
+        }
+        return callable;
+    }
+}
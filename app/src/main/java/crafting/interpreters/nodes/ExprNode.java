@@ -0,0 +1,31 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.Token;
+
+public abstract class ExprNode extends Node {
+
+    public abstract Object execute(Frame frame);
+
+    public double executeDouble(Frame frame) throws UnexpectedResult {
+        // numeric nodes override this to produce their value without boxing it
+        Object value = execute(frame);
+        if (value instanceof Double number) {
+            return number;
+        }
+        throw new UnexpectedResult(value);
+    }
+
+    protected final <T extends ExprNode> T replace(T replacement) {
+        // an activation still running the old node may try to replace it again,
+        // the parent ignores children it doesn't hold anymore
+        replacement.parent = parent;
+        parent.replaceChild(this, replacement);
+        return replacement;
+    }
+
+    static RuntimeException error(Token token, String message) {
+        System.out.printf("Error in line %d. Error: %s", token.line, message);
+        return new RuntimeException(message);
+    }
+}
@@ -0,0 +1,525 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.base.Cell;
+import crafting.interpreters.core.base.Environment;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.core.base.PropertyCache;
+import crafting.interpreters.core.base.Token;
+
+import static crafting.interpreters.core.Interpreter.isEqual;
+import static crafting.interpreters.core.Interpreter.isTruthy;
+
+public final class ExprNodes {
+    // Executable expression nodes. Variables come already resolved to a global name,
+    // a slot of the current frame or a (depth, slot) pair, and operators to their own node class.
+
+    private ExprNodes() {
+    }
+
+    public static final class Literal extends ExprNode {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return value;
+        }
+    }
+
+    public static final class DoubleLiteral extends ExprNode {
+        final double value;
+        private final Double boxed;
+
+        DoubleLiteral(double value) {
+            this.value = value;
+            this.boxed = value;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return boxed;
+        }
+
+        @Override
+        public double executeDouble(Frame frame) {
+            return value;
+        }
+    }
+
+    public static final class GlobalVariable extends ExprNode {
+        final Environment globals;
+        // symbol id of the global's name
+        final int symbol;
+
+        GlobalVariable(Environment globals, int symbol) {
+            this.globals = globals;
+            this.symbol = symbol;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return globals.readVariableValue(symbol);
+        }
+    }
+
+    public static final class LocalVariable extends ExprNode {
+        final int slot;
+
+        LocalVariable(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return frame.slots[slot];
+        }
+    }
+
+    public static final class EnclosingVariable extends ExprNode {
+        final int depth;
+        final int slot;
+
+        EnclosingVariable(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return frame.getAt(depth, slot);
+        }
+    }
+
+    public static final class CellVariable extends ExprNode {
+        // a variable boxed for the closures capturing it, see Stmt.VarDcl.boxed
+        final int depth;
+        final int slot;
+
+        CellVariable(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return ((Cell) frame.getAt(depth, slot)).value;
+        }
+    }
+
+    abstract static class Assignment extends ExprNode {
+        ExprNode value;
+
+        Assignment(ExprNode value) {
+            this.value = adopt(value);
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (value == child) value = replacement;
+        }
+    }
+
+    public static final class GlobalAssignment extends Assignment {
+        final Environment globals;
+        final int symbol;
+
+        GlobalAssignment(Environment globals, int symbol, ExprNode value) {
+            super(value);
+            this.globals = globals;
+            this.symbol = symbol;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            globals.assign(symbol, result);
+            return result;
+        }
+    }
+
+    public static final class LocalAssignment extends Assignment {
+        final int slot;
+
+        LocalAssignment(int slot, ExprNode value) {
+            super(value);
+            this.slot = slot;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            frame.slots[slot] = result;
+            return result;
+        }
+    }
+
+    public static final class EnclosingAssignment extends Assignment {
+        final int depth;
+        final int slot;
+
+        EnclosingAssignment(int depth, int slot, ExprNode value) {
+            super(value);
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            frame.assignAt(depth, slot, result);
+            return result;
+        }
+    }
+
+    public static final class CellAssignment extends Assignment {
+        final int depth;
+        final int slot;
+
+        CellAssignment(int depth, int slot, ExprNode value) {
+            super(value);
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object result = value.execute(frame);
+            ((Cell) frame.getAt(depth, slot)).value = result;
+            return result;
+        }
+    }
+
+    public static final class Negate extends ExprNode {
+        final Token operator;
+        ExprNode right;
+
+        Negate(Token operator, ExprNode right) {
+            this.operator = operator;
+            this.right = adopt(right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return executeDouble(frame);
+        }
+
+        @Override
+        public double executeDouble(Frame frame) {
+            try {
+                return -right.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                throw error(operator, "Number was expected");
+            }
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (right == child) right = replacement;
+        }
+    }
+
+    public static final class Not extends ExprNode {
+        ExprNode right;
+
+        Not(ExprNode right) {
+            this.right = adopt(right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return !isTruthy(right.execute(frame));
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (right == child) right = replacement;
+        }
+    }
+
+    abstract static class Binary extends ExprNode {
+        final Token operator;
+        ExprNode left;
+        ExprNode right;
+
+        Binary(Token operator, ExprNode left, ExprNode right) {
+            this.operator = operator;
+            this.left = adopt(left);
+            this.right = adopt(right);
+        }
+
+        final double operand(ExprNode node, Frame frame) {
+            // arithmetic and comparisons only accept numbers, so this guard failing is an error
+            try {
+                return node.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                throw error(operator, "Number was expected");
+            }
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (left == child) left = replacement;
+            if (right == child) right = replacement;
+        }
+    }
+
+    abstract static class Arithmetic extends Binary {
+        Arithmetic(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public final Object execute(Frame frame) {
+            return executeDouble(frame);
+        }
+
+        @Override
+        public abstract double executeDouble(Frame frame);
+    }
+
+    public static final class Add extends Arithmetic {
+        Add(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame frame) {
+            return operand(left, frame) + operand(right, frame);
+        }
+    }
+
+    public static final class Subtract extends Arithmetic {
+        Subtract(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame frame) {
+            return operand(left, frame) - operand(right, frame);
+        }
+    }
+
+    public static final class Multiply extends Arithmetic {
+        Multiply(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame frame) {
+            return operand(left, frame) * operand(right, frame);
+        }
+    }
+
+    public static final class Divide extends Arithmetic {
+        Divide(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public double executeDouble(Frame frame) {
+            return operand(left, frame) / operand(right, frame);
+        }
+    }
+
+    public static final class Less extends Binary {
+        Less(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return operand(left, frame) < operand(right, frame);
+        }
+    }
+
+    public static final class LessEqual extends Binary {
+        LessEqual(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return operand(left, frame) <= operand(right, frame);
+        }
+    }
+
+    public static final class Greater extends Binary {
+        Greater(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return operand(left, frame) > operand(right, frame);
+        }
+    }
+
+    public static final class GreaterEqual extends Binary {
+        GreaterEqual(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return operand(left, frame) >= operand(right, frame);
+        }
+    }
+
+    // == and != accept any value. They start uninitialized, specialize to DoubleEqual when
+    // both operands were numbers, and go generic as soon as a guard sees something else.
+
+    public static final class UninitializedEqual extends Binary {
+        final boolean negated;
+
+        UninitializedEqual(Token operator, ExprNode left, ExprNode right, boolean negated) {
+            super(operator, left, right);
+            this.negated = negated;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            if (leftValue instanceof Double && rightValue instanceof Double) {
+                replace(new DoubleEqual(operator, left, right, negated));
+            } else {
+                replace(new GenericEqual(operator, left, right, negated));
+            }
+            return isEqual(leftValue, rightValue) != negated;
+        }
+    }
+
+    public static final class DoubleEqual extends Binary {
+        final boolean negated;
+
+        DoubleEqual(Token operator, ExprNode left, ExprNode right, boolean negated) {
+            super(operator, left, right);
+            this.negated = negated;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            double leftValue;
+            try {
+                leftValue = left.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                var generic = replace(new GenericEqual(operator, left, right, negated));
+                return generic.compare(e.result, right.execute(frame));
+            }
+            double rightValue;
+            try {
+                rightValue = right.executeDouble(frame);
+            } catch (UnexpectedResult e) {
+                var generic = replace(new GenericEqual(operator, left, right, negated));
+                return generic.compare(leftValue, e.result);
+            }
+            // same as Double.equals, which is what isEqual uses
+            return (Double.doubleToLongBits(leftValue) == Double.doubleToLongBits(rightValue)) != negated;
+        }
+    }
+
+    public static final class GenericEqual extends Binary {
+        final boolean negated;
+
+        GenericEqual(Token operator, ExprNode left, ExprNode right, boolean negated) {
+            super(operator, left, right);
+            this.negated = negated;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return compare(left.execute(frame), right.execute(frame));
+        }
+
+        Boolean compare(Object leftValue, Object rightValue) {
+            return isEqual(leftValue, rightValue) != negated;
+        }
+    }
+
+    public static final class And extends Binary {
+        And(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object leftValue = left.execute(frame);
+            if (!isTruthy(leftValue)) {
+                return leftValue;
+            }
+            return right.execute(frame);
+        }
+    }
+
+    public static final class Or extends Binary {
+        Or(Token operator, ExprNode left, ExprNode right) {
+            super(operator, left, right);
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            Object leftValue = left.execute(frame);
+            if (isTruthy(leftValue)) {
+                return leftValue;
+            }
+            return right.execute(frame);
+        }
+    }
+
+    public static final class Get extends ExprNode {
+        ExprNode object;
+        final PropertyCache cache;
+
+        Get(ExprNode object, PropertyCache cache) {
+            this.object = adopt(object);
+            this.cache = cache;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            return cache.get(instance(object.execute(frame)));
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (object == child) object = replacement;
+        }
+    }
+
+    public static final class Set extends ExprNode {
+        ExprNode object;
+        ExprNode value;
+        final PropertyCache cache;
+
+        Set(ExprNode object, ExprNode value, PropertyCache cache) {
+            this.object = adopt(object);
+            this.value = adopt(value);
+            this.cache = cache;
+        }
+
+        @Override
+        public Object execute(Frame frame) {
+            LoxInstance instance = instance(object.execute(frame));
+            Object result = value.execute(frame);
+            cache.set(instance, result);
+            return result;
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (object == child) object = replacement;
+            if (value == child) value = replacement;
+        }
+    }
+
+    static LoxInstance instance(Object object) {
+        if (!(object instanceof LoxInstance instance)) {
+            throw new RuntimeException(String.format("%s is not an instance of a class", object));
+        }
+        return instance;
+    }
+}
@@ -0,0 +1,49 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.core.base.PropertyCache;
+
+public final class InvokeNode extends ExprNode {
+    // `object.name(arguments)`: a method found through the site's PropertyCache is called
+    // with object as the receiver, without creating a bound function.
+
+    final Interpreter interpreter;
+    ExprNode object;
+    final PropertyCache cache;
+    final ExprNode[] arguments;
+
+    InvokeNode(Interpreter interpreter, ExprNode object, PropertyCache cache, ExprNode[] arguments) {
+        this.interpreter = interpreter;
+        this.object = adopt(object);
+        this.cache = cache;
+        this.arguments = adopt(arguments);
+    }
+
+    @Override
+    public Object execute(Frame frame) {
+        LoxInstance instance = ExprNodes.instance(object.execute(frame));
+        LoxFunction method = cache.method(instance);
+        if (method == null) {
+            return CallNode.callValue(interpreter, frame, instance.get(cache.key), arguments);
+        }
+        if (method.arity() != arguments.length) {
+            throw new RuntimeException("Wrong number of arguments");
+        }
+        Frame methodFrame = method.newFrame(instance);
+        for (int i = 0; i < arguments.length; i++) {
+            methodFrame.slots[i] = arguments[i].execute(frame);
+        }
+        return method.execute(interpreter, methodFrame);
+    }
+
+    @Override
+    void replaceChild(ExprNode child, ExprNode replacement) {
+        if (object == child) object = replacement;
+        for (int i = 0; i < arguments.length; i++) {
+            if (arguments[i] == child) arguments[i] = replacement;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package crafting.interpreters.nodes;
+
+public abstract class Node {
+    // Base of the executable tree built by NodeBuilder. Expression nodes may replace
+    // themselves in their parent with a version specialized for the values they have seen,
+    // so every node holding expression children knows how to swap one of them.
+
+    Node parent;
+
+    protected final <T extends ExprNode> T adopt(T child) {
+        if (child != null) {
+            child.parent = this;
+        }
+        return child;
+    }
+
+    protected final ExprNode[] adopt(ExprNode[] children) {
+        for (ExprNode child : children) {
+            adopt(child);
+        }
+        return children;
+    }
+
+    void replaceChild(ExprNode child, ExprNode replacement) {
+        // only reached by nodes without expression children, which are never parents
+        throw new IllegalStateException(getClass().getSimpleName() + " has no expression children");
+    }
+}
@@ -0,0 +1,251 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.base.Environment;
+import crafting.interpreters.core.base.Expr;
+import crafting.interpreters.core.base.Stmt;
+import crafting.interpreters.core.base.Token;
+
+import java.util.List;
+
+public class NodeBuilder implements Expr.Visitor<ExprNode>, Stmt.Visitor<StmtNode> {
+    // Turns a resolved AST into executable nodes. Everything that can be decided statically
+    // (operators, how a variable is reached) picks a node class here; what depends on the
+    // values seen at runtime is left to the nodes, which rewrite themselves.
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+    // function whose body is being built, return nodes store their value in it
+    private NodeFunction.Body function;
+
+    public NodeBuilder(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    public NodeFunction.Body build(List<Stmt> statements) {
+        var script = new NodeFunction.Body(null);
+        function = script;
+        script.statements = buildStatements(statements);
+        return script;
+    }
+
+    private NodeFunction.Body buildFunction(Stmt.Function declaration) {
+        NodeFunction.Body enclosing = function;
+        var body = new NodeFunction.Body(declaration);
+        function = body;
+        StmtNode[] statements = buildStatements(declaration.body);
+        if (declaration.boxedParams.length > 0) {
+            var withPrologue = new StmtNode[statements.length + 1];
+            withPrologue[0] = new StmtNodes.BoxParams(declaration.boxedParams);
+            System.arraycopy(statements, 0, withPrologue, 1, statements.length);
+            statements = withPrologue;
+        }
+        body.statements = statements;
+        function = enclosing;
+        return body;
+    }
+
+    private StmtNode[] buildStatements(List<Stmt> statements) {
+        var nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = statements.get(i).accept(this);
+        }
+        return nodes;
+    }
+
+    private ExprNode[] buildArguments(List<Expr> expressions) {
+        var nodes = new ExprNode[expressions.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = expressions.get(i).accept(this);
+        }
+        return nodes;
+    }
+
+    private ExprNode variable(Token name, int depth, int slot) {
+        if (depth == -1) {
+            return new ExprNodes.GlobalVariable(globals, name.symbol);
+        }
+        if (depth == 0) {
+            return new ExprNodes.LocalVariable(slot);
+        }
+        return new ExprNodes.EnclosingVariable(depth, slot);
+    }
+
+    @Override
+    public StmtNode visitPrint(Stmt.Print stmt) {
+        return new StmtNodes.Print(interpreter, stmt.expression.accept(this));
+    }
+
+    @Override
+    public StmtNode visitExprStmt(Stmt.ExprStmt stmt) {
+        return new StmtNodes.Expression(stmt.expression.accept(this));
+    }
+
+    @Override
+    public StmtNode visitVarDcl(Stmt.VarDcl varDcl) {
+        ExprNode initializer = null;
+        if (varDcl.expressionInitializer != null) {
+            initializer = varDcl.expressionInitializer.accept(this);
+        }
+        return new StmtNodes.VarDcl(globals, varDcl.name, varDcl.slot, varDcl.boxed, initializer);
+    }
+
+    @Override
+    public StmtNode visitBlock(Stmt.Block block) {
+        if (!block.needsFrame) {
+            return new StmtNodes.Sequence(buildStatements(block.statements));
+        }
+        return new StmtNodes.Block(buildStatements(block.statements), block.slotCount);
+    }
+
+    @Override
+    public StmtNode visitIf(Stmt.If ifStmt) {
+        StmtNode elseBranch = null;
+        if (ifStmt.elseBranch != null) {
+            elseBranch = ifStmt.elseBranch.accept(this);
+        }
+        return new StmtNodes.If(ifStmt.condition.accept(this), ifStmt.thenBranch.accept(this), elseBranch);
+    }
+
+    @Override
+    public StmtNode visitWhile(Stmt.While whileStmt) {
+        return new StmtNodes.While(whileStmt.condition.accept(this), whileStmt.statement.accept(this));
+    }
+
+    @Override
+    public StmtNode visitFor(Stmt.For forStmt) {
+        StmtNode initializer = forStmt.initializer == null ? null : forStmt.initializer.accept(this);
+        ExprNode increment = forStmt.increment == null ? null : forStmt.increment.accept(this);
+        return new StmtNodes.For(initializer, forStmt.condition.accept(this), increment,
+                forStmt.body.accept(this), forStmt.needsFrame ? forStmt.slotCount : -1);
+    }
+
+    @Override
+    public StmtNode visitFunction(Stmt.Function function) {
+        return new StmtNodes.Function(globals, function.name, function.slot, function.boxed,
+                buildFunction(function));
+    }
+
+    @Override
+    public StmtNode visitReturn(Stmt.Return ret) {
+        ExprNode value = null;
+        if (ret.value != null) {
+            value = ret.value.accept(this);
+        }
+        return new StmtNodes.Return(value, function);
+    }
+
+    @Override
+    public StmtNode visitClass(Stmt.Class klass) {
+        var methods = new NodeFunction.Body[klass.methods.size()];
+        for (int i = 0; i < methods.length; i++) {
+            methods[i] = buildFunction(klass.methods.get(i));
+        }
+        return new StmtNodes.Class(globals, klass.name, klass.slot, klass.boxed, methods);
+    }
+
+    @Override
+    public ExprNode visitBinary(Expr.Binary expr) {
+        ExprNode left = expr.left.accept(this);
+        ExprNode right = expr.right.accept(this);
+        Token operator = expr.operator;
+        return switch (operator.type) {
+            case PLUS -> new ExprNodes.Add(operator, left, right);
+            case MINUS -> new ExprNodes.Subtract(operator, left, right);
+            case SLASH -> new ExprNodes.Divide(operator, left, right);
+            case STAR -> new ExprNodes.Multiply(operator, left, right);
+            case BANG_EQUAL -> new ExprNodes.UninitializedEqual(operator, left, right, true);
+            case EQUAL_EQUAL -> new ExprNodes.UninitializedEqual(operator, left, right, false);
+            case LESS_EQUAL -> new ExprNodes.LessEqual(operator, left, right);
+            case LESS -> new ExprNodes.Less(operator, left, right);
+            case GREATER -> new ExprNodes.Greater(operator, left, right);
+            case GREATER_EQUAL -> new ExprNodes.GreaterEqual(operator, left, right);
+            default -> throw new RuntimeException(String.format("Unknown operator %s", operator.lexeme));
+        };
+    }
+
+    @Override
+    public ExprNode visitGrouping(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public ExprNode visitUnary(Expr.Unary expr) {
+        ExprNode right = expr.right.accept(this);
+        return switch (expr.operator.type) {
+            case MINUS -> new ExprNodes.Negate(expr.operator, right);
+            case BANG -> new ExprNodes.Not(right);
+            default -> throw new RuntimeException(String.format("Unknown operator %s", expr.operator.lexeme));
+        };
+    }
+
+    @Override
+    public ExprNode visitLiteral(Expr.Literal literal) {
+        if (literal.value instanceof Double number) {
+            return new ExprNodes.DoubleLiteral(number);
+        }
+        return new ExprNodes.Literal(literal.value);
+    }
+
+    @Override
+    public ExprNode visitVariable(Expr.Variable variable) {
+        if (variable.boxed) {
+            return new ExprNodes.CellVariable(variable.depth, variable.slot);
+        }
+        return variable(variable.name, variable.depth, variable.slot);
+    }
+
+    @Override
+    public ExprNode visitAssignment(Expr.Assignment assignment) {
+        ExprNode value = assignment.expression.accept(this);
+        if (assignment.boxed) {
+            return new ExprNodes.CellAssignment(assignment.depth, assignment.slot, value);
+        }
+        if (assignment.depth == -1) {
+            return new ExprNodes.GlobalAssignment(globals, assignment.name.symbol, value);
+        }
+        if (assignment.depth == 0) {
+            return new ExprNodes.LocalAssignment(assignment.slot, value);
+        }
+        return new ExprNodes.EnclosingAssignment(assignment.depth, assignment.slot, value);
+    }
+
+    @Override
+    public ExprNode visitLogical(Expr.Logical logical) {
+        ExprNode left = logical.left.accept(this);
+        ExprNode right = logical.right.accept(this);
+        return switch (logical.operator.type) {
+            case AND -> new ExprNodes.And(logical.operator, left, right);
+            case OR -> new ExprNodes.Or(logical.operator, left, right);
+            default -> throw new RuntimeException(String.format("Unknown operator %s", logical.operator.lexeme));
+        };
+    }
+
+    @Override
+    public ExprNode visitCall(Expr.Call call) {
+        if (call.callee instanceof Expr.Get get) {
+            ExprNode object = get.object.accept(this);
+            return new InvokeNode(interpreter, object, interpreter.propertyCache(get), buildArguments(call.arguments));
+        }
+        ExprNode callee = call.callee.accept(this);
+        return new CallNode.Uninitialized(interpreter, call.paren, callee, buildArguments(call.arguments));
+    }
+
+    @Override
+    public ExprNode visitGet(Expr.Get get) {
+        return new ExprNodes.Get(get.object.accept(this), interpreter.propertyCache(get));
+    }
+
+    @Override
+    public ExprNode visitSet(Expr.Set set) {
+        ExprNode object = set.object.accept(this);
+        ExprNode value = set.value.accept(this);
+        return new ExprNodes.Set(object, value, interpreter.propertyCache(set));
+    }
+
+    @Override
+    public ExprNode visitThis(Expr.This expr) {
+        return variable(expr.keyword, expr.depth, expr.slot);
+    }
+}
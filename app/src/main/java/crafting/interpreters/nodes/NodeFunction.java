@@ -0,0 +1,56 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Interpreter.Completion;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.core.base.Stmt;
+
+public class NodeFunction extends LoxFunction {
+    // A function whose body runs as executable nodes. The body is built once per declaration
+    // and shared by all its closures, so what a node learns in one call is kept for the next.
+    public final Body body;
+    private final Frame closure;
+
+    public NodeFunction(Body body, Frame closure) {
+        super(body.declaration, closure);
+        this.body = body;
+        this.closure = closure;
+    }
+
+    @Override
+    public LoxFunction bind(LoxInstance instance) {
+        var thisFrame = new Frame(closure, 1);
+        thisFrame.slots[0] = instance;
+        return new NodeFunction(body, thisFrame);
+    }
+
+    @Override
+    public Object execute(Interpreter interpreter, Frame frame) {
+        return body.execute(frame);
+    }
+
+    public static final class Body {
+        // null for the top level script
+        public final Stmt.Function declaration;
+        public StmtNode[] statements;
+        // set by a return node right before the RETURN completion reaches execute
+        Object returnValue;
+
+        Body(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        public Object execute(Frame frame) {
+            for (StmtNode statement : statements) {
+                if (statement.execute(frame) == Completion.RETURN) {
+                    Object value = returnValue;
+                    returnValue = null;
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+}
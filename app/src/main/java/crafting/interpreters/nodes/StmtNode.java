@@ -0,0 +1,9 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.Interpreter.Completion;
+import crafting.interpreters.core.base.Frame;
+
+public abstract class StmtNode extends Node {
+
+    public abstract Completion execute(Frame frame);
+}
@@ -0,0 +1,317 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Interpreter.Completion;
+import crafting.interpreters.core.base.Cell;
+import crafting.interpreters.core.base.Environment;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable.LoxClass;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.SymbolMap;
+import crafting.interpreters.core.base.Token;
+
+import static crafting.interpreters.core.Interpreter.isTruthy;
+
+public final class StmtNodes {
+    // Executable statement nodes. Like the Interpreter's statements they complete with
+    // NORMAL or RETURN, the returned value goes to the Body of the enclosing function.
+
+    private StmtNodes() {
+    }
+
+    public static final class Print extends StmtNode {
+        final Interpreter interpreter;
+        ExprNode expression;
+
+        Print(Interpreter interpreter, ExprNode expression) {
+            this.interpreter = interpreter;
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            interpreter.print(expression.execute(frame));
+            return Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (expression == child) expression = replacement;
+        }
+    }
+
+    public static final class Expression extends StmtNode {
+        ExprNode expression;
+
+        Expression(ExprNode expression) {
+            this.expression = adopt(expression);
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            expression.execute(frame);
+            return Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (expression == child) expression = replacement;
+        }
+    }
+
+    abstract static class Declaration extends StmtNode {
+        // globals are defined by the symbol of their name, locals go to the slot the Resolver gave them
+        final Environment globals;
+        final Token name;
+        final int slot;
+        final boolean boxed;
+
+        Declaration(Environment globals, Token name, int slot, boolean boxed) {
+            this.globals = globals;
+            this.name = name;
+            this.slot = slot;
+            this.boxed = boxed;
+        }
+
+        abstract Object value(Frame frame);
+
+        @Override
+        public final Completion execute(Frame frame) {
+            if (boxed) {
+                // the cell goes first, so a function or class can capture itself
+                var cell = new Cell(null);
+                frame.slots[slot] = cell;
+                cell.value = value(frame);
+            } else if (slot == -1) {
+                globals.define(name.symbol, value(frame));
+            } else {
+                frame.slots[slot] = value(frame);
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    public static final class VarDcl extends Declaration {
+        // null when the variable has no initializer
+        ExprNode initializer;
+
+        VarDcl(Environment globals, Token name, int slot, boolean boxed, ExprNode initializer) {
+            super(globals, name, slot, boxed);
+            this.initializer = adopt(initializer);
+        }
+
+        @Override
+        Object value(Frame frame) {
+            return initializer == null ? null : initializer.execute(frame);
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (initializer == child) initializer = replacement;
+        }
+    }
+
+    public static final class Function extends Declaration {
+        final NodeFunction.Body body;
+
+        Function(Environment globals, Token name, int slot, boolean boxed, NodeFunction.Body body) {
+            super(globals, name, slot, boxed);
+            this.body = body;
+        }
+
+        @Override
+        Object value(Frame frame) {
+            return new NodeFunction(body, Frame.capture(frame, body.declaration));
+        }
+    }
+
+    public static final class Class extends Declaration {
+        final NodeFunction.Body[] methods;
+
+        Class(Environment globals, Token name, int slot, boolean boxed, NodeFunction.Body[] methods) {
+            super(globals, name, slot, boxed);
+            this.methods = methods;
+        }
+
+        @Override
+        Object value(Frame frame) {
+            var methodTable = new SymbolMap<LoxFunction>();
+            for (NodeFunction.Body method : methods) {
+                Frame closure = Frame.capture(frame, method.declaration);
+                methodTable.put(method.declaration.name.symbol, new NodeFunction(method, closure));
+            }
+            return new LoxClass(name.lexeme, methodTable);
+        }
+    }
+
+    public static final class BoxParams extends StmtNode {
+        // first statement of a function whose params are captured and assigned by closures
+        final int[] slots;
+
+        BoxParams(int[] slots) {
+            this.slots = slots;
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            frame.box(slots);
+            return Completion.NORMAL;
+        }
+    }
+
+    public static final class Block extends StmtNode {
+        final StmtNode[] statements;
+        final int slotCount;
+
+        Block(StmtNode[] statements, int slotCount) {
+            this.statements = statements;
+            this.slotCount = slotCount;
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            var blockFrame = new Frame(frame, slotCount);
+            for (StmtNode statement : statements) {
+                if (statement.execute(blockFrame) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    public static final class Sequence extends StmtNode {
+        // a block without a frame of its own, see Stmt.Block.needsFrame
+        final StmtNode[] statements;
+
+        Sequence(StmtNode[] statements) {
+            this.statements = statements;
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            for (StmtNode statement : statements) {
+                if (statement.execute(frame) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    public static final class If extends StmtNode {
+        ExprNode condition;
+        final StmtNode thenBranch;
+        // null without an else
+        final StmtNode elseBranch;
+
+        If(ExprNode condition, StmtNode thenBranch, StmtNode elseBranch) {
+            this.condition = adopt(condition);
+            this.thenBranch = thenBranch;
+            this.elseBranch = elseBranch;
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            if (isTruthy(condition.execute(frame))) {
+                return thenBranch.execute(frame);
+            } else if (elseBranch != null) {
+                return elseBranch.execute(frame);
+            }
+            return Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (condition == child) condition = replacement;
+        }
+    }
+
+    public static final class While extends StmtNode {
+        ExprNode condition;
+        final StmtNode body;
+
+        While(ExprNode condition, StmtNode body) {
+            this.condition = adopt(condition);
+            this.body = body;
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            while (isTruthy(condition.execute(frame))) {
+                if (body.execute(frame) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+            }
+            return Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (condition == child) condition = replacement;
+        }
+    }
+
+    public static final class For extends StmtNode {
+        // null when the loop has no initializer or increment
+        final StmtNode initializer;
+        ExprNode condition;
+        ExprNode increment;
+        final StmtNode body;
+        // -1 when the loop runs on the enclosing frame, see Stmt.For.needsFrame
+        final int slotCount;
+
+        For(StmtNode initializer, ExprNode condition, ExprNode increment, StmtNode body, int slotCount) {
+            this.initializer = initializer;
+            this.condition = adopt(condition);
+            this.increment = adopt(increment);
+            this.body = body;
+            this.slotCount = slotCount;
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            var loopFrame = slotCount < 0 ? frame : new Frame(frame, slotCount);
+            if (initializer != null) {
+                initializer.execute(loopFrame);
+            }
+            while (isTruthy(condition.execute(loopFrame))) {
+                if (body.execute(loopFrame) == Completion.RETURN) {
+                    return Completion.RETURN;
+                }
+                if (increment != null) {
+                    increment.execute(loopFrame);
+                }
+            }
+            return Completion.NORMAL;
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (condition == child) condition = replacement;
+            if (increment == child) increment = replacement;
+        }
+    }
+
+    public static final class Return extends StmtNode {
+        // null for `return;`
+        ExprNode value;
+        final NodeFunction.Body function;
+
+        Return(ExprNode value, NodeFunction.Body function) {
+            this.value = adopt(value);
+            this.function = function;
+        }
+
+        @Override
+        public Completion execute(Frame frame) {
+            function.returnValue = value == null ? null : value.execute(frame);
+            return Completion.RETURN;
+        }
+
+        @Override
+        void replaceChild(ExprNode child, ExprNode replacement) {
+            if (value == child) value = replacement;
+        }
+    }
+}
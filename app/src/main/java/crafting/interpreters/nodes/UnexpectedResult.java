@@ -0,0 +1,12 @@
+package crafting.interpreters.nodes;
+
+public final class UnexpectedResult extends Exception {
+    // Thrown by executeDouble when a node produced something else than a double.
+    // The caller gets the value anyway, and usually rewrites itself to a generic node.
+    public final Object result;
+
+    UnexpectedResult(Object result) {
+        super(null, null, false, false);
+        this.result = result;
+    }
+}
@@ -0,0 +1,91 @@
+package crafting.interpreters.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+public class Chunk {
+    // A compiled sequence of instructions with its constant pool and line table.
+
+    public byte[] code = new byte[64];
+    public int count = 0;
+
+    private final List<Object> constants = new ArrayList<>();
+    private final HashMap<Object, Integer> constantIndexes = new HashMap<>();
+    private Object[] constantArray = null;
+
+    // run-length line table: the instruction at lineStarts[i] and the ones after it
+    // (up to lineStarts[i + 1]) come from line lineNumbers[i]
+    private int[] lineStarts = new int[8];
+    private int[] lineNumbers = new int[8];
+    private int lineCount = 0;
+
+    public void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+        }
+        if (lineCount == 0 || lineNumbers[lineCount - 1] != line) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, lineCount * 2);
+            }
+            lineStarts[lineCount] = count;
+            lineNumbers[lineCount] = line;
+            lineCount++;
+        }
+        code[count++] = (byte) b;
+    }
+
+    public void writeShort(int value, int line) {
+        if (value > 0xffff) {
+            throw new RuntimeException("Operand too large: " + value);
+        }
+        write((value >> 8) & 0xff, line);
+        write(value & 0xff, line);
+    }
+
+    public void patchShort(int offset, int value) {
+        if (value > 0xffff) {
+            throw new RuntimeException("Too much code to jump over");
+        }
+        code[offset] = (byte) ((value >> 8) & 0xff);
+        code[offset + 1] = (byte) (value & 0xff);
+    }
+
+    public int addConstant(Object value) {
+        // numbers and strings are de-duplicated, functions are kept by identity
+        Integer index = value instanceof CompiledFunction ? null : constantIndexes.get(value);
+        if (index != null) {
+            return index;
+        }
+        constants.add(value);
+        constantArray = null;
+        index = constants.size() - 1;
+        if (!(value instanceof CompiledFunction)) {
+            constantIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    public Object[] constants() {
+        if (constantArray == null) {
+            constantArray = constants.toArray();
+        }
+        return constantArray;
+    }
+
+    public int getLine(int offset) {
+        int low = 0;
+        int high = lineCount - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (lineStarts[mid] <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return lineCount == 0 ? 0 : lineNumbers[low];
+    }
+}
@@ -0,0 +1,34 @@
+package crafting.interpreters.vm;
+
+import crafting.interpreters.core.base.Stmt;
+
+public class CompiledFunction {
+    // Output of the Compiler for a function body or for the top level script.
+    public final String name;
+    public final int arity;
+    // size of the frame holding params and locals, as computed by the Resolver
+    public final int slotCount;
+    // deepest the value stack gets while running the body
+    public final int maxStack;
+    public final Chunk chunk;
+    public final byte[] code;
+    public final Object[] constants;
+    // null for the top level script
+    public final Stmt.Function declaration;
+
+    public CompiledFunction(String name, int arity, int slotCount, int maxStack, Chunk chunk, Stmt.Function declaration) {
+        this.name = name;
+        this.arity = arity;
+        this.slotCount = slotCount;
+        this.maxStack = maxStack;
+        this.chunk = chunk;
+        this.code = chunk.code;
+        this.constants = chunk.constants();
+        this.declaration = declaration;
+    }
+
+    @Override
+    public String toString() {
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,478 @@
+package crafting.interpreters.vm;
+
+import crafting.interpreters.core.base.Expr;
+import crafting.interpreters.core.base.PropertyCache;
+import crafting.interpreters.core.base.Stmt;
+import crafting.interpreters.core.base.Token;
+import crafting.interpreters.core.base.TokenType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static crafting.interpreters.vm.OpCode.*;
+
+public class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    // Translates a resolved AST into bytecode for the VM.
+    // Locals are addressed with the (depth, slot) pairs computed by the Resolver,
+    // and every block keeps its own frame, the same way the Interpreter does.
+
+    private static final int[] STACK_EFFECT = new int[OpCode.SET_CELL + 1];
+
+    static {
+        for (byte op : new byte[]{CONSTANT, NIL, TRUE, FALSE, GET_GLOBAL, GET_LOCAL, GET_ENCLOSING, CLOSURE,
+                NEW_CELL}) {
+            STACK_EFFECT[op] = 1;
+        }
+        for (byte op : new byte[]{POP, DEFINE_GLOBAL, DEFINE_LOCAL, SET_PROPERTY, EQUAL, NOT_EQUAL, GREATER,
+                GREATER_EQUAL, LESS, LESS_EQUAL, ADD, SUBTRACT, MULTIPLY, DIVIDE, PRINT, RETURN, SET_CELL}) {
+            STACK_EFFECT[op] = -1;
+        }
+        // CALL, INVOKE and CLASS depend on their operand, see visitCall, invoke and visitClass
+    }
+
+    private Chunk chunk;
+    private int line = 1;
+    // value stack depth at the current instruction, and the maximum for the current function
+    private int stackDepth = 0;
+    private int maxStack = 0;
+    // one inline cache per GET_PROPERTY / SET_PROPERTY, stored in the constant table
+    public final List<PropertyCache> propertyCaches = new ArrayList<>();
+
+    public CompiledFunction compile(List<Stmt> statements) {
+        chunk = new Chunk();
+        stackDepth = 0;
+        maxStack = 0;
+        for (Stmt stmt : statements) {
+            stmt.accept(this);
+        }
+        emitOp(NIL);
+        emitOp(RETURN);
+        return new CompiledFunction("script", 0, 0, maxStack, chunk, null);
+    }
+
+    private CompiledFunction compileFunction(Stmt.Function function) {
+        Chunk enclosing = chunk;
+        int enclosingDepth = stackDepth;
+        int enclosingMax = maxStack;
+        chunk = new Chunk();
+        stackDepth = 0;
+        maxStack = 0;
+        line = function.name.line;
+        for (int param : function.boxedParams) {
+            emitOp(BOX_LOCAL);
+            emitShort(param);
+        }
+        for (Stmt stmt : function.body) {
+            stmt.accept(this);
+        }
+        emitOp(NIL);
+        emitOp(RETURN);
+        var compiled = new CompiledFunction(
+                function.name.lexeme,
+                function.params.size(),
+                function.slotCount,
+                maxStack,
+                chunk,
+                function
+        );
+        chunk = enclosing;
+        stackDepth = enclosingDepth;
+        maxStack = enclosingMax;
+        return compiled;
+    }
+
+    private void emit(int b) {
+        chunk.write(b, line);
+    }
+
+    private void emitOp(byte op) {
+        emit(op);
+        adjustStack(STACK_EFFECT[op]);
+    }
+
+    private void adjustStack(int effect) {
+        stackDepth += effect;
+        maxStack = Math.max(maxStack, stackDepth);
+    }
+
+    private void emitShort(int value) {
+        chunk.writeShort(value, line);
+    }
+
+    private void emitConstant(byte op, Object value) {
+        emitOp(op);
+        emitShort(chunk.addConstant(value));
+    }
+
+    private int emitJump(byte op) {
+        // returns the offset of the operand, to be patched once the target is known
+        emitOp(op);
+        emitShort(0);
+        return chunk.count - 2;
+    }
+
+    private void patchJump(int operand) {
+        chunk.patchShort(operand, chunk.count - operand - 2);
+    }
+
+    private void emitLoop(int loopStart) {
+        emitOp(LOOP);
+        emitShort(chunk.count - loopStart + 2);
+    }
+
+    private void compileVariable(Token name, int depth, int slot) {
+        if (depth == -1) {
+            emitConstant(GET_GLOBAL, name.symbol);
+        } else if (depth == 0) {
+            emitOp(GET_LOCAL);
+            emitShort(slot);
+        } else {
+            emitOp(GET_ENCLOSING);
+            emitShort(depth);
+            emitShort(slot);
+        }
+    }
+
+    private void beginDeclaration(int slot, boolean boxed) {
+        // a boxed local gets its cell first, so a function or class can capture itself
+        if (boxed) {
+            emitOp(NEW_CELL);
+            emitShort(slot);
+        }
+    }
+
+    private void endDeclaration(Token name, int slot, boolean boxed) {
+        if (boxed) {
+            emitOp(SET_CELL);
+            emitOp(POP);
+            return;
+        }
+        defineVariable(name, slot);
+    }
+
+    private void defineVariable(Token name, int slot) {
+        if (slot == -1) {
+            emitConstant(DEFINE_GLOBAL, name.symbol);
+            return;
+        }
+        emitOp(DEFINE_LOCAL);
+        emitShort(slot);
+    }
+
+    @Override
+    public Void visitPrint(Stmt.Print stmt) {
+        stmt.expression.accept(this);
+        emitOp(PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitExprStmt(Stmt.ExprStmt exprStmt) {
+        exprStmt.expression.accept(this);
+        emitOp(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitVarDcl(Stmt.VarDcl varDcl) {
+        line = varDcl.name.line;
+        beginDeclaration(varDcl.slot, varDcl.boxed);
+        if (varDcl.expressionInitializer != null) {
+            varDcl.expressionInitializer.accept(this);
+        } else {
+            emitOp(NIL);
+        }
+        endDeclaration(varDcl.name, varDcl.slot, varDcl.boxed);
+        return null;
+    }
+
+    @Override
+    public Void visitBlock(Stmt.Block block) {
+        if (block.needsFrame) {
+            emitOp(PUSH_FRAME);
+            emitShort(block.slotCount);
+        }
+        for (Stmt stmt : block.statements) {
+            stmt.accept(this);
+        }
+        if (block.needsFrame) {
+            emitOp(POP_FRAME);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitIf(Stmt.If ifStmt) {
+        ifStmt.condition.accept(this);
+        int thenJump = emitJump(JUMP_IF_FALSE);
+        emitOp(POP);
+        ifStmt.thenBranch.accept(this);
+        int elseJump = emitJump(JUMP);
+        patchJump(thenJump);
+        // the else path starts with the condition still on the stack
+        adjustStack(1);
+        emitOp(POP);
+        if (ifStmt.elseBranch != null) {
+            ifStmt.elseBranch.accept(this);
+        }
+        patchJump(elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhile(Stmt.While whileStmt) {
+        int loopStart = chunk.count;
+        whileStmt.condition.accept(this);
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        emitOp(POP);
+        whileStmt.statement.accept(this);
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        adjustStack(1);
+        emitOp(POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFor(Stmt.For forStmt) {
+        if (forStmt.needsFrame) {
+            emitOp(PUSH_FRAME);
+            emitShort(forStmt.slotCount);
+        }
+        if (forStmt.initializer != null) {
+            forStmt.initializer.accept(this);
+        }
+        int loopStart = chunk.count;
+        forStmt.condition.accept(this);
+        int exitJump = emitJump(JUMP_IF_FALSE);
+        emitOp(POP);
+        forStmt.body.accept(this);
+        if (forStmt.increment != null) {
+            forStmt.increment.accept(this);
+            emitOp(POP);
+        }
+        emitLoop(loopStart);
+        patchJump(exitJump);
+        adjustStack(1);
+        emitOp(POP);
+        if (forStmt.needsFrame) {
+            emitOp(POP_FRAME);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunction(Stmt.Function function) {
+        CompiledFunction compiled = compileFunction(function);
+        line = function.name.line;
+        beginDeclaration(function.slot, function.boxed);
+        emitConstant(CLOSURE, compiled);
+        endDeclaration(function.name, function.slot, function.boxed);
+        return null;
+    }
+
+    @Override
+    public Void visitReturn(Stmt.Return ret) {
+        line = ret.keyword.line;
+        if (ret.value != null) {
+            ret.value.accept(this);
+        } else {
+            emitOp(NIL);
+        }
+        emitOp(RETURN);
+        return null;
+    }
+
+    @Override
+    public Void visitClass(Stmt.Class klass) {
+        beginDeclaration(klass.slot, klass.boxed);
+        for (Stmt.Function method : klass.methods) {
+            CompiledFunction compiled = compileFunction(method);
+            emitConstant(CLOSURE, compiled);
+        }
+        line = klass.name.line;
+        if (klass.methods.size() > 255) {
+            throw new RuntimeException("Can't have more than 255 methods");
+        }
+        emitConstant(CLASS, klass.name.lexeme);
+        emit(klass.methods.size());
+        // pops the methods and pushes the class
+        adjustStack(1 - klass.methods.size());
+        endDeclaration(klass.name, klass.slot, klass.boxed);
+        return null;
+    }
+
+    @Override
+    public Void visitBinary(Expr.Binary expr) {
+        expr.left.accept(this);
+        expr.right.accept(this);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case PLUS -> emitOp(ADD);
+            case MINUS -> emitOp(SUBTRACT);
+            case SLASH -> emitOp(DIVIDE);
+            case STAR -> emitOp(MULTIPLY);
+            case BANG_EQUAL -> emitOp(NOT_EQUAL);
+            case EQUAL_EQUAL -> emitOp(EQUAL);
+            case LESS_EQUAL -> emitOp(LESS_EQUAL);
+            case LESS -> emitOp(LESS);
+            case GREATER -> emitOp(GREATER);
+            case GREATER_EQUAL -> emitOp(GREATER_EQUAL);
+            default -> throw new RuntimeException(String.format("Unknown operator %s", expr.operator.lexeme));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGrouping(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitUnary(Expr.Unary expr) {
+        expr.right.accept(this);
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case MINUS -> emitOp(NEGATE);
+            case BANG -> emitOp(NOT);
+            default -> throw new RuntimeException(String.format("Unknown operator %s", expr.operator.lexeme));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLiteral(Expr.Literal literal) {
+        if (literal.value == null) {
+            emitOp(NIL);
+        } else if (Boolean.TRUE.equals(literal.value)) {
+            emitOp(TRUE);
+        } else if (Boolean.FALSE.equals(literal.value)) {
+            emitOp(FALSE);
+        } else {
+            emitConstant(CONSTANT, literal.value);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariable(Expr.Variable variable) {
+        line = variable.name.line;
+        compileVariable(variable.name, variable.depth, variable.slot);
+        if (variable.boxed) {
+            emitOp(CELL_VALUE);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignment(Expr.Assignment assignment) {
+        if (assignment.boxed) {
+            compileVariable(assignment.name, assignment.depth, assignment.slot);
+            assignment.expression.accept(this);
+            line = assignment.name.line;
+            emitOp(SET_CELL);
+            return null;
+        }
+        assignment.expression.accept(this);
+        line = assignment.name.line;
+        if (assignment.depth == -1) {
+            emitConstant(SET_GLOBAL, assignment.name.symbol);
+        } else if (assignment.depth == 0) {
+            emitOp(SET_LOCAL);
+            emitShort(assignment.slot);
+        } else {
+            emitOp(SET_ENCLOSING);
+            emitShort(assignment.depth);
+            emitShort(assignment.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogical(Expr.Logical logical) {
+        logical.left.accept(this);
+        if (logical.operator.type == TokenType.AND) {
+            int endJump = emitJump(JUMP_IF_FALSE);
+            emitOp(POP);
+            logical.right.accept(this);
+            patchJump(endJump);
+            return null;
+        }
+        int elseJump = emitJump(JUMP_IF_FALSE);
+        int endJump = emitJump(JUMP);
+        patchJump(elseJump);
+        emitOp(POP);
+        logical.right.accept(this);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitCall(Expr.Call call) {
+        if (call.callee instanceof Expr.Get get) {
+            invoke(call, get);
+            return null;
+        }
+        call.callee.accept(this);
+        for (Expr arg : call.arguments) {
+            arg.accept(this);
+        }
+        line = call.paren.line;
+        if (call.arguments.size() > 255) {
+            throw new RuntimeException("Can't have more than 255 arguments");
+        }
+        emitOp(CALL);
+        emit(call.arguments.size());
+        adjustStack(-call.arguments.size());
+        return null;
+    }
+
+    private void invoke(Expr.Call call, Expr.Get get) {
+        // `object.name(...)` compiles to INVOKE, which calls a method with object as the
+        // receiver without creating a bound function
+        get.object.accept(this);
+        for (Expr arg : call.arguments) {
+            arg.accept(this);
+        }
+        line = call.paren.line;
+        if (call.arguments.size() > 255) {
+            throw new RuntimeException("Can't have more than 255 arguments");
+        }
+        emitConstant(INVOKE, propertyCache(get.name));
+        emit(call.arguments.size());
+        // the receiver is replaced by the result
+        adjustStack(-call.arguments.size());
+    }
+
+    private PropertyCache propertyCache(Token name) {
+        // each site is compiled once, so its cache belongs to the chunk being compiled
+        var cache = new PropertyCache(name);
+        propertyCaches.add(cache);
+        return cache;
+    }
+
+    @Override
+    public Void visitGet(Expr.Get get) {
+        get.object.accept(this);
+        line = get.name.line;
+        emitConstant(GET_PROPERTY, propertyCache(get.name));
+        return null;
+    }
+
+    @Override
+    public Void visitSet(Expr.Set set) {
+        set.object.accept(this);
+        set.value.accept(this);
+        line = set.name.line;
+        emitConstant(SET_PROPERTY, propertyCache(set.name));
+        return null;
+    }
+
+    @Override
+    public Void visitThis(Expr.This expr) {
+        line = expr.keyword.line;
+        compileVariable(expr.keyword, expr.depth, expr.slot);
+        return null;
+    }
+}
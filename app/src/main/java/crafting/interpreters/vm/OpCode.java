@@ -0,0 +1,60 @@
+package crafting.interpreters.vm;
+
+public final class OpCode {
+    // Instruction set of the VM. Operands follow the opcode in the code array,
+    // u8 is a single byte and u16 two bytes, big-endian.
+
+    private OpCode() {
+    }
+
+    public static final byte CONSTANT = 0;       // u16 constant index
+    public static final byte NIL = 1;
+    public static final byte TRUE = 2;
+    public static final byte FALSE = 3;
+    public static final byte POP = 4;
+
+    public static final byte GET_GLOBAL = 5;     // u16 constant, the symbol id of the name
+    public static final byte DEFINE_GLOBAL = 6;  // u16 constant, the symbol id of the name
+    public static final byte SET_GLOBAL = 7;     // u16 constant, the symbol id of the name
+    public static final byte GET_LOCAL = 8;      // u16 slot, current frame
+    public static final byte DEFINE_LOCAL = 9;   // u16 slot, pops the value
+    public static final byte SET_LOCAL = 10;     // u16 slot, keeps the value on the stack
+    public static final byte GET_ENCLOSING = 11; // u16 depth, u16 slot
+    public static final byte SET_ENCLOSING = 12; // u16 depth, u16 slot
+
+    public static final byte GET_PROPERTY = 13;  // u16 PropertyCache constant
+    public static final byte SET_PROPERTY = 14;  // u16 PropertyCache constant
+
+    public static final byte EQUAL = 15;
+    public static final byte NOT_EQUAL = 16;
+    public static final byte GREATER = 17;
+    public static final byte GREATER_EQUAL = 18;
+    public static final byte LESS = 19;
+    public static final byte LESS_EQUAL = 20;
+    public static final byte ADD = 21;
+    public static final byte SUBTRACT = 22;
+    public static final byte MULTIPLY = 23;
+    public static final byte DIVIDE = 24;
+    public static final byte NOT = 25;
+    public static final byte NEGATE = 26;
+
+    public static final byte PRINT = 27;
+    public static final byte JUMP = 28;          // u16 forward offset
+    public static final byte JUMP_IF_FALSE = 29; // u16 forward offset, doesn't pop the condition
+    public static final byte LOOP = 30;          // u16 backward offset
+
+    public static final byte PUSH_FRAME = 31;    // u16 frame size
+    public static final byte POP_FRAME = 32;
+
+    public static final byte CALL = 33;          // u8 argument count
+    public static final byte INVOKE = 34;        // u16 PropertyCache constant, u8 argument count
+    public static final byte CLOSURE = 35;       // u16 function constant
+    public static final byte CLASS = 36;         // u16 name constant, u8 method count
+    public static final byte RETURN = 37;
+
+    // cells of the locals that closures capture and assign, see Stmt.VarDcl.boxed
+    public static final byte NEW_CELL = 38;      // u16 slot, stores a new cell in the slot and pushes it
+    public static final byte BOX_LOCAL = 39;     // u16 slot, replaces the slot's value with a cell holding it
+    public static final byte CELL_VALUE = 40;    // replaces the cell on top of the stack with its value
+    public static final byte SET_CELL = 41;      // pops the value and the cell, stores the value, pushes it
+}
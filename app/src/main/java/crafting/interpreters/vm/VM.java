@@ -0,0 +1,469 @@
+package crafting.interpreters.vm;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.base.Cell;
+import crafting.interpreters.core.base.Environment;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable;
+import crafting.interpreters.core.base.LoxCallable.LoxClass;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+import crafting.interpreters.core.base.PropertyCache;
+import crafting.interpreters.core.base.SymbolMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static crafting.interpreters.core.Interpreter.isEqual;
+import static crafting.interpreters.core.Interpreter.isTruthy;
+
+public class VM {
+    // Stack based virtual machine running the bytecode produced by the Compiler.
+    // Globals, native functions and the print output are shared with the Interpreter.
+
+    private static final int FRAMES_MAX = 1 << 16;
+
+    private static final class CallFrame {
+        CompiledFunction function;
+        int ip;
+        // frame holding the locals of the innermost block being executed
+        Frame frame;
+        // index of the callee in the value stack, the result replaces it
+        int base;
+        // set while running an 'init' method called through its class
+        LoxInstance initializing;
+    }
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+    public boolean hadError;
+
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+    private CallFrame[] frames = new CallFrame[64];
+    private int frameCount = 0;
+
+    public VM(Interpreter interpreter) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    public void interpret(CompiledFunction script) {
+        ensureStack(1 + script.maxStack);
+        stack[sp++] = null;
+        pushCallFrame(script, null, 0, null);
+        run(0);
+    }
+
+    Object callFromHost(CompiledFunction function, Frame frame) {
+        // runs a function whose frame already holds the arguments, until it returns
+        int exitFrameCount = frameCount;
+        ensureStack(sp + 1 + function.maxStack);
+        stack[sp++] = null;
+        pushCallFrame(function, frame, sp - 1, null);
+        return run(exitFrameCount);
+    }
+
+    private Object run(int exitFrameCount) {
+        // the hot state lives in locals, and is written back to the fields
+        // before calling anything that may look at it
+        Object[] stack = this.stack;
+        int sp = this.sp;
+        CallFrame current = frames[frameCount - 1];
+        byte[] code = current.function.code;
+        Object[] constants = current.function.constants;
+        Frame frame = current.frame;
+        int ip = current.ip;
+
+        while (true) {
+            switch (code[ip++]) {
+                case OpCode.CONSTANT -> {
+                    stack[sp++] = constants[readShort(code, ip)];
+                    ip += 2;
+                }
+                case OpCode.NIL -> stack[sp++] = null;
+                case OpCode.TRUE -> stack[sp++] = true;
+                case OpCode.FALSE -> stack[sp++] = false;
+                case OpCode.POP -> sp--;
+                case OpCode.GET_GLOBAL -> {
+                    stack[sp++] = globals.readVariableValue((Integer) constants[readShort(code, ip)]);
+                    ip += 2;
+                }
+                case OpCode.DEFINE_GLOBAL -> {
+                    globals.define((Integer) constants[readShort(code, ip)], stack[--sp]);
+                    ip += 2;
+                }
+                case OpCode.SET_GLOBAL -> {
+                    globals.assign((Integer) constants[readShort(code, ip)], stack[sp - 1]);
+                    ip += 2;
+                }
+                case OpCode.GET_LOCAL -> {
+                    stack[sp++] = frame.slots[readShort(code, ip)];
+                    ip += 2;
+                }
+                case OpCode.DEFINE_LOCAL -> {
+                    frame.slots[readShort(code, ip)] = stack[--sp];
+                    ip += 2;
+                }
+                case OpCode.SET_LOCAL -> {
+                    frame.slots[readShort(code, ip)] = stack[sp - 1];
+                    ip += 2;
+                }
+                case OpCode.GET_ENCLOSING -> {
+                    stack[sp++] = frame.getAt(readShort(code, ip), readShort(code, ip + 2));
+                    ip += 4;
+                }
+                case OpCode.SET_ENCLOSING -> {
+                    frame.assignAt(readShort(code, ip), readShort(code, ip + 2), stack[sp - 1]);
+                    ip += 4;
+                }
+                case OpCode.GET_PROPERTY -> {
+                    Object instance = stack[sp - 1];
+                    checkIsInstance(instance);
+                    stack[sp - 1] = ((PropertyCache) constants[readShort(code, ip)]).get((LoxInstance) instance);
+                    ip += 2;
+                }
+                case OpCode.SET_PROPERTY -> {
+                    Object value = stack[--sp];
+                    Object instance = stack[sp - 1];
+                    checkIsInstance(instance);
+                    ((PropertyCache) constants[readShort(code, ip)]).set((LoxInstance) instance, value);
+                    stack[sp - 1] = value;
+                    ip += 2;
+                }
+                case OpCode.EQUAL -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = isEqual(stack[sp - 1], right);
+                }
+                case OpCode.NOT_EQUAL -> {
+                    Object right = stack[--sp];
+                    stack[sp - 1] = !isEqual(stack[sp - 1], right);
+                }
+                case OpCode.GREATER -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumbers(left, right, current, ip);
+                    stack[sp - 1] = (Double) left > (Double) right;
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumbers(left, right, current, ip);
+                    stack[sp - 1] = (Double) left >= (Double) right;
+                }
+                case OpCode.LESS -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumbers(left, right, current, ip);
+                    stack[sp - 1] = (Double) left < (Double) right;
+                }
+                case OpCode.LESS_EQUAL -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumbers(left, right, current, ip);
+                    stack[sp - 1] = (Double) left <= (Double) right;
+                }
+                case OpCode.ADD -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumbers(left, right, current, ip);
+                    stack[sp - 1] = (Double) left + (Double) right;
+                }
+                case OpCode.SUBTRACT -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumbers(left, right, current, ip);
+                    stack[sp - 1] = (Double) left - (Double) right;
+                }
+                case OpCode.MULTIPLY -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumbers(left, right, current, ip);
+                    stack[sp - 1] = (Double) left * (Double) right;
+                }
+                case OpCode.DIVIDE -> {
+                    Object right = stack[--sp];
+                    Object left = stack[sp - 1];
+                    checkNumbers(left, right, current, ip);
+                    stack[sp - 1] = (Double) left / (Double) right;
+                }
+                case OpCode.NOT -> stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                case OpCode.NEGATE -> {
+                    Object value = stack[sp - 1];
+                    checkNumber(value, current, ip);
+                    stack[sp - 1] = -(Double) value;
+                }
+                case OpCode.PRINT -> interpreter.print(stack[--sp]);
+                case OpCode.JUMP -> ip += readShort(code, ip) + 2;
+                case OpCode.JUMP_IF_FALSE -> {
+                    if (isTruthy(stack[sp - 1])) {
+                        ip += 2;
+                    } else {
+                        ip += readShort(code, ip) + 2;
+                    }
+                }
+                case OpCode.LOOP -> ip -= readShort(code, ip) - 2;
+                case OpCode.PUSH_FRAME -> {
+                    frame = new Frame(frame, readShort(code, ip));
+                    ip += 2;
+                }
+                case OpCode.POP_FRAME -> frame = frame.enclosing;
+                case OpCode.CALL -> {
+                    int argc = code[ip++] & 0xff;
+                    Object callee = stack[sp - 1 - argc];
+                    current.ip = ip;
+                    current.frame = frame;
+                    if (callee instanceof VmClosure closure) {
+                        // fast path, everything stays in locals
+                        CompiledFunction function = closure.function;
+                        if (function.arity != argc) {
+                            throw new RuntimeException("Wrong number of arguments");
+                        }
+                        frame = new Frame(closure.closure, function.slotCount);
+                        System.arraycopy(stack, sp - argc, frame.slots, 0, argc);
+                        sp -= argc;
+                        current = pushCallFrame(function, frame, sp - 1, null);
+                        if (sp + function.maxStack > stack.length) {
+                            this.sp = sp;
+                            ensureStack(sp + function.maxStack);
+                            stack = this.stack;
+                        }
+                        code = function.code;
+                        constants = function.constants;
+                        ip = 0;
+                        continue;
+                    }
+                    this.sp = sp;
+                    callValue(callee, argc);
+                    stack = this.stack;
+                    sp = this.sp;
+                    current = frames[frameCount - 1];
+                    code = current.function.code;
+                    constants = current.function.constants;
+                    frame = current.frame;
+                    ip = current.ip;
+                }
+                case OpCode.INVOKE -> {
+                    var cache = (PropertyCache) constants[readShort(code, ip)];
+                    int argc = code[ip + 2] & 0xff;
+                    ip += 3;
+                    Object receiver = stack[sp - 1 - argc];
+                    checkIsInstance(receiver);
+                    var instance = (LoxInstance) receiver;
+                    LoxFunction method = cache.method(instance);
+                    current.ip = ip;
+                    current.frame = frame;
+                    if (method instanceof VmClosure closure) {
+                        // same as the CALL fast path, with the receiver in the 'this' frame
+                        CompiledFunction function = closure.function;
+                        if (function.arity != argc) {
+                            throw new RuntimeException("Wrong number of arguments");
+                        }
+                        var thisFrame = new Frame(closure.closure, 1);
+                        thisFrame.slots[0] = instance;
+                        frame = new Frame(thisFrame, function.slotCount);
+                        System.arraycopy(stack, sp - argc, frame.slots, 0, argc);
+                        sp -= argc;
+                        current = pushCallFrame(function, frame, sp - 1, null);
+                        if (sp + function.maxStack > stack.length) {
+                            this.sp = sp;
+                            ensureStack(sp + function.maxStack);
+                            stack = this.stack;
+                        }
+                        code = function.code;
+                        constants = function.constants;
+                        ip = 0;
+                        continue;
+                    }
+                    // a field holding something callable
+                    Object callee = instance.get(cache.key);
+                    stack[sp - 1 - argc] = callee;
+                    this.sp = sp;
+                    callValue(callee, argc);
+                    stack = this.stack;
+                    sp = this.sp;
+                    current = frames[frameCount - 1];
+                    code = current.function.code;
+                    constants = current.function.constants;
+                    frame = current.frame;
+                    ip = current.ip;
+                }
+                case OpCode.CLOSURE -> {
+                    var function = (CompiledFunction) constants[readShort(code, ip)];
+                    stack[sp++] = new VmClosure(this, function, Frame.capture(frame, function.declaration));
+                    ip += 2;
+                }
+                case OpCode.CLASS -> {
+                    String name = (String) constants[readShort(code, ip)];
+                    int methodCount = code[ip + 2] & 0xff;
+                    ip += 3;
+                    var methods = new SymbolMap<LoxFunction>();
+                    for (int i = sp - methodCount; i < sp; i++) {
+                        VmClosure method = (VmClosure) stack[i];
+                        methods.put(method.function.declaration.name.symbol, method);
+                    }
+                    sp -= methodCount;
+                    stack[sp++] = new LoxClass(name, methods);
+                }
+                case OpCode.NEW_CELL -> {
+                    var cell = new Cell(null);
+                    frame.slots[readShort(code, ip)] = cell;
+                    stack[sp++] = cell;
+                    ip += 2;
+                }
+                case OpCode.BOX_LOCAL -> {
+                    int slot = readShort(code, ip);
+                    frame.slots[slot] = new Cell(frame.slots[slot]);
+                    ip += 2;
+                }
+                case OpCode.CELL_VALUE -> stack[sp - 1] = ((Cell) stack[sp - 1]).value;
+                case OpCode.SET_CELL -> {
+                    Object value = stack[--sp];
+                    ((Cell) stack[sp - 1]).value = value;
+                    stack[sp - 1] = value;
+                }
+                case OpCode.RETURN -> {
+                    Object result = stack[--sp];
+                    if (current.initializing != null) {
+                        if (result != null) {
+                            throw new RuntimeException("init should return nil");
+                        }
+                        result = current.initializing;
+                    }
+                    sp = current.base;
+                    current.function = null;
+                    current.frame = null;
+                    current.initializing = null;
+                    frameCount--;
+                    if (frameCount == exitFrameCount) {
+                        this.sp = sp;
+                        return result;
+                    }
+                    stack[sp++] = result;
+                    current = frames[frameCount - 1];
+                    code = current.function.code;
+                    constants = current.function.constants;
+                    frame = current.frame;
+                    ip = current.ip;
+                }
+                default -> throw new RuntimeException("Unknown opcode " + code[ip - 1]);
+            }
+        }
+    }
+
+    private void callValue(Object callee, int argc) {
+        if (callee instanceof VmClosure closure) {
+            if (closure.function.arity != argc) {
+                throw new RuntimeException("Wrong number of arguments");
+            }
+            callClosure(closure, argc, null);
+        } else if (callee instanceof LoxClass klass) {
+            callClass(klass, argc);
+        } else if (callee instanceof LoxCallable function) {
+            callNative(function, argc);
+        } else {
+            throw new RuntimeException(String.format("%s is not callable", callee));
+        }
+    }
+
+    private void callClosure(VmClosure closure, int argc, LoxInstance initializing) {
+        var frame = new Frame(closure.closure, closure.function.slotCount);
+        System.arraycopy(stack, sp - argc, frame.slots, 0, argc);
+        sp -= argc;
+        pushCallFrame(closure.function, frame, sp - 1, initializing);
+        ensureStack(sp + closure.function.maxStack);
+    }
+
+    private void callClass(LoxClass klass, int argc) {
+        if (klass.arity() != argc) {
+            throw new RuntimeException("Wrong number of arguments");
+        }
+        var instance = new LoxInstance(klass);
+        LoxFunction init = instance.getInit();
+        if (init instanceof VmClosure closure) {
+            callClosure(closure, argc, instance);
+            return;
+        }
+        sp -= argc;
+        stack[sp - 1] = instance;
+    }
+
+    private void callNative(LoxCallable function, int argc) {
+        if (function.arity() != argc) {
+            throw new RuntimeException("Wrong number of arguments");
+        }
+        int first = sp - argc;
+        Object result = switch (argc) {
+            case 0 -> function.call0(interpreter);
+            case 1 -> function.call1(interpreter, stack[first]);
+            case 2 -> function.call2(interpreter, stack[first], stack[first + 1]);
+            case 3 -> function.call3(interpreter, stack[first], stack[first + 1], stack[first + 2]);
+            case 4 -> function.call4(interpreter, stack[first], stack[first + 1], stack[first + 2], stack[first + 3]);
+            default -> function.call(interpreter, new ArrayList<>(Arrays.asList(stack).subList(first, sp)));
+        };
+        sp -= argc;
+        stack[sp - 1] = result;
+    }
+
+    private CallFrame pushCallFrame(CompiledFunction function, Frame frame, int base, LoxInstance initializing) {
+        // args were already copied into the frame, only the callee's slot stays on the stack
+        if (frameCount == frames.length) {
+            if (frameCount == FRAMES_MAX) {
+                throw new RuntimeException("Stack overflow");
+            }
+            frames = Arrays.copyOf(frames, frameCount * 2);
+        }
+        CallFrame callFrame = frames[frameCount];
+        if (callFrame == null) {
+            callFrame = new CallFrame();
+            frames[frameCount] = callFrame;
+        }
+        callFrame.function = function;
+        callFrame.ip = 0;
+        callFrame.frame = frame;
+        callFrame.base = base;
+        callFrame.initializing = initializing;
+        frameCount++;
+        return callFrame;
+    }
+
+    private void ensureStack(int size) {
+        if (size > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(size, stack.length * 2));
+        }
+    }
+
+    private static int readShort(byte[] code, int ip) {
+        return ((code[ip] & 0xff) << 8) | (code[ip + 1] & 0xff);
+    }
+
+    private void checkNumbers(Object left, Object right, CallFrame current, int ip) {
+        if (left instanceof Double && right instanceof Double) {
+            return;
+        }
+        String msg = "Number was expected";
+        error(current.function.chunk.getLine(ip - 1), msg);
+        throw new RuntimeException(msg);
+    }
+
+    private void checkNumber(Object operand, CallFrame current, int ip) {
+        if (operand instanceof Double) {
+            return;
+        }
+        String msg = "Number was expected";
+        error(current.function.chunk.getLine(ip - 1), msg);
+        throw new RuntimeException(msg);
+    }
+
+    private void checkIsInstance(Object instance) {
+        if (!(instance instanceof LoxInstance)) {
+            throw new RuntimeException(String.format("%s is not an instance of a class", instance));
+        }
+    }
+
+    void error(int line, String message) {
+        System.out.printf("Error in line %d. Error: %s", line, message);
+        hadError = true;
+    }
+}
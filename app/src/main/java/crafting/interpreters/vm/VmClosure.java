@@ -0,0 +1,45 @@
+package crafting.interpreters.vm;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.base.Frame;
+import crafting.interpreters.core.base.LoxCallable.LoxFunction;
+import crafting.interpreters.core.base.LoxCallable.LoxInstance;
+
+public class VmClosure extends LoxFunction {
+    // A compiled function together with the frame it was declared in.
+    // It extends LoxFunction so LoxClass and LoxInstance can hold and bind it as a method.
+    public final CompiledFunction function;
+    public final Frame closure;
+    private final VM vm;
+
+    public VmClosure(VM vm, CompiledFunction function, Frame closure) {
+        super(function.declaration, closure);
+        this.vm = vm;
+        this.function = function;
+        this.closure = closure;
+    }
+
+    @Override
+    public LoxFunction bind(LoxInstance instance) {
+        var thisFrame = new Frame(closure, 1);
+        thisFrame.slots[0] = instance;
+        return new VmClosure(vm, function, thisFrame);
+    }
+
+    @Override
+    public int arity() {
+        return function.arity;
+    }
+
+    @Override
+    public Object execute(Interpreter interpreter, Frame frame) {
+        // only used when the closure is called from outside the VM's dispatch loop,
+        // the call entry points of LoxFunction fill the frame and end up here
+        return vm.callFromHost(function, frame);
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
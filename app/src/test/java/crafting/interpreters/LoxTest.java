@@ -190,6 +190,119 @@ public class LoxTest {
         assertEquals("Hello world", actual);
     }
 
+    @Test
+    void closureKeepsDefiningScope() {
+        String src = """
+                fun makeCounter() {
+                    var count = 0;
+                    fun inc() {
+                        count = count + 1;
+                        return count;
+                    }
+                    return inc;
+                }
+                var counter = makeCounter();
+                counter();
+                print counter();
+                """;
+
+        var actual = runAndCapture(src);
+        assertEquals(2., (Double) actual);
+    }
+
+    @Test
+    void closuresShareAssignedVariables() {
+        String src = """
+                fun pair() {
+                    var count = 0;
+                    fun inc() { count = count + 1; }
+                    fun get() { return count; }
+                    inc();
+                    inc();
+                    count = count + 10;
+                    return get;
+                }
+                print pair()();
+                """;
+
+        var actual = runAndCapture(src);
+        assertEquals(12., (Double) actual);
+    }
+
+    @Test
+    void nestedClosureCapturesThroughEnclosingFunction() {
+        String src = """
+                fun outer(x) {
+                    fun middle() {
+                        fun inner() {
+                            x = x * 2;
+                            return x;
+                        }
+                        return inner;
+                    }
+                    return middle();
+                }
+                var f = outer(3);
+                f();
+                print f();
+                """;
+
+        var actual = runAndCapture(src);
+        assertEquals(12., (Double) actual);
+    }
+
+    @Test
+    void localFunctionAndClassCaptureThemselves() {
+        String src = """
+                fun run() {
+                    fun countdown(n) {
+                        if (n == 0) return 0;
+                        return 1 + countdown(n - 1);
+                    }
+                    class Node {
+                        init(n) { this.n = n; }
+                        next() { return Node(this.n + 1); }
+                    }
+                    return countdown(5) + Node(1).next().next().n;
+                }
+                print run();
+                """;
+
+        var actual = runAndCapture(src);
+        assertEquals(8., (Double) actual);
+    }
+
+    @Test
+    void closureCapturesShadowingVariable() {
+        String src = """
+                fun make() {
+                    var a = 1;
+                    var a = 2;
+                    fun get() { return a; }
+                    a = a + 10;
+                    return get;
+                }
+                print make()();
+                """;
+
+        var actual = runAndCapture(src);
+        assertEquals(12., (Double) actual);
+    }
+
+    @Test
+    void recursion() {
+        String src = """
+                fun fib(n) {
+                    if (n < 2) return n;
+                    return fib(n - 1) + fib(n - 2);
+                }
+                print fib(10);
+                """;
+
+        var actual = runAndCapture(src);
+        assertEquals(55., (Double) actual);
+    }
+
     @Test
     void closure() {
         String src = """
@@ -332,6 +445,62 @@ public class LoxTest {
         assertEquals(300., (Double) actual);
     }
 
+    @Test
+    void forBodyVariablesAndReturn() {
+        String source = """
+                    fun find(n) {
+                        for (var i = 0; ; i = i + 1) {
+                            var i2 = i * i;
+                            var i = i2;
+                            if (i >= n) return i;
+                        }
+                    }
+                    print find(50);
+                """;
+        var actual = runAndCapture(source);
+        assertEquals(64., (Double) actual);
+    }
+
+    @Test
+    void forBodyClosuresKeepTheirIteration() {
+        String source = """
+                    var first;
+                    var sum = 0;
+                    for (var i = 0; i < 3; i = i + 1) {
+                        var j = i * 10;
+                        fun f() {
+                            return j;
+                        }
+                        if (first == nil) first = f;
+                        sum = sum + f();
+                    }
+                    print first() + sum;
+                """;
+        var actual = runAndCapture(source);
+        assertEquals(30., (Double) actual);
+    }
+
+    @Test
+    void blockVariablesStartEmptyInReusedSlots() {
+        String source = """
+                    fun f() {
+                        var sum = 0;
+                        { var a = 5; sum = sum + a; }
+                        var i = 0;
+                        while (i < 3) {
+                            var b;
+                            if (b == nil) b = 1;
+                            sum = sum + b;
+                            i = i + 1;
+                        }
+                        return sum;
+                    }
+                    print f();
+                """;
+        var actual = runAndCapture(source);
+        assertEquals(8., (Double) actual);
+    }
+
     @Test
     void whileTest() {
         String source = """
@@ -482,6 +651,99 @@ public class LoxTest {
         assertEquals(15., (Double) actual);
     }
 
+    @Test
+    void methodCallUsesReceiver() {
+        String source = """
+                class Counter {
+                    init() { this.n = 0; }
+                    add(k) { this.n = this.n + k; return this; }
+                }
+                print Counter().add(1).add(2).add(3).n;
+                """;
+        assertEquals(6., runAndCapture(source));
+    }
+
+    @Test
+    void fieldHoldingFunctionIsCalled() {
+        String source = """
+                class Box {}
+                fun twice(x) { return 2 * x; }
+                var box = Box();
+                box.f = twice;
+                print box.f(21);
+                """;
+        assertEquals(42., runAndCapture(source));
+    }
+
+    @Test
+    void boundMethodKeepsReceiver() {
+        String source = """
+                class A {
+                    init(v) { this.v = v; }
+                    get() { return this.v; }
+                }
+                var get = A(7).get;
+                print get();
+                """;
+        assertEquals(7., runAndCapture(source));
+    }
+
+    @Test
+    void methodCallChecksArity() {
+        String source = """
+                class A { m(x) { return x; } }
+                A().m(1, 2);
+                """;
+        assertThrows(RuntimeException.class, () -> runAndCapture(source));
+    }
+
+    @Test
+    void returnFromNestedLoop() {
+        String source = """
+                fun find(limit) {
+                    var i = 0;
+                    while (true) {
+                        {
+                            if (i * i > limit) {
+                                return i;
+                            }
+                        }
+                        i = i + 1;
+                    }
+                }
+                print find(50) + find(3);
+                """;
+        assertEquals(10., runAndCapture(source));
+    }
+
+    @Test
+    void returnWithoutValueIsNil() {
+        String source = """
+                fun f() {
+                    return;
+                    print 1;
+                }
+                print f();
+                """;
+        assertNull(runAndCapture(source));
+    }
+
+    @Test
+    void arithmeticChain() {
+        String source = """
+                var a = 3;
+                var b = 4;
+                print -(a * a + b * b) / (2 - -3) + (a - b) * 2 <= -7;
+                """;
+        assertEquals(true, runAndCapture(source));
+    }
+
+    @Test
+    void nonNumberInsideArithmeticChain() {
+        assertThrows(RuntimeException.class, () -> runAndCapture("print 1 + 2 * (3 - nil);"));
+        assertThrows(RuntimeException.class, () -> runAndCapture("print -\"a\" < 1;"));
+    }
+
     Object runAndCapture(String source) {
         var cp = new CapturePrint();
         new Lox().run(source, cp);
@@ -0,0 +1,55 @@
+package crafting.interpreters;
+
+import crafting.interpreters.core.Interpreter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WorkloadRunnerTest {
+
+    @Test
+    void allWorkloadsExist() throws IOException {
+        for (String name : WorkloadRunner.WORKLOADS) {
+            assertFalse(WorkloadRunner.loadWorkload(name).isBlank(), name);
+        }
+    }
+
+    @Test
+    void runRecordsEveryIteration() {
+        var result = WorkloadRunner.run("small", "print 1 + 2;", Interpreter.Engine.TREE_WALKER, 3);
+        assertEquals(3., result.output());
+        assertEquals(3, result.nanos().length);
+        assertEquals(3, result.allocatedBytes().length);
+    }
+
+    @Test
+    void jsonReport() {
+        var result = new WorkloadRunner.Result("fib", 55.0, new long[]{2_000_000, 1_000_000}, new long[]{10, 20});
+        String json = WorkloadRunner.toJson(Interpreter.Engine.VM, 2, List.of(result));
+        assertTrue(json.contains("\"engine\": \"VM\""));
+        assertTrue(json.contains("\"name\": \"fib\""));
+        assertTrue(json.contains("\"timesMs\": [2.000, 1.000]"));
+        assertTrue(json.contains("\"allocatedBytes\": [10, 20]"));
+    }
+
+    @Test
+    void jsonEscapesOutput() {
+        var result = new WorkloadRunner.Result("strings", "say \"hi\"\\\n", new long[]{1}, new long[]{1});
+        String json = WorkloadRunner.toJson(Interpreter.Engine.VM, 1, List.of(result));
+        assertTrue(json.contains("\"output\": \"say \\\"hi\\\"\\\\\\n\","));
+    }
+
+    @Test
+    void engineNames() {
+        assertEquals(Interpreter.Engine.TREE_WALKER, Interpreter.Engine.parse("tree-walker"));
+        assertEquals(Interpreter.Engine.HANDLES, Interpreter.Engine.parse("Handles"));
+    }
+
+    @Test
+    void rejectsNoIterations() {
+        assertThrows(IllegalArgumentException.class, () -> WorkloadRunner.main(new String[]{"--iterations", "0"}));
+    }
+}
@@ -0,0 +1,44 @@
+package crafting.interpreters.closures;
+
+import crafting.interpreters.core.Interpreter;
+import org.junit.jupiter.api.Test;
+
+import static crafting.interpreters.utils.TestUtil.parseAndResolve;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClosureCompilerTest {
+
+    Object run(String source) {
+        var stmts = parseAndResolve(source);
+        var cp = new Interpreter.CapturePrint();
+        new ClosureCompiler(new Interpreter(stmts, cp)).compile(stmts).execute(null);
+        return cp.capturedValue;
+    }
+
+    @Test
+    void closuresShareTheCompiledBody() {
+        assertEquals(13., run("""
+                fun adder(n) {
+                    fun add(x) { return x + n; }
+                    return add;
+                }
+                var one = adder(1);
+                var ten = adder(10);
+                print one(2) + ten(0);
+                """));
+    }
+
+    @Test
+    void callsWithManyArguments() {
+        assertEquals(15., run("""
+                fun sum(a, b, c, d, e) { return a + b + c + d + e; }
+                print sum(1, 2, 3, 4, 5);
+                """));
+    }
+
+    @Test
+    void nestedArithmeticChecksNumbers() {
+        assertEquals(-4., run("print -(1 + 2 * (3 - 1.5));"));
+        assertThrows(RuntimeException.class, () -> run("print 1 + 2 * (3 - \"a\");"));
+    }
+}
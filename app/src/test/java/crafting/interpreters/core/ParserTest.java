@@ -507,14 +507,12 @@ public class ParserTest {
                 new Expr.Literal(10.),
                 getToken(LESS)
         );
-        var increment = new Stmt.ExprStmt(
-                new Expr.Assignment(
-                        getToken(IDENTIFIER, "i"),
-                        new Expr.Binary(
-                                new Expr.Variable(getToken(IDENTIFIER, "i")),
-                                new Expr.Literal(1.),
-                                getToken(PLUS)
-                        )
+        var increment = new Expr.Assignment(
+                getToken(IDENTIFIER, "i"),
+                new Expr.Binary(
+                        new Expr.Variable(getToken(IDENTIFIER, "i")),
+                        new Expr.Literal(1.),
+                        getToken(PLUS)
                 )
         );
         var body = new Stmt.Block(
@@ -525,20 +523,7 @@ public class ParserTest {
                 )
                 )
         );
-        var bodyWithInc = new Stmt.Block(
-                new ArrayList<>(Arrays.asList(
-                        body,
-                        increment
-
-                ))
-        );
-        Stmt expected2 = new Stmt.While(condition, bodyWithInc);
-        Stmt.Block expected = new Stmt.Block(
-                new ArrayList<>(Arrays.asList(
-                        expected1,
-                        expected2
-                ))
-        );
+        Stmt expected = new Stmt.For(expected1, condition, increment, body);
         var parser = new Parser(tokens);
         var actual = parser.parse();
 
@@ -1069,6 +1054,32 @@ public class ParserTest {
         );
     }
 
+    @Test
+    void parseFromScanner() {
+        var parser = new Parser(new Scanner("var a = 1;\nfun f() { return a; }\nprint f();"));
+        var actual = parser.parse();
+        assertEquals(3, actual.size());
+        var function = (Stmt.Function) actual.get(1);
+        var ret = (Stmt.Return) function.body.get(0);
+        assertEquals(2, ret.keyword.line);
+        assertEquals("a", ((Expr.Variable) ret.value).name.lexeme);
+        assertInstanceOf(Stmt.Print.class, actual.get(2));
+    }
+
+    @Test
+    void parseMoreTokensThanTheBufferHolds() {
+        var source = "var a = 0;\n" + "a = a + 1;\n".repeat(100) + "print a;";
+        var actual = new Parser(new Scanner(source)).parse();
+        assertEquals(102, actual.size());
+        var last = (Stmt.Print) actual.get(101);
+        assertEquals(102, ((Expr.Variable) last.expression).name.line);
+    }
+
+    @Test
+    void parseBlankSource() {
+        assertEquals(0, new Parser(new Scanner(" // nothing here\n")).parse().size());
+    }
+
     List<Stmt> parseAndAssertSize(List<Token> tokens, int expectedSize) {
         var parser = new Parser(tokens);
         var actual = parser.parse();
@@ -0,0 +1,185 @@
+package crafting.interpreters.core;
+
+import crafting.interpreters.core.base.Expr;
+import crafting.interpreters.core.base.Stmt;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ResolverTest {
+
+    List<Stmt> resolve(String source) {
+        var stmts = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(stmts);
+        return stmts;
+    }
+
+    @Test
+    void globalIsNotResolved() {
+        var stmts = resolve("var a = 1; print a;");
+        var variable = (Expr.Variable) ((Stmt.Print) stmts.get(1)).expression;
+        assertEquals(-1, variable.depth);
+        assertEquals(-1, variable.slot);
+    }
+
+    @Test
+    void localInSameBlock() {
+        var stmts = resolve("{ var a = 1; var b = 2; print b; }");
+        var block = (Stmt.Block) stmts.get(0);
+        var variable = (Expr.Variable) ((Stmt.Print) block.statements.get(2)).expression;
+        assertEquals(0, variable.depth);
+        assertEquals(1, variable.slot);
+    }
+
+    @Test
+    void localInEnclosingBlock() {
+        // the inner block declares a function, so it keeps a frame of its own
+        var stmts = resolve("{ var a = 1; { var b = 2; a = b; fun f() {} } }");
+        var outer = (Stmt.Block) stmts.get(0);
+        var inner = (Stmt.Block) outer.statements.get(1);
+        var assignment = (Expr.Assignment) ((Stmt.ExprStmt) inner.statements.get(1)).expression;
+        assertEquals(1, assignment.depth);
+        assertEquals(0, assignment.slot);
+        var variable = (Expr.Variable) assignment.expression;
+        assertEquals(0, variable.depth);
+        assertEquals(0, variable.slot);
+    }
+
+    @Test
+    void shadowingTakesNewSlot() {
+        var stmts = resolve("{ var a = 1; var a = 2; print a; }");
+        var block = (Stmt.Block) stmts.get(0);
+        var variable = (Expr.Variable) ((Stmt.Print) block.statements.get(2)).expression;
+        assertEquals(0, variable.depth);
+        assertEquals(1, variable.slot);
+    }
+
+    @Test
+    void functionParams() {
+        var stmts = resolve("fun f(a, b) { print b; }");
+        var function = (Stmt.Function) stmts.get(0);
+        var variable = (Expr.Variable) ((Stmt.Print) function.body.get(0)).expression;
+        assertEquals(0, variable.depth);
+        assertEquals(1, variable.slot);
+    }
+
+    @Test
+    void thisInMethod() {
+        var stmts = resolve("class Foo { p() { print this; } }");
+        var method = ((Stmt.Class) stmts.get(0)).methods.get(0);
+        var expr = (Expr.This) ((Stmt.Print) method.body.get(0)).expression;
+        assertEquals(1, expr.depth);
+        assertEquals(0, expr.slot);
+    }
+
+    @Test
+    void closureCapturesOnlyUsedVariables() {
+        var stmts = resolve("fun f(a, b) { { var c; fun g() { print b; print c; print b; } } }");
+        var f = (Stmt.Function) stmts.get(0);
+        var block = (Stmt.Block) f.body.get(0);
+        var g = (Stmt.Function) block.statements.get(1);
+        assertArrayEquals(new int[]{1, 0}, g.captureDepths);
+        assertArrayEquals(new int[]{1, 0}, g.captureSlots);
+        var b = (Expr.Variable) ((Stmt.Print) g.body.get(2)).expression;
+        assertEquals(1, b.depth);
+        assertEquals(0, b.slot);
+        assertFalse(b.boxed);
+        assertEquals(0, f.captureSlots.length);
+    }
+
+    @Test
+    void capturedAndAssignedVariableIsBoxed() {
+        var stmts = resolve("fun f(a) { var b = 1; var c = 2; fun g() { a = b; return c; } }");
+        var f = (Stmt.Function) stmts.get(0);
+        assertArrayEquals(new int[]{0}, f.boxedParams);
+        assertFalse(((Stmt.VarDcl) f.body.get(0)).boxed);
+        assertFalse(((Stmt.VarDcl) f.body.get(1)).boxed);
+        var g = (Stmt.Function) f.body.get(2);
+        var assignment = (Expr.Assignment) ((Stmt.ExprStmt) g.body.get(0)).expression;
+        assertTrue(assignment.boxed);
+        assertEquals(1, assignment.depth);
+        assertFalse(((Expr.Variable) assignment.expression).boxed);
+    }
+
+    @Test
+    void functionCapturingItselfIsBoxed() {
+        var stmts = resolve("{ fun f() { f(); } fun g() { f(); } }");
+        var block = (Stmt.Block) stmts.get(0);
+        var f = (Stmt.Function) block.statements.get(0);
+        assertTrue(f.boxed);
+        var call = (Expr.Call) ((Stmt.ExprStmt) f.body.get(0)).expression;
+        assertTrue(((Expr.Variable) call.callee).boxed);
+        var g = (Stmt.Function) block.statements.get(1);
+        assertFalse(g.boxed);
+    }
+
+    @Test
+    void frameSizes() {
+        var stmts = resolve("fun f(a) { var b = a; { var c = 1; var d = 2; fun g() {} } }");
+        var function = (Stmt.Function) stmts.get(0);
+        assertEquals(-1, function.slot);
+        assertEquals(2, function.slotCount);
+        var block = (Stmt.Block) function.body.get(1);
+        assertTrue(block.needsFrame);
+        assertEquals(3, block.slotCount);
+        assertEquals(1, ((Stmt.VarDcl) block.statements.get(1)).slot);
+    }
+
+    @Test
+    void blockWithoutFunctionsUsesEnclosingFrame() {
+        var stmts = resolve("fun f(a) { var b = a; { var c = 1; var d = c; print b; } }");
+        var function = (Stmt.Function) stmts.get(0);
+        assertEquals(4, function.slotCount);
+        var block = (Stmt.Block) function.body.get(1);
+        assertFalse(block.needsFrame);
+        assertEquals(0, block.slotCount);
+        assertEquals(3, ((Stmt.VarDcl) block.statements.get(1)).slot);
+        var variable = (Expr.Variable) ((Stmt.Print) block.statements.get(2)).expression;
+        assertEquals(0, variable.depth);
+        assertEquals(1, variable.slot);
+    }
+
+    @Test
+    void siblingBlocksReuseSlots() {
+        var stmts = resolve("fun f() { if (true) { var a = 1; } else { var b = 2; var c = 3; } var d; }");
+        var function = (Stmt.Function) stmts.get(0);
+        assertEquals(2, function.slotCount);
+        var ifStmt = (Stmt.If) function.body.get(0);
+        assertEquals(0, ((Stmt.VarDcl) ((Stmt.Block) ifStmt.thenBranch).statements.get(0)).slot);
+        assertEquals(1, ((Stmt.VarDcl) ((Stmt.Block) ifStmt.elseBranch).statements.get(1)).slot);
+        assertEquals(0, ((Stmt.VarDcl) function.body.get(1)).slot);
+    }
+
+    @Test
+    void blockDeclaringNothingUsesEnclosingFrame() {
+        var stmts = resolve("{ var a = 1; { { var b; fun g() { return b; } } } }");
+        var outer = (Stmt.Block) stmts.get(0);
+        assertTrue(outer.needsFrame);
+        var middle = (Stmt.Block) outer.statements.get(1);
+        assertFalse(middle.needsFrame);
+        var inner = (Stmt.Block) middle.statements.get(0);
+        assertTrue(inner.needsFrame);
+        var function = (Stmt.Function) inner.statements.get(1);
+        var ret = (Stmt.Return) function.body.get(0);
+        assertEquals(1, ((Expr.Variable) ret.value).depth);
+    }
+
+    @Test
+    void nestedForLoopUsesEnclosingFrame() {
+        var stmts = resolve("for (var i = 0; i < 2; i = i + 1) for (var j = 0; j < i; j = j + 1) print i + j;");
+        var outer = (Stmt.For) stmts.get(0);
+        assertTrue(outer.needsFrame);
+        assertEquals(2, outer.slotCount);
+        var inner = (Stmt.For) outer.body;
+        assertFalse(inner.needsFrame);
+        var sum = (Expr.Binary) ((Stmt.Print) inner.body).expression;
+        assertEquals(0, ((Expr.Variable) sum.left).depth);
+        assertEquals(0, ((Expr.Variable) sum.left).slot);
+        assertEquals(1, ((Expr.Variable) sum.right).slot);
+    }
+}
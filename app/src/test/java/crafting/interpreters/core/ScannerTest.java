@@ -4,11 +4,20 @@ import crafting.interpreters.core.base.Token;
 import crafting.interpreters.core.base.TokenType;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 class ScannerTest {
 
@@ -187,6 +196,95 @@ class ScannerTest {
         List<Token> tokens = new Scanner(source).scanTokens();
         compareListOfToken(expectedTokens, tokens);
     }
+    @Test
+    void tokensAcrossBufferRefills() {
+        // a 4 char buffer is refilled inside most tokens and has to grow for the longer ones
+        String source = "var counter = 12.25;\nprint \"a long\nstring\" >= counter;";
+        List<Token> expectedTokens = new ArrayList<>(Arrays.asList(
+                new Token(TokenType.VAR, "var", null, 1),
+                new Token(TokenType.IDENTIFIER, "counter", null, 1),
+                new Token(TokenType.EQUAL, "=", null, 1),
+                new Token(TokenType.NUMBER, "12.25", 12.25, 1),
+                new Token(TokenType.SEMICOLON, ";", null, 1),
+                new Token(TokenType.PRINT, "print", null, 2),
+                new Token(TokenType.STRING, "\"a long\nstring\"", "a long\nstring", 3),
+                new Token(TokenType.GREATER_EQUAL, ">=", null, 3),
+                new Token(TokenType.IDENTIFIER, "counter", null, 3),
+                new Token(TokenType.SEMICOLON, ";", null, 3),
+                new Token(TokenType.EOF, null, null, 3)
+        ));
+        List<Token> tokens = new Scanner(new StringReader(source), 4).scanTokens();
+        compareListOfToken(expectedTokens, tokens);
+    }
+
+    @Test
+    void scanChannel() {
+        byte[] bytes = "print \"h\u00e9llo \u4e16\u754c\";".getBytes(StandardCharsets.UTF_8);
+        var scanner = new Scanner(Channels.newChannel(new ByteArrayInputStream(bytes)));
+        List<Token> expectedTokens = new ArrayList<>(Arrays.asList(
+                new Token(TokenType.PRINT, "print", null, 1),
+                new Token(TokenType.STRING, "\"h\u00e9llo \u4e16\u754c\"", "h\u00e9llo \u4e16\u754c", 1),
+                new Token(TokenType.SEMICOLON, ";", null, 1),
+                new Token(TokenType.EOF, null, null, 1)
+        ));
+        compareListOfToken(expectedTokens, scanner.scanTokens());
+    }
+
+    @Test
+    void scanBytes() {
+        String source = "var s = \"caf\u00e9 \u2615\";\nprint s;";
+        var scanner = new Scanner(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+        compareListOfToken(new Scanner(source).scanTokens(), scanner.scanTokens());
+    }
+
+    @Test
+    void scanMappedFile() throws IOException {
+        var file = Files.createTempFile("scanner", ".lox");
+        try {
+            Files.writeString(file, "print \"\u00fcber\";\n// done", StandardCharsets.UTF_8);
+            List<Token> tokens;
+            try (var channel = FileChannel.open(file)) {
+                tokens = new Scanner(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())).scanTokens();
+            }
+            List<Token> expectedTokens = new ArrayList<>(Arrays.asList(
+                    new Token(TokenType.PRINT, "print", null, 1),
+                    new Token(TokenType.STRING, "\"\u00fcber\"", "\u00fcber", 1),
+                    new Token(TokenType.SEMICOLON, ";", null, 1),
+                    new Token(TokenType.EOF, null, null, 2)
+            ));
+            compareListOfToken(expectedTokens, tokens);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    void keywordsAndIdentifiers() {
+        String keywords = "and class else false for fun if nil or print return super this true var while";
+        String identifiers = "an andy f fa fort funs i iff th thiss tr truer v _var While";
+        for (Scanner scanner : List.of(new Scanner(keywords + " " + identifiers),
+                new Scanner(ByteBuffer.wrap((keywords + " " + identifiers).getBytes(StandardCharsets.UTF_8))))) {
+            List<Token> tokens = scanner.scanTokens();
+            String[] words = (keywords + " " + identifiers).split(" ");
+            int keywordCount = keywords.split(" ").length;
+            assertEquals(words.length + 1, tokens.size());
+            for (int i = 0; i < words.length; i++) {
+                TokenType expected = i < keywordCount ? TokenType.valueOf(words[i].toUpperCase()) : TokenType.IDENTIFIER;
+                assertEquals(expected, tokens.get(i).type, words[i]);
+                assertEquals(words[i], tokens.get(i).lexeme);
+            }
+        }
+    }
+
+    @Test
+    void nextTokenReturnsNullAfterEof() {
+        var scanner = new Scanner("x;");
+        assertEquals(TokenType.IDENTIFIER, scanner.nextToken().type);
+        assertEquals(TokenType.SEMICOLON, scanner.nextToken().type);
+        assertEquals(TokenType.EOF, scanner.nextToken().type);
+        assertNull(scanner.nextToken());
+    }
+
     void compareListOfToken(List<Token> expected, List<Token> actual) {
         String error_msg = "Expected and Actual has different %s. Index: %d";
         assertEquals(expected.size(), actual.size(), "Actual list has a different size than expected");
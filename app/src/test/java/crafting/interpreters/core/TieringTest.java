@@ -0,0 +1,136 @@
+package crafting.interpreters.core;
+
+import crafting.interpreters.core.base.Stmt;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieringTest {
+
+    Interpreter.CapturePrint cp;
+    Interpreter interpreter;
+
+    List<Stmt> run(String source) {
+        List<Stmt> stmts = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(stmts);
+        cp = new Interpreter.CapturePrint();
+        interpreter = new Interpreter(stmts, cp);
+        // tiering belongs to the tree-walker, whatever -Dlox.engine the suite runs with
+        interpreter.engine = Interpreter.Engine.TREE_WALKER;
+        interpreter.interpret();
+        return stmts;
+    }
+
+    @Test
+    void countsCallsAndBackEdges() {
+        var stmts = run("""
+                fun loop(n) {
+                    var i = 0;
+                    while (i < n) i = i + 1;
+                    return i;
+                }
+                print loop(3) + loop(4);
+                """);
+        var loop = interpreter.tiering.function((Stmt.Function) stmts.get(0));
+        assertEquals(7., cp.capturedValue);
+        assertEquals(2, loop.invocations);
+        if (loop.closureBody == null && loop.jitCode == null) {
+            assertEquals(7, loop.backEdges);
+        }
+    }
+
+    @Test
+    void hotFunctionsLeaveTheTreeWalker() {
+        var stmts = run("""
+                fun square(x) { return x * x; }
+                var sum = 0;
+                var i = 0;
+                while (i < 20000) {
+                    sum = sum + square(2);
+                    i = i + 1;
+                }
+                print sum;
+                """);
+        var square = interpreter.tiering.function((Stmt.Function) stmts.get(0));
+        assertEquals(80000., cp.capturedValue);
+        boolean tiered = Tiering.CLOSURES_THRESHOLD > 0 || Tiering.BYTECODE_THRESHOLD > 0;
+        assertTrue(tiered == (square.closureBody != null || square.jitCode != null));
+    }
+
+    @Test
+    void shortScriptsCompileNothing() {
+        var stmts = run("""
+                fun square(x) { return x * x; }
+                print square(3);
+                """);
+        var square = interpreter.tiering.function((Stmt.Function) stmts.get(0));
+        if (Tiering.CLOSURES_THRESHOLD != 1) {
+            assertNull(square.closureBody);
+        }
+        if (Tiering.BYTECODE_THRESHOLD != 1) {
+            assertNull(square.jitCode);
+        }
+    }
+
+    @Test
+    void topLevelLoopIsReplacedWhileRunning() {
+        var stmts = run("""
+                var sum = 0;
+                {
+                    var i = 0;
+                    while (i < 20000) {
+                        var odd = i - (i / 2 - 0.5);
+                        sum = sum + i;
+                        i = i + 1;
+                    }
+                }
+                print sum;
+                """);
+        var loop = interpreter.tiering.loop(((Stmt.Block) stmts.get(1)).statements.get(1));
+        assertEquals(199990000., cp.capturedValue);
+        boolean replaced = Tiering.OSR_THRESHOLD > 0 && Tiering.OSR_THRESHOLD < 20000;
+        assertTrue(replaced == (loop.osrCode != null));
+    }
+
+    Interpreter.CapturePrint runAgain(List<Stmt> stmts) {
+        var print = new Interpreter.CapturePrint();
+        var interpreter = new Interpreter(stmts, print);
+        interpreter.engine = Interpreter.Engine.TREE_WALKER;
+        interpreter.interpret();
+        return print;
+    }
+
+    @Test
+    void promotedFunctionsUseTheInterpreterRunningThem() {
+        // the compiled body reads the globals of the interpreter calling it, not of the first one
+        var stmts = run("""
+                var g = 0;
+                fun f(x) { g = g + x; return g; }
+                var i = 0;
+                while (i < 1500) {
+                    f(i);
+                    i = i + 1;
+                }
+                print g;
+                """);
+        assertEquals(1124250., cp.capturedValue);
+        assertEquals(1124250., runAgain(stmts).capturedValue);
+    }
+
+    @Test
+    void replacedLoopsUseTheInterpreterRunningThem() {
+        var stmts = run("""
+                var i = 0;
+                var s = 0;
+                while (i < 20000) {
+                    s = s + i;
+                    i = i + 1;
+                }
+                print s;
+                """);
+        assertEquals(199990000., cp.capturedValue);
+        assertEquals(199990000., runAgain(stmts).capturedValue);
+    }
+}
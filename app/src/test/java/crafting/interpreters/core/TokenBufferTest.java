@@ -0,0 +1,38 @@
+package crafting.interpreters.core;
+
+import crafting.interpreters.core.base.Token;
+import crafting.interpreters.core.base.TokenType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class TokenBufferTest {
+
+    @Test
+    void tokensAreMadeFromTheArrays() {
+        var tokens = new Scanner("var s = \"hi\";\nprint s >= 1.5 or true;").scanAll();
+        assertEquals(13, tokens.size());
+        assertEquals(TokenType.GREATER_EQUAL, tokens.type(7));
+        assertEquals(22, tokens.start(7));
+        assertEquals(2, tokens.length(7));
+        assertEquals(new Token(TokenType.STRING, "\"hi\"", "hi", 1), tokens.token(3));
+        assertEquals(new Token(TokenType.NUMBER, "1.5", 1.5, 2), tokens.token(8));
+        assertEquals(new Token(TokenType.TRUE, "true", true, 2), tokens.token(10));
+        assertEquals(new Token(TokenType.EOF, null, null, 2), tokens.token(12));
+    }
+
+    @Test
+    void discardKeepsIndexes() {
+        var tokens = new TokenBuffer(2);
+        tokens.add(TokenType.IDENTIFIER, 0, 1, 1, "a");
+        tokens.add(TokenType.PLUS, 2, 1, 1, null);
+        tokens.discardBefore(1);
+        tokens.add(TokenType.IDENTIFIER, 4, 1, 2, "b");
+        assertEquals(3, tokens.size());
+        assertEquals("+", tokens.lexeme(1));
+        assertEquals("b", tokens.lexeme(2));
+        assertEquals(2, tokens.line(2));
+        assertNull(tokens.literal(2));
+    }
+}
@@ -9,15 +9,18 @@ import static org.junit.jupiter.api.Assertions.*;
 import crafting.interpreters.core.base.LoxCallable.LoxInstance;
 import crafting.interpreters.core.base.LoxCallable.LoxClass;
 
+import crafting.interpreters.Lox;
+import crafting.interpreters.core.Interpreter;
+
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.List;
 
 class LoxCallableTest {
     private LoxInstance instance;
 
     @BeforeEach
     void setUp() {
-        var klass = new LoxClass("ABC", new HashMap<>());
+        var klass = new LoxClass("ABC", new SymbolMap<>());
         instance = new LoxInstance(klass);
     }
 
@@ -25,7 +28,7 @@ class LoxCallableTest {
     void testGetUndefined() {
 
         try {
-            instance.get("x");
+            instance.get(Symbols.intern("x"));
             fail("calling get with undefined variable should fail");
         } catch (RuntimeException ignored) {
 
@@ -34,14 +37,50 @@ class LoxCallableTest {
 
     @Test
     void testSetAndGet() {
-        instance.set("x", 123);
-        assertEquals(instance.get("x"), 123);
+        instance.set(Symbols.intern("x"), 123);
+        assertEquals(instance.get(Symbols.intern("x")), 123);
     }
     @Test
     void testSetThis(){
         try{
-            instance.set("this", 123);
+            instance.set(Symbols.intern("this"), 123);
             fail("Property can't be named 'this'");
         } catch (RuntimeException ignored){}
     }
+
+    @Test
+    void fixedArityDefaultsUseTheList() {
+        LoxCallable sum = new LoxCallable() {
+            @Override
+            public int arity() {
+                return 3;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                return (double) arguments.get(0) + (double) arguments.get(1) + (double) arguments.get(2);
+            }
+        };
+        assertEquals(6., sum.call3(null, 1., 2., 3.));
+    }
+
+    @Test
+    void callsWithEveryArity() {
+        String source = """
+                class P {
+                    init(a, b, c, d, e) { this.sum = a + b + c + d + e; }
+                }
+                fun f0() { return 1; }
+                fun f2(a, b) { return a + b; }
+                fun f4(a, b, c, d) { return a + b + c + d; }
+                class Q {
+                    init(a, b) { this.sum = a + b; }
+                    m3(a, b, c) { return this.sum + a + b + c; }
+                }
+                print P(1, 2, 3, 4, 5).sum + f0() + f2(1, 2) + f4(1, 2, 3, 4) + Q(1, 2).m3(1, 1, 1);
+                """;
+        var cp = new Interpreter.CapturePrint();
+        new Lox().run(source, cp);
+        assertEquals(35., cp.capturedValue);
+    }
 }
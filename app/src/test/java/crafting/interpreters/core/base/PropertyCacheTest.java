@@ -0,0 +1,138 @@
+package crafting.interpreters.core.base;
+
+import crafting.interpreters.Lox;
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Parser;
+import crafting.interpreters.core.Resolver;
+import crafting.interpreters.core.Scanner;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PropertyCacheTest {
+
+    PropertyCache cache(String name) {
+        return new PropertyCache(new Token(TokenType.IDENTIFIER, name, null, 1));
+    }
+
+    LoxCallable.LoxInstance instance(LoxCallable.LoxClass klass, String... fields) {
+        var instance = new LoxCallable.LoxInstance(klass);
+        for (String field : fields) {
+            instance.set(Symbols.intern(field), field);
+        }
+        return instance;
+    }
+
+    @Test
+    void monomorphicSite() {
+        var klass = new LoxCallable.LoxClass("Point", new SymbolMap<>());
+        var get = cache("x");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("x", get.get(instance(klass, "x", "y")));
+        }
+        assertEquals(1, get.misses);
+        assertEquals(9, get.hits);
+        assertEquals(0, get.megamorphicAccesses);
+    }
+
+    @Test
+    void setCachesTransitions() {
+        var klass = new LoxCallable.LoxClass("Point", new SymbolMap<>());
+        var set = cache("x");
+        var a = new LoxCallable.LoxInstance(klass);
+        var b = new LoxCallable.LoxInstance(klass);
+        set.set(a, 1.);
+        set.set(b, 2.);
+        set.set(b, 3.);
+        assertSame(a.shape(), b.shape());
+        assertEquals(1., a.get(Symbols.intern("x")));
+        assertEquals(3., b.get(Symbols.intern("x")));
+        // one miss for the transition from the root shape, one for the store into an existing field
+        assertEquals(2, set.misses);
+        assertEquals(1, set.hits);
+    }
+
+    @Test
+    void polymorphicThenMegamorphic() {
+        var klass = new LoxCallable.LoxClass("Point", new SymbolMap<>());
+        var get = cache("x");
+        String[][] layouts = {{"x"}, {"a", "x"}, {"b", "x"}, {"c", "x"}};
+        for (String[] layout : layouts) {
+            get.get(instance(klass, layout));
+            get.get(instance(klass, layout));
+        }
+        assertEquals(4, get.misses);
+        assertEquals(4, get.hits);
+        assertEquals("x", get.get(instance(klass, "d", "x")));
+        assertEquals("x", get.get(instance(klass, "x")));
+        assertEquals(5, get.misses);
+        assertEquals(1, get.megamorphicAccesses);
+    }
+
+    @Test
+    void methodsAreBound() {
+        var src = """
+                class Counter {
+                    init() { this.n = 0; }
+                    inc() { this.n = this.n + 1; return this.n; }
+                }
+                var c = Counter();
+                var i = 0;
+                while (i < 5) { c.inc(); i = i + 1; }
+                print c.inc();
+                """;
+        var cp = new Interpreter.CapturePrint();
+        new Lox().run(src, cp);
+        assertEquals(6., cp.capturedValue);
+    }
+
+    @Test
+    void fieldShadowsMethodAfterTransition() {
+        var src = """
+                class A {
+                    m() { return 1; }
+                }
+                fun call(a) { return a.m; }
+                var a = A();
+                var first = call(a)();
+                a.m = 2;
+                print first + call(a);
+                """;
+        var cp = new Interpreter.CapturePrint();
+        new Lox().run(src, cp);
+        assertEquals(3., cp.capturedValue);
+    }
+
+    List<String> siteStats(List<Stmt> stmts) {
+        var interpreter = new Interpreter(stmts, new Interpreter.CapturePrint());
+        interpreter.interpret();
+        return interpreter.propertyCaches.stream().map(PropertyCache::toString).toList();
+    }
+
+    @Test
+    void eachInterpreterHasItsOwnCaches() {
+        // a second run of the same program starts from cold caches and reports every site
+        List<Stmt> stmts = new Parser(new Scanner("""
+                class Point {
+                    init(x) { this.x = x; }
+                    norm() { return this.x * this.x; }
+                }
+                var sum = 0;
+                for (var i = 0; i < 10; i = i + 1) sum = sum + Point(i).norm();
+                print sum;
+                """).scanTokens()).parse();
+        new Resolver().resolve(stmts);
+        var first = siteStats(stmts);
+        assertFalse(first.isEmpty());
+        assertEquals(first, siteStats(stmts));
+    }
+
+    @Test
+    void missingPropertyStillFails() {
+        var get = cache("z");
+        var klass = new LoxCallable.LoxClass("Point", new SymbolMap<>());
+        assertThrows(RuntimeException.class, () -> get.get(instance(klass, "x")));
+    }
+}
@@ -0,0 +1,52 @@
+package crafting.interpreters.core.base;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShapeTest {
+
+    @Test
+    void fieldIndexes() {
+        var shape = Shape.root().withField(Symbols.intern("x")).withField(Symbols.intern("y"));
+        assertEquals(2, shape.size);
+        assertEquals(0, shape.indexOf(Symbols.intern("x")));
+        assertEquals(1, shape.indexOf(Symbols.intern("y")));
+        assertEquals(-1, shape.indexOf(Symbols.intern("z")));
+    }
+
+    @Test
+    void transitionsAreShared() {
+        var root = Shape.root();
+        int x = Symbols.intern("x");
+        int y = Symbols.intern("y");
+        assertSame(root.withField(x), root.withField(x));
+        assertNotSame(root.withField(x).withField(y), root.withField(y).withField(x));
+    }
+
+    @Test
+    void instancesOfAClassShareShapes() {
+        var klass = new LoxCallable.LoxClass("Point", new SymbolMap<>());
+        var a = new LoxCallable.LoxInstance(klass);
+        var b = new LoxCallable.LoxInstance(klass);
+        a.set(Symbols.intern("x"), 1.);
+        a.set(Symbols.intern("y"), 2.);
+        b.set(Symbols.intern("x"), 3.);
+        b.set(Symbols.intern("y"), 4.);
+        b.set(Symbols.intern("x"), 5.);
+        assertSame(a.shape(), b.shape());
+        assertEquals(2., a.get(Symbols.intern("y")));
+        assertEquals(5., b.get(Symbols.intern("x")));
+    }
+
+    @Test
+    void manyFields() {
+        var instance = new LoxCallable.LoxInstance(new LoxCallable.LoxClass("Big", new SymbolMap<>()));
+        for (int i = 0; i < 20; i++) {
+            instance.set(Symbols.intern("f" + i), (double) i);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals((double) i, instance.get(Symbols.intern("f" + i)));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package crafting.interpreters.core.base;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolsTest {
+
+    @Test
+    void sameNameSameId() {
+        int id = Symbols.intern("counter");
+        assertEquals(id, Symbols.intern("counter"));
+        assertEquals(id, Symbols.intern("a counter;", 2, 9));
+        assertEquals(id, Symbols.intern("a counter;".toCharArray(), 2, 9));
+        assertEquals(id, Symbols.intern(ByteBuffer.wrap("a counter;".getBytes(StandardCharsets.UTF_8)), 2, 9));
+        assertEquals("counter", Symbols.name(id));
+        assertTrue(id != Symbols.intern("count"));
+    }
+
+    @Test
+    void manyNames() {
+        int[] ids = new int[2000];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = Symbols.intern("name" + i);
+        }
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], Symbols.intern("name" + i));
+            assertEquals("name" + i, Symbols.name(ids[i]));
+        }
+    }
+
+    @Test
+    void symbolMap() {
+        var map = new SymbolMap<String>();
+        for (int i = 0; i < 100; i++) {
+            map.put(Symbols.intern("key" + i), "value" + i);
+        }
+        map.put(Symbols.intern("key7"), "seven");
+        assertEquals(100, map.size());
+        assertEquals("seven", map.get(Symbols.intern("key7")));
+        assertEquals("value42", map.get(Symbols.intern("key42")));
+        assertNull(map.get(Symbols.intern("missing")));
+        var copy = new SymbolMap<>(map);
+        copy.put(Symbols.intern("key42"), "changed");
+        assertEquals("value42", map.get(Symbols.intern("key42")));
+    }
+
+    @Test
+    void globalsAreKeyedBySymbol() {
+        for (int i = 0; i < 1000; i++) {
+            Symbols.intern("other" + i);
+        }
+        var globals = new Environment();
+        int late = Symbols.intern("late");
+        globals.define(late, 1.);
+        globals.define(Symbols.INIT, null);
+        globals.assign(late, 2.);
+        assertEquals(2., globals.readVariableValue(late));
+        assertNull(globals.readVariableValue(Symbols.INIT));
+        assertThrows(RuntimeException.class, () -> globals.readVariableValue(Symbols.intern("other1")));
+        assertThrows(RuntimeException.class, () -> globals.assign(Symbols.intern("other2"), 1.));
+    }
+}
@@ -0,0 +1,75 @@
+package crafting.interpreters.handles;
+
+import crafting.interpreters.core.Interpreter;
+import org.junit.jupiter.api.Test;
+
+import static crafting.interpreters.utils.TestUtil.parseAndResolve;
+import static org.junit.jupiter.api.Assertions.*;
+
+class HandleCompilerTest {
+
+    Object run(String source) {
+        var stmts = parseAndResolve(source);
+        var cp = new Interpreter.CapturePrint();
+        new HandleCompiler(new Interpreter(stmts, cp)).compile(stmts).execute(null);
+        return cp.capturedValue;
+    }
+
+    @Test
+    void returnLeavesLoopsAndBlocks() {
+        assertEquals(5., run("""
+                fun firstOver(limit) {
+                    var i = 0;
+                    while (true) {
+                        { if (i > limit) return i; }
+                        i = i + 1;
+                    }
+                }
+                print firstOver(4);
+                """));
+    }
+
+    @Test
+    void redefinedGlobalFunctionRelinksTheCall() {
+        assertEquals(30., run("""
+                fun f(x) { return x; }
+                fun call(x) { return f(x); }
+                var sum = 0;
+                var i = 0;
+                while (i < 10) {
+                    if (i == 5) {
+                        fun g(x) { return x * 5; }
+                        f = g;
+                    }
+                    sum = sum + call(1);
+                    i = i + 1;
+                }
+                print sum;
+                """));
+    }
+
+    @Test
+    void operandsAreEvaluatedLeftToRight() {
+        assertEquals(12., run("""
+                var trace = 0;
+                fun digit(d) { trace = trace * 10 + d; return d; }
+                fun pair(a, b) { return a + b; }
+                pair(digit(1), digit(2));
+                print trace;
+                """));
+    }
+
+    @Test
+    void callsWithManyArguments() {
+        assertEquals(15., run("""
+                fun sum(a, b, c, d, e) { return a + b + c + d + e; }
+                print sum(1, 2, 3, 4, 5);
+                """));
+    }
+
+    @Test
+    void nestedArithmeticChecksNumbers() {
+        assertEquals(-4., run("print -(1 + 2 * (3 - 1.5));"));
+        assertThrows(RuntimeException.class, () -> run("print 1 + 2 * (3 - \"a\");"));
+    }
+}
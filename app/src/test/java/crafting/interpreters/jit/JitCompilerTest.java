@@ -0,0 +1,81 @@
+package crafting.interpreters.jit;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Parser;
+import crafting.interpreters.core.Resolver;
+import crafting.interpreters.core.Scanner;
+import crafting.interpreters.core.base.Stmt;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JitCompilerTest {
+
+    Interpreter.CapturePrint cp;
+    Interpreter interpreter;
+
+    Stmt.Function function(String source) {
+        List<Stmt> stmts = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(stmts);
+        cp = new Interpreter.CapturePrint();
+        interpreter = new Interpreter(stmts, cp);
+        interpreter.interpret();
+        return (Stmt.Function) stmts.get(0);
+    }
+
+    @Test
+    void compilesRecursion() {
+        var fib = function("""
+                fun fib(n) {
+                    if (n < 2) return n;
+                    return fib(n - 1) + fib(n - 2);
+                }
+                """);
+        JitCode code = JitCompiler.compile(fib);
+        assertNotNull(code);
+        assertTrue(code.getClass().isHidden());
+        assertEquals(610., code.execute(interpreter, new Object[]{15.}));
+    }
+
+    @Test
+    void compilesLoopsAndBlocks() {
+        var sum = function("""
+                fun sum(n) {
+                    var total = 0;
+                    var i = 0;
+                    while (i < n and true) {
+                        { var square = i * i; total = total + square; }
+                        i = i + 1;
+                    }
+                    print total;
+                    return !(total == 0);
+                }
+                """);
+        JitCode code = JitCompiler.compile(sum);
+        assertNotNull(code);
+        assertEquals(true, code.execute(interpreter, new Object[]{4., null, null}));
+        assertEquals(14., cp.capturedValue);
+    }
+
+    @Test
+    void leavesUnsupportedFunctionsToTheInterpreter() {
+        var counter = function("""
+                fun counter() {
+                    var n = 0;
+                    fun next() { n = n + 1; return n; }
+                    return next;
+                }
+                """);
+        assertNull(JitCompiler.compile(counter));
+    }
+
+    @Test
+    void arithmeticChecksNumbers() {
+        var half = function("fun half(x) { return x / 2; }");
+        JitCode code = JitCompiler.compile(half);
+        assertEquals(1.5, code.execute(interpreter, new Object[]{3.}));
+        assertThrows(RuntimeException.class, () -> code.execute(interpreter, new Object[]{"a"}));
+    }
+}
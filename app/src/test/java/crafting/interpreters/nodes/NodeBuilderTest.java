@@ -0,0 +1,102 @@
+package crafting.interpreters.nodes;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Parser;
+import crafting.interpreters.core.Resolver;
+import crafting.interpreters.core.Scanner;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeBuilderTest {
+
+    Interpreter.CapturePrint cp;
+
+    NodeFunction.Body run(String source) {
+        var stmts = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(stmts);
+        cp = new Interpreter.CapturePrint();
+        var script = new NodeBuilder(new Interpreter(stmts, cp)).build(stmts);
+        script.execute(null);
+        return script;
+    }
+
+    ExprNode printed(NodeFunction.Body script, int index) {
+        return ((StmtNodes.Print) script.statements[index]).expression;
+    }
+
+    @Test
+    void equalitySpecializesOnDoubles() {
+        var script = run("""
+                fun same(a, b) { return a == b; }
+                print same(1, 1);
+                """);
+        var function = ((StmtNodes.Function) script.statements[0]).body;
+        var ret = (StmtNodes.Return) function.statements[0];
+        assertInstanceOf(ExprNodes.DoubleEqual.class, ret.value);
+        assertEquals(true, cp.capturedValue);
+    }
+
+    @Test
+    void equalityGoesGenericWhenGuardFails() {
+        var script = run("""
+                fun same(a, b) { return a == b; }
+                same(1, 2);
+                print same("x", "x");
+                """);
+        var function = ((StmtNodes.Function) script.statements[0]).body;
+        var ret = (StmtNodes.Return) function.statements[0];
+        assertInstanceOf(ExprNodes.GenericEqual.class, ret.value);
+        assertSame(ret, ret.value.parent);
+        assertEquals(true, cp.capturedValue);
+    }
+
+    @Test
+    void callToOneFunctionIsDirect() {
+        var script = run("""
+                fun fib(n) {
+                    if (n < 2) return n;
+                    return fib(n - 1) + fib(n - 2);
+                }
+                print fib(15);
+                """);
+        assertInstanceOf(CallNode.Direct.class, printed(script, 1));
+        assertEquals(610., cp.capturedValue);
+    }
+
+    @Test
+    void callSeeingTwoFunctionsIsGeneric() {
+        var script = run("""
+                fun one() { return 1; }
+                fun two() { return 2; }
+                var f = one;
+                var total = 0;
+                var i = 0;
+                while (i < 4) {
+                    total = total + f();
+                    f = two;
+                    i = i + 1;
+                }
+                print total;
+                """);
+        assertEquals(7., cp.capturedValue);
+        var loop = (StmtNodes.While) script.statements[5];
+        var body = (StmtNodes.Block) loop.body;
+        var assignment = (ExprNodes.GlobalAssignment) ((StmtNodes.Expression) body.statements[0]).expression;
+        var add = (ExprNodes.Add) assignment.value;
+        assertInstanceOf(CallNode.Generic.class, add.right);
+    }
+
+    @Test
+    void nativeCallIsGeneric() {
+        var script = run("print clock() > 0;");
+        var greater = (ExprNodes.Greater) printed(script, 0);
+        assertInstanceOf(CallNode.Generic.class, greater.left);
+        assertEquals(true, cp.capturedValue);
+    }
+
+    @Test
+    void arithmeticOnNilFails() {
+        assertThrows(RuntimeException.class, () -> run("var a = 1;\nprint a + nil;"));
+    }
+}
@@ -1,11 +1,15 @@
 package crafting.interpreters.utils;
 
+import crafting.interpreters.core.Parser;
+import crafting.interpreters.core.Resolver;
+import crafting.interpreters.core.Scanner;
 import crafting.interpreters.core.base.Expr;
 import crafting.interpreters.core.base.Stmt;
 import crafting.interpreters.core.base.Token;
 import crafting.interpreters.core.base.TokenType;
 
 import java.util.HashMap;
+import java.util.List;
 
 import static crafting.interpreters.core.base.TokenType.*;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -13,6 +17,12 @@ import static org.junit.jupiter.api.Assertions.fail;
 
 public class TestUtil {
 
+    public static List<Stmt> parseAndResolve(String source) {
+        var stmts = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver().resolve(stmts);
+        return stmts;
+    }
+
     public static Token getToken(TokenType tt) {
         HashMap<TokenType, String> tokenWithConstLex = new HashMap<>();
         tokenWithConstLex.put(VAR, "var");
@@ -115,6 +125,10 @@ public class TestUtil {
             compareStmt((Stmt.While) expected, (Stmt.While) actual);
             return;
         }
+        if (expected instanceof Stmt.For) {
+            compareStmt((Stmt.For) expected, (Stmt.For) actual);
+            return;
+        }
         if (expected instanceof Stmt.Function) {
             compareStmt((Stmt.Function) expected, (Stmt.Function) actual);
             return;
@@ -130,6 +144,13 @@ public class TestUtil {
         fail("unexpected stmt");
     }
 
+    public static void compareStmt(Stmt.For expected, Stmt.For actual) {
+        compareStmt(expected.initializer, actual.initializer);
+        compareExpr(expected.condition, actual.condition);
+        compareExpr(expected.increment, actual.increment);
+        compareStmt(expected.body, actual.body);
+    }
+
     public static void compareStmt(Stmt.Class expected, Stmt.Class actual) {
         compareToken(expected.name, actual.name);
         assertEquals(expected.methods.size(), actual.methods.size());
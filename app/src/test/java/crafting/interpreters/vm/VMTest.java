@@ -0,0 +1,112 @@
+package crafting.interpreters.vm;
+
+import crafting.interpreters.Lox;
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Parser;
+import crafting.interpreters.core.Resolver;
+import crafting.interpreters.core.Scanner;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VMTest {
+
+    @Test
+    void lineTable() {
+        var chunk = new Chunk();
+        chunk.write(OpCode.NIL, 1);
+        chunk.write(OpCode.NIL, 1);
+        chunk.write(OpCode.POP, 3);
+        chunk.write(OpCode.RETURN, 7);
+        assertEquals(1, chunk.getLine(0));
+        assertEquals(1, chunk.getLine(1));
+        assertEquals(3, chunk.getLine(2));
+        assertEquals(7, chunk.getLine(3));
+    }
+
+    @Test
+    void constantsAreDeduplicated() {
+        var chunk = new Chunk();
+        int first = chunk.addConstant(1.0);
+        chunk.addConstant("a");
+        assertEquals(first, chunk.addConstant(1.0));
+        assertEquals(2, chunk.constants().length);
+    }
+
+    @Test
+    void maxStack() {
+        var stmts = new Parser(new Scanner("print 1 + 2 * (3 - 4);").scanTokens()).parse();
+        new Resolver().resolve(stmts);
+        var script = new Compiler().compile(stmts);
+        assertEquals(4, script.maxStack);
+    }
+
+    @Test
+    void fib() {
+        String src = """
+                fun fib(n) {
+                    if (n < 2) return n;
+                    return fib(n - 1) + fib(n - 2);
+                }
+                print fib(15);
+                """;
+        assertEquals(610., runAndCapture(src));
+    }
+
+    @Test
+    void nestedBlocksAndClosures() {
+        String src = """
+                var total = 0;
+                {
+                    var a = 1;
+                    {
+                        var b = 2;
+                        fun add(c) {
+                            total = total + a + b + c;
+                        }
+                        var i = 0;
+                        while (i < 3) {
+                            add(i);
+                            i = i + 1;
+                        }
+                    }
+                }
+                print total;
+                """;
+        assertEquals(12., runAndCapture(src));
+    }
+
+    @Test
+    void initializerReturnsInstance() {
+        String src = """
+                class Point {
+                    init(x, y) {
+                        this.x = x;
+                        this.y = y;
+                    }
+                    sum() {
+                        return this.x + this.y;
+                    }
+                }
+                print Point(3, 4).sum();
+                """;
+        assertEquals(7., runAndCapture(src));
+    }
+
+    @Test
+    void logicalOperators() {
+        assertEquals(false, runAndCapture("print false and 1;"));
+        assertEquals(2., runAndCapture("print nil or 2;"));
+    }
+
+    @Test
+    void assignmentIsAnExpression() {
+        assertEquals(3., runAndCapture("var a; var b; a = b = 3; print a;"));
+    }
+
+    Object runAndCapture(String source) {
+        var cp = new Interpreter.CapturePrint();
+        new Lox(Interpreter.Engine.VM).run(source, cp);
+        return cp.capturedValue;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * JMH benchmarks for the Scanner, Parser and Interpreter hot paths.
+ *
+ * Run them with `./gradlew :benchmarks:jmh`. Results are written to
+ * benchmarks/build/results/jmh/results.json.
+ */
+
+plugins {
+    java
+    id("me.champeau.jmh") version "0.7.1"
+}
+
+repositories {
+    mavenCentral()
+}
+
+dependencies {
+    jmh(project(":app"))
+}
+
+java {
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(19))
+    }
+}
+
+jmh {
+    jmhVersion.set("1.36")
+    benchmarkMode.set(listOf("thrpt", "avgt"))
+    timeUnit.set("ms")
+    // adds the allocation rate (gc.alloc.rate and gc.alloc.rate.norm) to every result
+    profilers.set(listOf("gc"))
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,45 @@
+package crafting.interpreters.benchmarks;
+
+import crafting.interpreters.core.Interpreter;
+import crafting.interpreters.core.Parser;
+import crafting.interpreters.core.Resolver;
+import crafting.interpreters.core.Scanner;
+import crafting.interpreters.core.base.Stmt;
+import crafting.interpreters.core.base.Symbols;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class InterpreterBenchmark {
+
+    @Param({"arithmetic", "fib", "methods", "closures"})
+    public String program;
+
+    @Param({"TREE_WALKER", "VM", "SPECIALIZING", "CLOSURES", "HANDLES"})
+    public Interpreter.Engine engine;
+
+    private List<Stmt> statements;
+    // symbol id of the global that every program leaves its answer in
+    private int result;
+
+    @Setup
+    public void setUp() {
+        statements = new Parser(new Scanner(Programs.get(program)).scanTokens()).parse();
+        new Resolver().resolve(statements);
+        result = Symbols.intern("result");
+    }
+
+    @Benchmark
+    public Object interpret() {
+        // a fresh Interpreter per invocation: its globals, inline caches and tier counters start
+        // empty, only the parsed and resolved AST is shared between runs
+        var interpreter = new Interpreter(statements, null);
+        interpreter.engine = engine;
+        interpreter.interpret();
+        return interpreter.globals.readVariableValue(result);
+    }
+}
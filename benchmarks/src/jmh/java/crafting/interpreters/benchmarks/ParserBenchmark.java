@@ -0,0 +1,31 @@
+package crafting.interpreters.benchmarks;
+
+import crafting.interpreters.core.Parser;
+import crafting.interpreters.core.Scanner;
+import crafting.interpreters.core.TokenBuffer;
+import crafting.interpreters.core.base.Stmt;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ParserBenchmark {
+
+    @Param({"arithmetic", "fib", "methods", "closures"})
+    public String program;
+
+    private TokenBuffer tokens;
+
+    @Setup
+    public void setUp() {
+        tokens = new Scanner(Programs.get(program).repeat(500)).scanAll();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens).parse();
+    }
+}
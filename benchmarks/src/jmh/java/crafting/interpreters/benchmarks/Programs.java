@@ -0,0 +1,87 @@
+package crafting.interpreters.benchmarks;
+
+import java.util.Map;
+
+public class Programs {
+    // Representative workloads used by the benchmarks. Each program stores its outcome in
+    // the global 'result', so the benchmark can hand it to the Blackhole instead of printing it.
+
+    public static final String ARITHMETIC = """
+            var i = 0;
+            var sum = 0;
+            while (i < 100000) {
+                sum = sum + i * 2 - i / 3;
+                i = i + 1;
+            }
+            var result = sum;
+            """;
+
+    public static final String FIB = """
+            fun fib(n) {
+                if (n < 2) return n;
+                return fib(n - 1) + fib(n - 2);
+            }
+            var result = fib(20);
+            """;
+
+    public static final String METHODS = """
+            class Counter {
+                init() {
+                    this.count = 0;
+                }
+                inc(n) {
+                    this.count = this.count + n;
+                    return this;
+                }
+                get() {
+                    return this.count;
+                }
+            }
+            var counter = Counter();
+            var i = 0;
+            while (i < 20000) {
+                counter.inc(1).inc(2);
+                i = i + 1;
+            }
+            var result = counter.get();
+            """;
+
+    public static final String CLOSURES = """
+            fun make(n) {
+                var a = n;
+                fun level1() {
+                    var b = a + 1;
+                    fun level2() {
+                        var c = b + 1;
+                        fun level3() {
+                            return a + b + c;
+                        }
+                        return level3;
+                    }
+                    return level2;
+                }
+                return level1;
+            }
+            var i = 0;
+            var result = 0;
+            while (i < 10000) {
+                result = result + make(i)()()();
+                i = i + 1;
+            }
+            """;
+
+    public static final Map<String, String> ALL = Map.of(
+            "arithmetic", ARITHMETIC,
+            "fib", FIB,
+            "methods", METHODS,
+            "closures", CLOSURES
+    );
+
+    public static String get(String name) {
+        String source = ALL.get(name);
+        if (source == null) {
+            throw new IllegalArgumentException("Unknown program " + name);
+        }
+        return source;
+    }
+}
@@ -0,0 +1,36 @@
+package crafting.interpreters.benchmarks;
+
+import crafting.interpreters.core.Scanner;
+import crafting.interpreters.core.TokenBuffer;
+import crafting.interpreters.core.base.Token;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ScannerBenchmark {
+
+    @Param({"arithmetic", "fib", "methods", "closures"})
+    public String program;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        // repeated so a single invocation scans a few hundred KB
+        source = Programs.get(program).repeat(500);
+    }
+
+    @Benchmark
+    public List<Token> scanTokens() {
+        return new Scanner(source).scanTokens();
+    }
+
+    @Benchmark
+    public TokenBuffer scanAll() {
+        return new Scanner(source).scanAll();
+    }
+}
@@ -13,4 +13,4 @@ plugins {
 }
 
 rootProject.name = "AlmostLox"
-include("app")
+include("app", "benchmarks")